@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.worldline.dynaql.api.GraphQLRequest;
+import org.worldline.dynaql.impl.DynaQLClientBuilder;
+import org.worldline.dynaql.impl.http.HttpConfiguration;
+import org.worldline.dynaql.impl.http.HttpInvocation;
+import org.worldline.dynaql.impl.http.HttpInvocationBuilder;
+
+/**
+ * End-to-end invocations against an in-process stub server: building the
+ * invocation, writing the request, the HTTP exchange over the loopback,
+ * parsing and mapping the response.
+ *
+ * The stub speaks HTTP/1.1 only: with the http2 transport, the overhead of
+ * the JDK client is measured, not multiplexing.
+ *
+ * @author jefrajames
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InvocationBenchmark {
+
+    // The number of elements of the list
+    @Param({"10", "1000"})
+    private int size;
+
+    @Param({HttpConfiguration.TRANSPORT_HTTP1, HttpConfiguration.TRANSPORT_HTTP2})
+    private String transport;
+
+    private StubServer server;
+    private String endpoint;
+    private GraphQLRequest request;
+
+    @Setup
+    public void setup() throws IOException {
+        server = StubServer.start(Payloads.people(size));
+        endpoint = server.getEndpoint();
+        request = new DynaQLClientBuilder().newRequest(Payloads.PEOPLE_QUERY);
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.close();
+    }
+
+    private HttpInvocation invocation() {
+        return HttpInvocationBuilder.newBuilder()
+                .uri(endpoint)
+                .property(HttpConfiguration.TRANSPORT, transport)
+                .graphQLRequest(request)
+                .build();
+    }
+
+    @Benchmark
+    public List<Person> invoke() {
+        return invocation().invoke().getGraphQLResponse().getList(Person.class, "people");
+    }
+
+    @Benchmark
+    public List<Person> invokeAsync() {
+        return invocation().invokeAsync().join().getGraphQLResponse().getList(Person.class, "people");
+    }
+
+    // Pooled connections on HTTP/1.1, shared ones on HTTP/2
+    @Benchmark
+    @Threads(8)
+    public List<Person> invokeConcurrently() {
+        return invocation().invoke().getGraphQLResponse().getList(Person.class, "people");
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.worldline.dynaql.impl.DynaQLResponse;
+import org.worldline.dynaql.impl.JsonResponseParser;
+
+/**
+ * Mapping of parsed data to Java objects with JSON-B.
+ *
+ * @author jefrajames
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MappingBenchmark {
+
+    // The number of elements of the list
+    @Param({"10", "1000", "10000", "100000"})
+    private int size;
+
+    private DynaQLResponse people;
+
+    @Setup
+    public void setup() {
+        people = JsonResponseParser.parse(new ByteArrayInputStream(Payloads.people(size)));
+    }
+
+    @Benchmark
+    public List<Person> getList() {
+        return people.getList(Person.class, "people");
+    }
+
+    @Benchmark
+    public int stream() {
+        return people.stream(Person.class, "people").mapToInt(Person::getId).sum();
+    }
+
+    @Benchmark
+    public Person getObject(PersonState state) {
+        return state.person.getObject(Person.class, "person");
+    }
+
+    @State(Scope.Benchmark)
+    public static class PersonState {
+
+        private DynaQLResponse person;
+
+        @Setup
+        public void setup() {
+            person = JsonResponseParser.parse(new ByteArrayInputStream(Payloads.person()));
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Generated GraphQL responses.
+ *
+ * @author jefrajames
+ */
+public final class Payloads {
+
+    public static final String PEOPLE_QUERY = "query { people { id surname names address { street city } } }";
+
+    private Payloads() {
+    }
+
+    /**
+     * @param count the number of elements of the people list
+     * @return {"data":{"people":[...]}} as UTF-8
+     */
+    public static byte[] people(int count) {
+        StringBuilder json = new StringBuilder(count * 128 + 32).append("{\"data\":{\"people\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            person(json, i);
+        }
+        return json.append("]}}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return {"data":{"person":{...}}} as UTF-8
+     */
+    public static byte[] person() {
+        StringBuilder json = new StringBuilder("{\"data\":{\"person\":");
+        person(json, 42);
+        return json.append("}}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void person(StringBuilder json, int id) {
+        json.append("{\"id\":").append(id)
+                .append(",\"surname\":\"Surname").append(id)
+                .append("\",\"names\":[\"First").append(id).append("\",\"Middle").append(id)
+                .append("\"],\"address\":{\"street\":\"").append(id).append(" Main Street\",\"city\":\"Paris\"}}");
+    }
+
+}
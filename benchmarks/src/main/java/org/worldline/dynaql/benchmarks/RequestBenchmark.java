@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.worldline.dynaql.api.GraphQLClientBuilder;
+import org.worldline.dynaql.api.GraphQLRequest;
+import org.worldline.dynaql.impl.DynaQLClientBuilder;
+
+/**
+ * Serialization of a request, its query and variables.
+ *
+ * @author jefrajames
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBenchmark {
+
+    private static final String QUERY = "query ($surname: String!, $ids: [Int!]!, $address: AddressInput) {"
+            + " people(surname: $surname, ids: $ids, address: $address) { id surname names address { street city } } }";
+
+    // The size of the list variable
+    @Param({"0", "100", "10000"})
+    private int ids;
+
+    private final GraphQLClientBuilder graphQLClientBuilder = new DynaQLClientBuilder();
+
+    private List<Integer> idList;
+    private Person.Address address;
+    private GraphQLRequest request;
+    private ByteArrayOutputStream out;
+
+    @Setup
+    public void setup() {
+        idList = new ArrayList<>(ids);
+        for (int i = 0; i < ids; i++) {
+            idList.add(i);
+        }
+        address = new Person.Address();
+        address.setStreet("1 Main Street");
+        address.setCity("Paris");
+
+        request = newRequest();
+        out = new ByteArrayOutputStream(1024 + ids * 8);
+    }
+
+    private GraphQLRequest newRequest() {
+        return graphQLClientBuilder.newRequest(QUERY)
+                .addVariable("surname", "James")
+                .addVariable("ids", idList)
+                .addVariable("address", address);
+    }
+
+    @Benchmark
+    public String toJson() {
+        return request.toJson();
+    }
+
+    @Benchmark
+    public int writeJson() throws IOException {
+        out.reset();
+        request.writeJson(out);
+        return out.size();
+    }
+
+    // What an invocation does: the request is built then written once
+    @Benchmark
+    public int newRequestWriteJson() throws IOException {
+        out.reset();
+        newRequest().writeJson(out);
+        return out.size();
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.worldline.dynaql.api.GraphQLResponse;
+import org.worldline.dynaql.impl.DynaQLResponse;
+import org.worldline.dynaql.impl.DynaQLStreamingResponse;
+import org.worldline.dynaql.impl.JsonResponseParser;
+import org.worldline.dynaql.impl.jaxrs.GraphQLResponseReader;
+
+/**
+ * Parsing of a response body, as done by HttpInvocation and by the JAX-RS
+ * GraphQLResponseReader.
+ *
+ * @author jefrajames
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseParsingBenchmark {
+
+    // The number of elements of the list
+    @Param({"10", "1000", "10000", "100000"})
+    private int size;
+
+    private byte[] payload;
+
+    private final GraphQLResponseReader reader = new GraphQLResponseReader();
+    private final MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+
+    @Setup
+    public void setup() {
+        payload = Payloads.people(size);
+    }
+
+    // invoke: the body is parsed into a tree
+    @Benchmark
+    public DynaQLResponse jsonResponseParser() {
+        return JsonResponseParser.parse(new ByteArrayInputStream(payload));
+    }
+
+    // invokeStreaming: the elements are parsed and mapped one at a time
+    @Benchmark
+    public long streamingResponse() throws IOException {
+        ByteArrayInputStream in = new ByteArrayInputStream(payload);
+        try (DynaQLStreamingResponse response = new DynaQLStreamingResponse(JsonResponseParser.createParser(in), in)) {
+            return response.stream(Person.class, "people").count();
+        }
+    }
+
+    @Benchmark
+    public DynaQLResponse graphQLResponseReader() throws IOException {
+        return reader.readFrom(GraphQLResponse.class, GraphQLResponse.class, new Annotation[0],
+                MediaType.APPLICATION_JSON_TYPE, headers, new ByteArrayInputStream(payload));
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.api;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An argument of a field. Its value is rendered as a GraphQL literal: a
+ * String is quoted, a GraphQLEnum is not, an InputObject or a Collection is
+ * rendered with its content. Collections and arrays are copied into
+ * unmodifiable lists, so that changing them afterwards changes nothing.
+ *
+ * @author jefrajames
+ */
+public final class Argument {
+
+    private final String name;
+    private final Object value;
+
+    final int estimate;
+
+    public Argument(String name, Object value) {
+        this.name = Objects.requireNonNull(name, "name");
+        this.value = GraphQLValues.copyOf(value);
+        this.estimate = name.length() + 2 + GraphQLValues.estimate(this.value);
+    }
+
+    public static List<Argument> args(Argument... args) {
+        return Arrays.asList(args);
+    }
+
+    public static Argument arg(String name, Object value) {
+        return new Argument(name, value);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    void render(StringBuilder out) {
+        out.append(name).append(": ");
+        GraphQLValues.render(out, value);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Argument)) {
+            return false;
+        }
+        Argument other = (Argument) obj;
+        return name.equals(other.name) && Objects.equals(value, other.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, value);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(estimate);
+        render(out);
+        return out.toString();
+    }
+
+}
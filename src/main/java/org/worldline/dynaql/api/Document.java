@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.api;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable GraphQL document, built with the static factory methods of
+ * the api package:
+ *
+ * <pre>
+ * document(operation(Operation.Type.QUERY, field("people", field("id"), field("name"))))
+ * </pre>
+ *
+ * The document is rendered once, on the first call to toString: a document
+ * kept in a static field can be passed to GraphQLClientBuilder.newRequest for
+ * each call at no cost.
+ *
+ * @author jefrajames
+ */
+public final class Document {
+
+    private final List<Operation> operations;
+
+    // Rendered on first use, racing threads render the same text
+    private String text;
+    private int hash;
+
+    public Document(List<Operation> operations) {
+        this.operations = List.copyOf(operations);
+        if (this.operations.isEmpty()) {
+            throw new IllegalArgumentException("A document needs at least one operation");
+        }
+    }
+
+    public static Document document(Operation... operations) {
+        return new Document(Arrays.asList(operations));
+    }
+
+    public static Document document(List<Operation> operations) {
+        return new Document(operations);
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        return obj instanceof Document && toString().equals(obj.toString());
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = toString().hashCode();
+            hash = h;
+        }
+        return h;
+    }
+
+    /**
+     * @return the GraphQL text of the document
+     */
+    @Override
+    public String toString() {
+        String rendered = text;
+        if (rendered == null) {
+            int length = operations.size();
+            for (Operation operation : operations) {
+                length += operation.estimate;
+            }
+            StringBuilder out = new StringBuilder(length);
+            for (int i = 0; i < operations.size(); i++) {
+                if (i > 0) {
+                    out.append(' ');
+                }
+                operations.get(i).render(out);
+            }
+            rendered = out.toString();
+            text = rendered;
+        }
+        return rendered;
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.api;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A field of a selection set, with its arguments and its own selection set.
+ *
+ * @author jefrajames
+ */
+public final class Field {
+
+    private final String name;
+    private final List<Argument> args;
+    private final List<Field> fields;
+
+    final int estimate;
+
+    public Field(String name, List<Argument> args, List<Field> fields) {
+        this.name = Objects.requireNonNull(name, "name");
+        this.args = List.copyOf(args);
+        this.fields = List.copyOf(fields);
+
+        int length = name.length();
+        if (!this.args.isEmpty()) {
+            length += 2;
+            for (Argument arg : this.args) {
+                length += arg.estimate + 2;
+            }
+        }
+        if (!this.fields.isEmpty()) {
+            length += 4;
+            for (Field field : this.fields) {
+                length += field.estimate + 1;
+            }
+        }
+        this.estimate = length;
+    }
+
+    public static List<Field> fields(Field... fields) {
+        return Arrays.asList(fields);
+    }
+
+    public static Field field(String name) {
+        return new Field(name, Collections.emptyList(), Collections.emptyList());
+    }
+
+    public static Field field(String name, Field... fields) {
+        return new Field(name, Collections.emptyList(), Arrays.asList(fields));
+    }
+
+    public static Field field(String name, List<Field> fields) {
+        return new Field(name, Collections.emptyList(), fields);
+    }
+
+    public static Field field(String name, Argument... args) {
+        return new Field(name, Arrays.asList(args), Collections.emptyList());
+    }
+
+    public static Field field(String name, List<Argument> args, Field... fields) {
+        return new Field(name, args, Arrays.asList(fields));
+    }
+
+    public static Field field(String name, List<Argument> args, List<Field> fields) {
+        return new Field(name, args, fields);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Argument> getArgs() {
+        return args;
+    }
+
+    public List<Field> getFields() {
+        return fields;
+    }
+
+    void render(StringBuilder out) {
+        out.append(name);
+        if (!args.isEmpty()) {
+            out.append('(');
+            for (int i = 0; i < args.size(); i++) {
+                if (i > 0) {
+                    out.append(", ");
+                }
+                args.get(i).render(out);
+            }
+            out.append(')');
+        }
+        if (!fields.isEmpty()) {
+            renderSelectionSet(out, fields);
+        }
+    }
+
+    // " { field1 field2 }"
+    static void renderSelectionSet(StringBuilder out, List<Field> fields) {
+        out.append(" {");
+        for (Field field : fields) {
+            out.append(' ');
+            field.render(out);
+        }
+        out.append(" }");
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Field)) {
+            return false;
+        }
+        Field other = (Field) obj;
+        return name.equals(other.name) && args.equals(other.args) && fields.equals(other.fields);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, args, fields);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(estimate);
+        render(out);
+        return out.toString();
+    }
+
+}
@@ -21,4 +21,23 @@ package org.worldline.dynaql.api;
  */
 public interface GraphQLClientBuilder {
     GraphQLRequest newRequest(String request);
+
+    /**
+     * Best effort: implementations which do not normalize queries ignore it
+     * and return this builder.
+     *
+     * @param normalize true to send the queries of the new requests without
+     * comments nor insignificant whitespace, false by default
+     * @return a builder creating the requests accordingly, this builder is left unchanged
+     */
+    default GraphQLClientBuilder normalizeQueries(boolean normalize) {
+        return this;
+    }
+
+    /**
+     * @return a request running the document, rendered once whatever the number of requests
+     */
+    default GraphQLRequest newRequest(Document document) {
+        return newRequest(document.toString());
+    }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.api;
+
+import java.util.Objects;
+
+/**
+ * An enum value, rendered without quotes.
+ *
+ * @author jefrajames
+ */
+public final class GraphQLEnum {
+
+    private final String value;
+
+    public GraphQLEnum(String value) {
+        this.value = Objects.requireNonNull(value, "value");
+    }
+
+    public static GraphQLEnum gqlEnum(String value) {
+        return new GraphQLEnum(value);
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof GraphQLEnum && value.equals(((GraphQLEnum) obj).value);
+    }
+
+    @Override
+    public int hashCode() {
+        return value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+
+}
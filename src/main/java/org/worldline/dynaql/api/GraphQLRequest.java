@@ -15,6 +15,10 @@
  */
 package org.worldline.dynaql.api;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
 /**
  *
  * @author jefrajames
@@ -26,5 +30,14 @@ public interface GraphQLRequest {
     GraphQLRequest resetVariables();
 
     String toJson();
+
+    /**
+     * Writes the UTF-8 JSON form of the request. The default writes toJson,
+     * implementations may write it without building a String. The stream is
+     * not closed.
+     */
+    default void writeJson(OutputStream out) throws IOException {
+        out.write(toJson().getBytes(StandardCharsets.UTF_8));
+    }
     
 }
@@ -15,8 +15,10 @@
  */
 package org.worldline.dynaql.api;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 import javax.json.JsonObject;
 
 /**
@@ -33,6 +35,18 @@ public interface GraphQLResponse {
 
     <T> T getObject(Class<T> dataType, String rootField);
 
+    /**
+     * Same as getList, but elements are mapped one at a time. Depending on
+     * the implementation, they can be decoded straight from the network: the
+     * stream should then be closed.
+     */
+    <T> Stream<T> stream(Class<T> dataType, String rootField);
+
+    /**
+     * The Iterator counterpart of stream.
+     */
+    <T> Iterator<T> iterator(Class<T> dataType, String rootField);
+
     boolean hasData();
 
     boolean hasError();
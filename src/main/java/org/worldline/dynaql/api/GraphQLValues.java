@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.api;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Renders the values of arguments and input object fields as GraphQL
+ * literals.
+ *
+ * @author jefrajames
+ */
+final class GraphQLValues {
+
+    private GraphQLValues() {
+    }
+
+    /**
+     * @return the value, with its collections and arrays copied into
+     * unmodifiable lists: a value cannot change once rendered
+     */
+    static Object copyOf(Object value) {
+        if (value instanceof Collection) {
+            List<Object> copy = new ArrayList<>(((Collection<?>) value).size());
+            for (Object element : (Collection<?>) value) {
+                copy.add(copyOf(element));
+            }
+            return Collections.unmodifiableList(copy);
+        }
+        if (value != null && value.getClass().isArray()) {
+            int length = Array.getLength(value);
+            List<Object> copy = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                copy.add(copyOf(Array.get(value, i)));
+            }
+            return Collections.unmodifiableList(copy);
+        }
+        return value;
+    }
+
+    /**
+     * @return the probable length of the rendered value, to size the buffer
+     */
+    static int estimate(Object value) {
+        if (value instanceof String) {
+            return ((String) value).length() + 2;
+        }
+        if (value instanceof GraphQLEnum) {
+            return ((GraphQLEnum) value).getValue().length();
+        }
+        if (value instanceof InputObject) {
+            return ((InputObject) value).estimate;
+        }
+        if (value instanceof Collection) {
+            int length = 2;
+            for (Object element : (Collection<?>) value) {
+                length += estimate(element) + 2;
+            }
+            return length;
+        }
+        return 8;
+    }
+
+    static void render(StringBuilder out, Object value) {
+        if (value == null) {
+            out.append("null");
+        } else if (value instanceof String) {
+            renderString(out, (String) value);
+        } else if (value instanceof Number) {
+            renderNumber(out, (Number) value);
+        } else if (value instanceof Boolean) {
+            out.append(value);
+        } else if (value instanceof GraphQLEnum) {
+            out.append(((GraphQLEnum) value).getValue());
+        } else if (value instanceof InputObject) {
+            ((InputObject) value).render(out);
+        } else if (value instanceof Collection) {
+            out.append('[');
+            String separator = "";
+            for (Object element : (Collection<?>) value) {
+                out.append(separator);
+                render(out, element);
+                separator = ", ";
+            }
+            out.append(']');
+        } else {
+            renderString(out, value.toString()); // Dates and other custom scalars
+        }
+    }
+
+    private static void renderNumber(StringBuilder out, Number value) {
+        if ((value instanceof Double || value instanceof Float) && !Double.isFinite(value.doubleValue())) {
+            throw new IllegalArgumentException("A GraphQL Float must be finite: " + value);
+        }
+        out.append(value);
+    }
+
+    private static void renderString(StringBuilder out, String value) {
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.append("\\\"");
+                    break;
+                case '\\':
+                    out.append("\\\\");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\b':
+                    out.append("\\b");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        out.append('"');
+    }
+
+}
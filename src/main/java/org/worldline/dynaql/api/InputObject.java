@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.api;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An input object value, such as {name: "James", age: 42}.
+ *
+ * @author jefrajames
+ */
+public final class InputObject {
+
+    private final List<InputObjectField> inputObjectFields;
+
+    final int estimate;
+
+    public InputObject(List<InputObjectField> inputObjectFields) {
+        this.inputObjectFields = List.copyOf(inputObjectFields);
+
+        int length = 2;
+        for (InputObjectField inputObjectField : this.inputObjectFields) {
+            length += inputObjectField.estimate + 2;
+        }
+        this.estimate = length;
+    }
+
+    public static InputObject object(InputObjectField... inputObjectFields) {
+        return new InputObject(Arrays.asList(inputObjectFields));
+    }
+
+    public static InputObject object(List<InputObjectField> inputObjectFields) {
+        return new InputObject(inputObjectFields);
+    }
+
+    public List<InputObjectField> getInputObjectFields() {
+        return inputObjectFields;
+    }
+
+    void render(StringBuilder out) {
+        out.append('{');
+        for (int i = 0; i < inputObjectFields.size(); i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            inputObjectFields.get(i).render(out);
+        }
+        out.append('}');
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof InputObject && inputObjectFields.equals(((InputObject) obj).inputObjectFields);
+    }
+
+    @Override
+    public int hashCode() {
+        return inputObjectFields.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(estimate);
+        render(out);
+        return out.toString();
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.api;
+
+import java.util.Objects;
+
+/**
+ * A field of an InputObject, named prop to avoid any confusion with the
+ * fields of a selection set. Its value is copied like the one of an Argument.
+ *
+ * @author jefrajames
+ */
+public final class InputObjectField {
+
+    private final String name;
+    private final Object value;
+
+    final int estimate;
+
+    public InputObjectField(String name, Object value) {
+        this.name = Objects.requireNonNull(name, "name");
+        this.value = GraphQLValues.copyOf(value);
+        this.estimate = name.length() + 2 + GraphQLValues.estimate(this.value);
+    }
+
+    public static InputObjectField prop(String name, Object value) {
+        return new InputObjectField(name, value);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    void render(StringBuilder out) {
+        out.append(name).append(": ");
+        GraphQLValues.render(out, value);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof InputObjectField)) {
+            return false;
+        }
+        InputObjectField other = (InputObjectField) obj;
+        return name.equals(other.name) && Objects.equals(value, other.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, value);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(estimate);
+        render(out);
+        return out.toString();
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.api;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * An operation of a Document. When omitted, the type is QUERY and the name
+ * is empty: the operation is anonymous.
+ *
+ * @author jefrajames
+ */
+public final class Operation {
+
+    public enum Type {
+        QUERY, MUTATION, SUBSCRIPTION;
+
+        private final String keyword = name().toLowerCase(Locale.ROOT);
+    }
+
+    private final Type type;
+    private final String name;
+    private final List<Field> fields;
+
+    final int estimate;
+
+    public Operation(Type type, String name, List<Field> fields) {
+        this.type = Objects.requireNonNull(type, "type");
+        this.name = name == null ? "" : name;
+        this.fields = List.copyOf(fields);
+        if (this.fields.isEmpty()) {
+            throw new IllegalArgumentException("An operation needs at least one field");
+        }
+
+        int length = type.keyword.length() + this.name.length() + 5;
+        for (Field field : this.fields) {
+            length += field.estimate + 1;
+        }
+        this.estimate = length;
+    }
+
+    public static List<Operation> operations(Operation... operations) {
+        return Arrays.asList(operations);
+    }
+
+    public static Operation operation(Field... fields) {
+        return new Operation(Type.QUERY, "", Arrays.asList(fields));
+    }
+
+    public static Operation operation(List<Field> fields) {
+        return new Operation(Type.QUERY, "", fields);
+    }
+
+    public static Operation operation(Type type, Field... fields) {
+        return new Operation(type, "", Arrays.asList(fields));
+    }
+
+    public static Operation operation(Type type, List<Field> fields) {
+        return new Operation(type, "", fields);
+    }
+
+    public static Operation operation(String name, Field... fields) {
+        return new Operation(Type.QUERY, name, Arrays.asList(fields));
+    }
+
+    public static Operation operation(String name, List<Field> fields) {
+        return new Operation(Type.QUERY, name, fields);
+    }
+
+    public static Operation operation(Type type, String name, Field... fields) {
+        return new Operation(type, name, Arrays.asList(fields));
+    }
+
+    public static Operation operation(Type type, String name, List<Field> fields) {
+        return new Operation(type, name, fields);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Field> getFields() {
+        return fields;
+    }
+
+    void render(StringBuilder out) {
+        out.append(type.keyword);
+        if (!name.isEmpty()) {
+            out.append(' ').append(name);
+        }
+        Field.renderSelectionSet(out, fields);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Operation)) {
+            return false;
+        }
+        Operation other = (Operation) obj;
+        return type == other.type && name.equals(other.name) && fields.equals(other.fields);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, name, fields);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder(estimate);
+        render(out);
+        return out.toString();
+    }
+
+}
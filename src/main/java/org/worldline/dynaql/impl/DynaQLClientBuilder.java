@@ -24,9 +24,25 @@ import org.worldline.dynaql.api.GraphQLClientBuilder;
  */
 public class DynaQLClientBuilder implements GraphQLClientBuilder {
 
+    // Set per builder instance: a builder shared by the application is never changed
+    private final boolean normalizeQueries;
+
+    public DynaQLClientBuilder() {
+        this(false);
+    }
+
+    private DynaQLClientBuilder(boolean normalizeQueries) {
+        this.normalizeQueries = normalizeQueries;
+    }
+
     @Override
     public GraphQLRequest newRequest(String request) {
-        return new DynaQLRequest(request);
+        return new DynaQLRequest(normalizeQueries ? QueryNormalizer.normalize(request) : request);
+    }
+
+    @Override
+    public DynaQLClientBuilder normalizeQueries(boolean normalize) {
+        return normalize == normalizeQueries ? this : new DynaQLClientBuilder(normalize);
     }
     
 }
@@ -1,12 +1,19 @@
 package org.worldline.dynaql.impl;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 import javax.json.Json;
-import javax.json.JsonObject;
-import javax.json.JsonObjectBuilder;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
 import org.worldline.dynaql.api.GraphQLRequest;
+import org.worldline.dynaql.impl.bind.VariableEncoder;
 
 /**
  * 
@@ -14,11 +21,28 @@ import org.worldline.dynaql.api.GraphQLRequest;
  */
 public class DynaQLRequest implements GraphQLRequest {
 
+    // Looking up the JSON-P provider is costly: do it once
+    private static final JsonGeneratorFactory GENERATOR_FACTORY = Json.createGeneratorFactory(null);
+
+    private static final byte[] VARIABLES = ",\"variables\":".getBytes(StandardCharsets.UTF_8);
+
     private final String request;
     private Map<String, Object> variables;
 
+    // {"query":"<escaped request>" computed once, only the variables change between sends
+    private final byte[] queryPrefix;
+
+    // The type and name of the operation, parsed on first use: the name is set first
+    private static final String UNKNOWN = "unknown";
+    private volatile String operationType;
+    private String operationName;
+
+    // "extensions":{"persistedQuery":...}} computed on first use
+    private byte[] persistedQuerySuffix;
+
     protected DynaQLRequest(String request) {
         this.request = request;
+        this.queryPrefix = ("{\"query\":" + Json.createValue(request).toString()).getBytes(StandardCharsets.UTF_8);
     }
 
 
@@ -26,6 +50,140 @@ public class DynaQLRequest implements GraphQLRequest {
         return request;
     }
 
+    private String operationType() {
+        String type = operationType;
+        if (type == null) {
+            type = parseOperations(request);
+            operationType = type;
+        }
+        return type;
+    }
+
+    /**
+     * Walks the definitions of the document, skipping its comments and
+     * string literals, without normalizing it. Fragments are skipped, the name
+     * is the one of the first operation.
+     *
+     * @return query if all the operations are queries, else the type of the
+     * first other one, UNKNOWN if the document cannot be classified
+     */
+    private String parseOperations(String document) {
+        String type = null;
+        boolean definitionStart = true;
+        int depth = 0;
+        int parentheses = 0;
+
+        int i = 0;
+        while (i < document.length()) {
+            char c = document.charAt(i);
+            if (c == '"') {
+                i = skipString(document, i);
+                continue;
+            }
+            if (c == '#') {
+                i = skipComment(document, i);
+                continue;
+            }
+            if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < document.length() && (Character.isLetterOrDigit(document.charAt(i)) || document.charAt(i) == '_')) {
+                    i++;
+                }
+                if (definitionStart) {
+                    String keyword = document.substring(start, i);
+                    if ("query".equals(keyword) || "mutation".equals(keyword) || "subscription".equals(keyword)) {
+                        if (type == null) {
+                            operationName = operationNameAt(document, i);
+                            type = keyword;
+                        } else if ("query".equals(type)) {
+                            type = keyword; // A query and a write in the same document
+                        }
+                    } else if (!"fragment".equals(keyword)) {
+                        return UNKNOWN;
+                    }
+                    definitionStart = false;
+                }
+                continue;
+            }
+            if (c == '(') {
+                parentheses++;
+            } else if (c == ')') {
+                parentheses--;
+            } else if (c == '{' && parentheses == 0) {
+                if (definitionStart) {
+                    type = type == null ? "query" : type; // Shorthand form
+                    definitionStart = false;
+                }
+                depth++;
+            } else if (c == '}' && parentheses == 0) {
+                definitionStart = --depth == 0;
+            }
+            i++;
+        }
+
+        return type != null ? type : UNKNOWN;
+    }
+
+    private static String operationNameAt(String document, int i) {
+        while (i < document.length()) {
+            char c = document.charAt(i);
+            if (c == '#') {
+                i = skipComment(document, i);
+            } else if (Character.isWhitespace(c) || c == ',' || c == '\uFEFF') {
+                i++;
+            } else {
+                break;
+            }
+        }
+        int start = i;
+        while (i < document.length() && (Character.isLetterOrDigit(document.charAt(i)) || document.charAt(i) == '_')) {
+            i++;
+        }
+        return i > start && !Character.isDigit(document.charAt(start)) ? document.substring(start, i) : null;
+    }
+
+    // Returns the index of the line break ending the comment starting at start
+    private static int skipComment(String document, int start) {
+        int i = start;
+        while (i < document.length() && document.charAt(i) != '\n' && document.charAt(i) != '\r') {
+            i++;
+        }
+        return i;
+    }
+
+    // Returns the index following the string literal starting at start
+    private static int skipString(String document, int start) {
+        if (document.startsWith("\"\"\"", start)) {
+            int end = document.indexOf("\"\"\"", start + 3);
+            while (end > 0 && document.charAt(end - 1) == '\\') {
+                end = document.indexOf("\"\"\"", end + 3);
+            }
+            return end < 0 ? document.length() : end + 3;
+        }
+        int i = start + 1;
+        while (i < document.length() && document.charAt(i) != '"') {
+            i += document.charAt(i) == '\\' ? 2 : 1;
+        }
+        return i + 1;
+    }
+
+    /**
+     * @return true if all the operations of the document are queries,
+     * possibly in the shorthand form. A document which cannot be classified
+     * is not considered as a query: it is neither cached nor sent again.
+     */
+    public boolean isQuery() {
+        return "query".equals(operationType());
+    }
+
+    /**
+     * @return the name of the operation, null if anonymous
+     */
+    public String getOperationName() {
+        operationType();
+        return operationName;
+    }
+
     public Map<String, Object> getVariables() {
         return variables;
     }
@@ -50,35 +208,85 @@ public class DynaQLRequest implements GraphQLRequest {
         return "GraphQLRequest{" + "request=" + request + ", variables=" + variables + '}';
     }
 
-    private JsonObject formatJsonVariables() {
-        JsonObjectBuilder varBuilder = Json.createObjectBuilder();
+    private void writeJsonVariables(OutputStream out) {
+        // The generator must not close the caller's stream
+        OutputStream unclosable = new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
 
-        variables.forEach((k, v) -> {
-            // Other types to process here
-            if (v instanceof String) {
-                varBuilder.add(k, (String) v);
-            } else if (v instanceof Integer) {
-                varBuilder.add(k, (Integer) v);
+            @Override
+            public void close() throws IOException {
+                flush();
             }
-        });
+        };
+
+        try (JsonGenerator generator = GENERATOR_FACTORY.createGenerator(unclosable, StandardCharsets.UTF_8)) {
+            generator.writeStartObject();
+            variables.forEach((k, v) -> VariableEncoder.write(generator, k, v));
+            generator.writeEnd();
+        }
+    }
+
+    @Override
+    public void writeJson(OutputStream out) throws IOException {
+        out.write(queryPrefix);
+        if (variables != null) {
+            out.write(VARIABLES);
+            writeJsonVariables(out);
+        }
+        out.write('}');
+    }
 
-        return varBuilder.build();
+    /**
+     * @return the SHA-256 hash of the query, used by Automatic Persisted Queries
+     */
+    public String getQueryHash() {
+        return PersistedQueries.hash(request);
+    }
+
+    /**
+     * Writes the Automatic Persisted Queries form of the request: the hash of
+     * the query in extensions.persistedQuery, and the variables.
+     *
+     * @param out the target stream, not closed
+     * @param withQuery true to send the query text too, so that the server registers its hash
+     */
+    public void writePersistedJson(OutputStream out, boolean withQuery) throws IOException {
+        if (withQuery) {
+            out.write(queryPrefix);
+            out.write(',');
+        } else {
+            out.write('{');
+        }
+        if (variables != null) {
+            out.write(VARIABLES, 1, VARIABLES.length - 1);
+            writeJsonVariables(out);
+            out.write(',');
+        }
+        if (persistedQuerySuffix == null) {
+            persistedQuerySuffix = ("\"extensions\":{\"persistedQuery\":{\"version\":1,\"sha256Hash\":\""
+                    + getQueryHash() + "\"}}}").getBytes(StandardCharsets.UTF_8);
+        }
+        out.write(persistedQuerySuffix);
     }
 
     @Override
     public String toJson() {
-        JsonObjectBuilder queryBuilder = Json.createObjectBuilder().add("query", request);
-        if (variables!=null) {
-            queryBuilder.add("variables", formatJsonVariables());
+        ByteArrayOutputStream out = new ByteArrayOutputStream(queryPrefix.length + 64);
+        try {
+            writeJson(out);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
         }
-
-        return queryBuilder.build().toString();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
     }
 
     @Override
     public int hashCode() {
-        int hash = 7;
-        return hash;
+        // Consistent with equals: requests can be used as map keys
+        return Objects.hash(request, variables);
     }
 
     @Override
@@ -16,13 +16,22 @@
 package org.worldline.dynaql.impl;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.json.JsonArray;
 import javax.json.JsonObject;
-import javax.json.bind.Jsonb;
-import javax.json.bind.JsonbBuilder;
+import javax.json.JsonValue;
+import javax.json.bind.JsonbConfig;
 import org.worldline.dynaql.api.GraphQLResponse;
+import org.worldline.dynaql.impl.bind.JsonValueBinder;
+import org.worldline.dynaql.impl.bind.JsonbRegistry;
 
 /**
  *
@@ -32,7 +41,12 @@ public class DynaQLResponse implements GraphQLResponse {
 
     private JsonObject data;
     private List<GraphQLError> errors;
-    private Jsonb jsonb;
+
+    // Shared with all the responses using the same JSON-B configuration
+    private JsonValueBinder binder = JsonbRegistry.getBinder(null);
+
+    // Receives the time spent in getObject and getList, if set
+    private LongConsumer mappingTimer;
 
     public void setData(JsonObject data) {
         this.data = data;
@@ -62,45 +76,101 @@ public class DynaQLResponse implements GraphQLResponse {
         return errors != null;
     }
 
-    private Jsonb getJsonb() {
-        if (jsonb == null) {
-            jsonb = JsonbBuilder.create();
-        }
-        return jsonb;
+    /**
+     * @param jsonbConfig the JSON-B configuration used by getObject and getList
+     */
+    public void setJsonbConfig(JsonbConfig jsonbConfig) {
+        this.binder = JsonbRegistry.getBinder(jsonbConfig);
+    }
+
+    /**
+     * @param mappingTimer receives the time in nanoseconds spent by each getObject and getList call
+     */
+    public void setMappingTimer(LongConsumer mappingTimer) {
+        this.mappingTimer = mappingTimer;
     }
 
-    
     @Override
     public <T> T getObject(Class<T> dataType, String rootField) {
-        JsonObject jsonObject = data.getJsonObject(rootField);
-        return getJsonb().fromJson(jsonObject.toString(), dataType);
+        if (mappingTimer == null) {
+            return binder.fromJsonValue(data.get(rootField), dataType);
+        }
+        long start = System.nanoTime();
+        T result = binder.fromJsonValue(data.get(rootField), dataType);
+        mappingTimer.accept(System.nanoTime() - start);
+        return result;
     }
 
     
     @Override
     public <T> List<T> getList(Class<T> dataType, String rootField) {
+        if (mappingTimer == null) {
+            return toList(dataType, rootField);
+        }
+        long start = System.nanoTime();
+        List<T> result = toList(dataType, rootField);
+        mappingTimer.accept(System.nanoTime() - start);
+        return result;
+    }
+
+    private <T> List<T> toList(Class<T> dataType, String rootField) {
         
-        List<T> result = new ArrayList<T>();
-        
-        Object item = data.get(rootField);
+        JsonValue item = data.get(rootField);
         if ( item instanceof JsonObject ) {
             // A single Object can be returned as a mono-element List
-            result.add(getObject(dataType, rootField));
+            List<T> result = new ArrayList<>(1);
+            result.add(binder.fromJsonValue(item, dataType));
             return result;
         }
 
         JsonArray jsonArray = (JsonArray) item;
         
-        jsonArray.forEach(o -> {
-            result.add(getJsonb().fromJson(o.toString(), dataType));
-        });
+        List<T> result = new ArrayList<>(jsonArray.size());
+        for (JsonValue o : jsonArray) {
+            result.add(binder.fromJsonValue(o, dataType));
+        }
 
         return result;
     }
 
+    @Override
+    public <T> Stream<T> stream(Class<T> dataType, String rootField) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(dataType, rootField), Spliterator.ORDERED), false);
+    }
+
+    @Override
+    public <T> Iterator<T> iterator(Class<T> dataType, String rootField) {
+
+        JsonValue item = data != null ? data.get(rootField) : null;
+        if ( item == null || item.getValueType() == JsonValue.ValueType.NULL ) {
+            return Collections.emptyIterator();
+        }
+        if ( !(item instanceof JsonArray) ) {
+            // A single Object can be returned as a mono-element Iterator
+            return Collections.singleton(toObject(item, dataType)).iterator();
+        }
+
+        Iterator<JsonValue> values = ((JsonArray) item).iterator();
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return values.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return toObject(values.next(), dataType);
+            }
+        };
+    }
+
+    protected <T> T toObject(JsonValue value, Class<T> dataType) {
+        return binder.fromJsonValue(value, dataType);
+    }
+
     @Override
     public String toString() {
-        return "GraphQLResponse{" + "data=" + data + ", errors=" + errors + ", jsonb=" + jsonb + '}';
+        return "GraphQLResponse{" + "data=" + data + ", errors=" + errors + '}';
     }
 
     public static class DynaQLError implements GraphQLError {
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParsingException;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A response read lazily from the network.
+ *
+ * stream and iterator decode the elements of a root field one at a time,
+ * while they are downloaded: only the current element is held in memory. The
+ * streamed root field is not kept and is missing from getData afterwards.
+ * The other methods read the whole remaining content first.
+ *
+ * The response must be closed, which is done automatically once it has been
+ * completely read. This class is not thread-safe.
+ *
+ * @author jefrajames
+ */
+public class DynaQLStreamingResponse extends DynaQLResponse implements Closeable {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(DynaQLStreamingResponse.class);
+
+    private enum State {
+        BEFORE_DATA, IN_DATA, STREAMING, AFTER_DATA, DONE
+    }
+
+    private final JsonParser parser;
+    private final Closeable resource;
+
+    private State state = State.BEFORE_DATA;
+    private JsonObjectBuilder dataBuilder;
+    private String streamedField;
+
+    // The first event of the element read by hasNext, not consumed by next yet
+    private Event pendingElement;
+
+    /**
+     * @param parser a parser positioned before the response object
+     * @param resource closed with the response, aborted if not completely read
+     */
+    public DynaQLStreamingResponse(JsonParser parser, Closeable resource) {
+        this.parser = parser;
+        this.resource = resource;
+
+        if (!parser.hasNext() || parser.next() != Event.START_OBJECT) {
+            close();
+            throw new JsonParsingException("A GraphQL response must be a JSON object", parser.getLocation());
+        }
+    }
+
+    // Reads the top-level elements, stops after entering data if required
+    private void readTopLevel(boolean stopInData) {
+        while (state == State.BEFORE_DATA || state == State.AFTER_DATA) {
+            Event event = parser.next();
+            if (event == Event.END_OBJECT) {
+                finish();
+                return;
+            }
+
+            String key = parser.getString();
+            event = parser.next();
+
+            if ("data".equals(key) && event == Event.START_OBJECT) {
+                state = State.IN_DATA;
+                dataBuilder = Json.createObjectBuilder();
+                if (stopInData) {
+                    return;
+                }
+                readData(null);
+            } else if ("errors".equals(key) && event == Event.START_ARRAY) {
+                log.warn("GraphQL errors element detected");
+                setErrors(JsonResponseParser.readErrors(parser.getArray()));
+            } else {
+                if ("data".equals(key)) {
+                    log.warn("GraphQL data element is null");
+                }
+                JsonResponseParser.skip(parser, event);
+            }
+        }
+    }
+
+    // Reads the data elements up to rootField, returns the event of its value or null at the end of data
+    private Event readData(String rootField) {
+        while (true) {
+            Event event = parser.next();
+            if (event == Event.END_OBJECT) {
+                JsonObject data = dataBuilder.build();
+                dataBuilder = null;
+                setData(data);
+                state = State.AFTER_DATA;
+                return null;
+            }
+
+            String key = parser.getString();
+            event = parser.next();
+            if (key.equals(rootField)) {
+                return event;
+            }
+            dataBuilder.add(key, parser.getValue());
+        }
+    }
+
+    private void drain() {
+        try {
+            if (state == State.STREAMING) {
+                skipElements();
+                state = State.IN_DATA;
+            }
+            if (state == State.IN_DATA) {
+                readData(null);
+            }
+            readTopLevel(false);
+        } catch (RuntimeException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    // Skips the rest of the streamed list, including the element read by hasNext if any
+    private void skipElements() {
+        // Counted here: skipArray is not reliable once the elements have been entered
+        int depth = pendingElement == Event.START_OBJECT || pendingElement == Event.START_ARRAY ? 2 : 1;
+        pendingElement = null;
+        while (depth > 0) {
+            switch (parser.next()) {
+                case START_OBJECT:
+                case START_ARRAY:
+                    depth++;
+                    break;
+                case END_OBJECT:
+                case END_ARRAY:
+                    depth--;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void finish() {
+        state = State.DONE;
+        // Closing the content first lets the connection be reused
+        closeQuietly(parser::close);
+        closeQuietly(resource);
+    }
+
+    @Override
+    public void close() {
+        if (state != State.DONE) {
+            state = State.DONE;
+            // Abort: there is no point in downloading the remaining content
+            closeQuietly(resource);
+            closeQuietly(parser::close);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException | RuntimeException ex) {
+            log.debug("Error while closing a streaming response", ex);
+        }
+    }
+
+    @Override
+    public <T> Stream<T> stream(Class<T> dataType, String rootField) {
+        return super.stream(dataType, rootField).onClose(this::close);
+    }
+
+    @Override
+    public <T> Iterator<T> iterator(Class<T> dataType, String rootField) {
+
+        if (rootField.equals(streamedField)) {
+            throw new IllegalStateException(rootField + " has already been streamed");
+        }
+        if (state == State.STREAMING) {
+            throw new IllegalStateException(streamedField + " is being streamed");
+        }
+
+        try {
+            if (state == State.BEFORE_DATA) {
+                readTopLevel(true);
+            }
+            if (state != State.IN_DATA) {
+                return super.iterator(dataType, rootField);
+            }
+
+            Event event = readData(rootField);
+            if (event == null) {
+                // Not found in data, read what remains
+                readTopLevel(false);
+                return super.iterator(dataType, rootField);
+            }
+
+            if (event == Event.START_ARRAY) {
+                state = State.STREAMING;
+                streamedField = rootField;
+                return new ElementIterator<>(dataType);
+            }
+
+            JsonValue value = parser.getValue();
+            dataBuilder.add(rootField, value);
+            return value.getValueType() == JsonValue.ValueType.NULL
+                    ? Collections.emptyIterator() : Collections.singleton(toObject(value, dataType)).iterator();
+
+        } catch (RuntimeException ex) {
+            close();
+            throw ex;
+        }
+    }
+
+    private class ElementIterator<T> implements Iterator<T> {
+
+        private final Class<T> dataType;
+
+        private ElementIterator(Class<T> dataType) {
+            this.dataType = dataType;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (pendingElement == null && state == State.STREAMING) {
+                try {
+                    Event event = parser.next();
+                    if (event == Event.END_ARRAY) {
+                        // Read the rest of the response and release the connection
+                        state = State.IN_DATA;
+                        drain();
+                    } else {
+                        pendingElement = event;
+                    }
+                } catch (RuntimeException ex) {
+                    close();
+                    throw ex;
+                }
+            }
+            // Once the response is drained or closed, there is no element left
+            return pendingElement != null && state == State.STREAMING;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            pendingElement = null;
+            try {
+                return toObject(parser.getValue(), dataType);
+            } catch (RuntimeException ex) {
+                close();
+                throw ex;
+            }
+        }
+    }
+
+    @Override
+    public JsonObject getData() {
+        drain();
+        return super.getData();
+    }
+
+    @Override
+    public List<GraphQLError> getErrors() {
+        drain();
+        return super.getErrors();
+    }
+
+    @Override
+    public boolean hasData() {
+        drain();
+        return super.hasData();
+    }
+
+    @Override
+    public boolean hasError() {
+        drain();
+        return super.hasError();
+    }
+
+    @Override
+    public <T> List<T> getList(Class<T> dataType, String rootField) {
+        drain();
+        return super.getList(dataType, rootField);
+    }
+
+    @Override
+    public <T> T getObject(Class<T> dataType, String rootField) {
+        drain();
+        return super.getObject(dataType, rootField);
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParserFactory;
+import javax.json.stream.JsonParsingException;
+import org.slf4j.LoggerFactory;
+import org.worldline.dynaql.api.GraphQLResponse.GraphQLError;
+import org.worldline.dynaql.impl.DynaQLResponse.DynaQLError;
+import org.worldline.dynaql.impl.bind.JsonbRegistry;
+
+/**
+ * Builds a DynaQLResponse from a stream of JSON parser events.
+ *
+ * Only the data and errors elements are turned into trees, the raw text of
+ * the response is never materialized.
+ *
+ * @author jefrajames
+ */
+public class JsonResponseParser {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(JsonResponseParser.class);
+
+    // Looking up the JSON-P provider is costly: do it once
+    private static final JsonParserFactory PARSER_FACTORY = Json.createParserFactory(null);
+
+    private static final Type ERRORS_TYPE = new ArrayList<DynaQLError>() {
+    }.getClass().getGenericSuperclass();
+
+    private JsonResponseParser() {
+    }
+
+    /**
+     * @param contentStream a JSON content, the encoding is auto-detected
+     * @return a parser over this content
+     */
+    public static JsonParser createParser(InputStream contentStream) {
+        return PARSER_FACTORY.createParser(contentStream);
+    }
+
+    /**
+     * @param reader a JSON content
+     * @return a parser over this content
+     */
+    public static JsonParser createParser(Reader reader) {
+        return PARSER_FACTORY.createParser(reader);
+    }
+
+    /**
+     * @param contentStream a GraphQL response, the encoding is auto-detected
+     * @return the response
+     */
+    public static DynaQLResponse parse(InputStream contentStream) {
+        try (JsonParser parser = createParser(contentStream)) {
+            return parse(parser);
+        }
+    }
+
+    /**
+     * Reads a GraphQL response object from the parser.
+     *
+     * @param parser a parser positioned before the response object
+     * @return the response
+     */
+    public static DynaQLResponse parse(JsonParser parser) {
+
+        if (!parser.hasNext() || parser.next() != Event.START_OBJECT) {
+            throw new JsonParsingException("A GraphQL response must be a JSON object", parser.getLocation());
+        }
+
+        return readResponse(parser);
+    }
+
+    /**
+     * Reads the response of a batch, a JSON array of GraphQL responses.
+     *
+     * @param parser a parser positioned before the array
+     * @return the responses, in the order of the array, null if the body is a
+     * single JSON object: the server has not handled the request as a batch
+     */
+    public static List<DynaQLResponse> parseBatch(JsonParser parser) {
+
+        Event first = parser.hasNext() ? parser.next() : null;
+        if (first == Event.START_OBJECT) {
+            return null;
+        }
+        if (first != Event.START_ARRAY) {
+            throw new JsonParsingException("A GraphQL batch response must be a JSON array", parser.getLocation());
+        }
+
+        List<DynaQLResponse> responses = new ArrayList<>();
+
+        Event event;
+        while ((event = parser.next()) != Event.END_ARRAY) {
+            if (event != Event.START_OBJECT) {
+                throw new JsonParsingException("A GraphQL response must be a JSON object", parser.getLocation());
+            }
+            responses.add(readResponse(parser));
+        }
+
+        return responses;
+    }
+
+    // The START_OBJECT event has been read
+    private static DynaQLResponse readResponse(JsonParser parser) {
+
+        DynaQLResponse graphQLResponse = new DynaQLResponse();
+
+        while (parser.next() == Event.KEY_NAME) {
+            String key = parser.getString();
+            Event event = parser.next();
+
+            switch (key) {
+                case "data":
+                    if (event == Event.START_OBJECT) {
+                        graphQLResponse.setData(parser.getObject());
+                    } else {
+                        log.warn("GraphQL data element is null");
+                    }
+                    break;
+                case "errors":
+                    if (event == Event.START_ARRAY) {
+                        log.warn("GraphQL errors element detected");
+                        graphQLResponse.setErrors(readErrors(parser.getArray()));
+                    }
+                    break;
+                default:
+                    // Extensions and unknown elements are ignored
+                    skip(parser, event);
+            }
+        }
+
+        return graphQLResponse;
+    }
+
+    static void skip(JsonParser parser, Event event) {
+        if (event == Event.START_OBJECT) {
+            parser.skipObject();
+        } else if (event == Event.START_ARRAY) {
+            parser.skipArray();
+        }
+    }
+
+    /**
+     * @param rawErrors the errors element of a GraphQL response
+     * @return the errors
+     */
+    @SuppressWarnings("unchecked")
+    public static List<GraphQLError> readErrors(JsonArray rawErrors) {
+        // Errors have a fixed structure: the default configuration is enough
+        return (List<GraphQLError>) JsonbRegistry.getBinder(null).fromJsonValue(rawErrors, ERRORS_TYPE);
+    }
+
+}
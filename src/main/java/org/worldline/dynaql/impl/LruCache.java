@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A thread-safe cache keeping the values of the maxEntries most recently
+ * used keys.
+ *
+ * A value is computed outside of the lock: two threads missing the same key
+ * at the same time may both compute it.
+ *
+ * @author jefrajames
+ */
+final class LruCache<K, V> {
+
+    // Access ordered: the eldest entry is the least recently used
+    private final LinkedHashMap<K, V> entries;
+
+    LruCache(int maxEntries) {
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @param key the key
+     * @param compute computes the value of the key if it is not cached
+     * @return the cached or computed value
+     */
+    V get(K key, Function<? super K, ? extends V> compute) {
+        synchronized (entries) {
+            V value = entries.get(key);
+            if (value != null) {
+                return value;
+            }
+        }
+        V value = compute.apply(key);
+        synchronized (entries) {
+            entries.put(key, value);
+        }
+        return value;
+    }
+
+}
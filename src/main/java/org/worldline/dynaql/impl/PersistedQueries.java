@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.worldline.dynaql.api.GraphQLResponse;
+import org.worldline.dynaql.api.GraphQLResponse.GraphQLError;
+
+/**
+ * Automatic Persisted Queries support, following the Apollo protocol.
+ *
+ * The request is first sent with the SHA-256 hash of the query only. When the
+ * server does not know the hash yet it answers PersistedQueryNotFound, and the
+ * request is sent again with both the query and the hash.
+ *
+ * @author jefrajames
+ */
+public final class PersistedQueries {
+
+    public static final String NOT_FOUND = "PersistedQueryNotFound";
+    public static final String NOT_SUPPORTED = "PersistedQueryNotSupported";
+
+    private static final String NOT_FOUND_CODE = "PERSISTED_QUERY_NOT_FOUND";
+    private static final String NOT_SUPPORTED_CODE = "PERSISTED_QUERY_NOT_SUPPORTED";
+
+    private static final LruCache<String, String> HASHES = new LruCache<>(4096);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private PersistedQueries() {
+    }
+
+    /**
+     * @param query the query text
+     * @return its SHA-256 hash as lower-case hexadecimal, computed once per text
+     */
+    public static String hash(String query) {
+        return HASHES.get(query, PersistedQueries::sha256);
+    }
+
+    private static String sha256(String query) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(query.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex); // Mandatory in every JRE
+        }
+
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[2 * i] = HEX[(digest[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX[digest[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * @param response the response to a hash-only request
+     * @return true if the request must be sent again with the query
+     */
+    public static boolean isNotFound(GraphQLResponse response) {
+        return hasError(response, NOT_FOUND, NOT_FOUND_CODE);
+    }
+
+    /**
+     * @param response the response to a hash-only request
+     * @return true if the server does not support persisted queries at all
+     */
+    public static boolean isNotSupported(GraphQLResponse response) {
+        return hasError(response, NOT_SUPPORTED, NOT_SUPPORTED_CODE);
+    }
+
+    private static boolean hasError(GraphQLResponse response, String message, String code) {
+        if (response == null || !response.hasError() || response.hasData()) {
+            return false;
+        }
+        for (GraphQLError error : response.getErrors()) {
+            if (message.equals(error.getMessage())
+                    || (error.getExtensions() != null && code.equals(error.getExtensions().get("code")))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl;
+
+/**
+ * Minifies GraphQL documents into a canonical form: comments, commas and
+ * insignificant whitespace are removed, a single space is kept between two
+ * names or numbers. String and block string literals are left untouched.
+ *
+ * The same query written with another indentation, or loaded from a file
+ * with tabs and line continuations, gives the same text: smaller requests,
+ * and a single entry in the parse caches of the server.
+ *
+ * @author jefrajames
+ */
+public final class QueryNormalizer {
+
+    private static final LruCache<String, String> NORMALIZED = new LruCache<>(4096);
+
+    private static final String BLOCK_QUOTE = "\"\"\"";
+
+    private QueryNormalizer() {
+    }
+
+    /**
+     * @param query the query text
+     * @return its canonical form, computed once per text
+     */
+    public static String normalize(String query) {
+        return NORMALIZED.get(query, QueryNormalizer::minify);
+    }
+
+    static String minify(String query) {
+        int length = query.length();
+        StringBuilder normalized = new StringBuilder(length);
+        boolean separated = false;
+
+        int i = 0;
+        while (i < length) {
+            char c = query.charAt(i);
+            if (c == '#') {
+                while (i < length && query.charAt(i) != '\n' && query.charAt(i) != '\r') {
+                    i++;
+                }
+                separated = true;
+            } else if (Character.isWhitespace(c) || c == ',' || c == '\uFEFF') {
+                i++;
+                separated = true;
+            } else {
+                if (separated && normalized.length() > 0 && needsSpace(normalized.charAt(normalized.length() - 1), c)) {
+                    normalized.append(' ');
+                }
+                separated = false;
+                if (c == '"') {
+                    i = copyString(query, i, normalized);
+                } else {
+                    normalized.append(c);
+                    i++;
+                }
+            }
+        }
+
+        return normalized.toString();
+    }
+
+    private static boolean isNameChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    // Names and numbers must stay apart, so must two strings: "" "a" is not """a"
+    private static boolean needsSpace(char previous, char next) {
+        return isNameChar(previous) && (isNameChar(next) || next == '-') || previous == '"' && next == '"';
+    }
+
+    // Copies the string literal starting at start, returns the index following it
+    private static int copyString(String query, int start, StringBuilder normalized) {
+        int length = query.length();
+        int end;
+        if (query.startsWith(BLOCK_QUOTE, start)) {
+            end = start + 3;
+            while (end < length && !query.startsWith(BLOCK_QUOTE, end)) {
+                end += query.startsWith("\\" + BLOCK_QUOTE, end) ? 4 : 1;
+            }
+            end = Math.min(length, end + 3);
+        } else {
+            end = start + 1;
+            while (end < length && query.charAt(end) != '"') {
+                end += query.charAt(end) == '\\' ? 2 : 1;
+            }
+            end = Math.min(length, end + 1);
+        }
+        normalized.append(query, start, end);
+        return end;
+    }
+
+}
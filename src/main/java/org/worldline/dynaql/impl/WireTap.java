@@ -0,0 +1,357 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Captures sampled GraphQL exchanges, as sent and received.
+ *
+ * The payloads are copied while being written and parsed, up to maxBytes
+ * each: they are never serialized again, and only rendered as text when the
+ * sink reads them. Exchanges are sampled with a probability, a maximum rate,
+ * or both, and can be restricted to some operations.
+ *
+ * By default the captures are logged at INFO by the org.worldline.dynaql.wire
+ * logger: nothing is captured while it is disabled.
+ *
+ * @author jefrajames
+ */
+public class WireTap {
+
+    private static final org.slf4j.Logger wireLog = LoggerFactory.getLogger("org.worldline.dynaql.wire");
+
+    public static final int DEFAULT_MAX_BYTES = 2048;
+
+    private final double probability;
+    private final long intervalNanos;
+    private final AtomicLong nextCapture = new AtomicLong(System.nanoTime());
+    private final int maxBytes;
+    private final Set<String> operations;
+    private final Consumer<Capture> sink;
+
+    private WireTap(Builder builder) {
+        this.probability = builder.probability;
+        this.intervalNanos = builder.maxPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / builder.maxPerSecond : 0;
+        this.maxBytes = builder.maxBytes;
+        this.operations = builder.operations;
+        this.sink = builder.sink;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    // At most one capture per interval, the others are not sampled
+    private boolean acquire() {
+        long now = System.nanoTime();
+        long next = nextCapture.get();
+        return now - next >= 0 && nextCapture.compareAndSet(next, now + intervalNanos);
+    }
+
+    /**
+     * @param request the request about to be sent
+     * @param uri the endpoint
+     * @return the capture of the exchange if sampled, null otherwise
+     */
+    public Capture sample(DynaQLRequest request, URI uri) {
+        if (sink == null && !wireLog.isInfoEnabled()) {
+            return null;
+        }
+        if (operations != null && !operations.contains(request.getOperationName())) {
+            return null;
+        }
+        if (probability < 1 && ThreadLocalRandom.current().nextDouble() >= probability) {
+            return null;
+        }
+        if (intervalNanos > 0 && !acquire()) {
+            return null;
+        }
+        return new Capture(this, request.getOperationName(), uri);
+    }
+
+    private void emit(Capture capture) {
+        if (sink == null) {
+            wireLog.info("{}", capture);
+            return;
+        }
+        try {
+            sink.accept(capture);
+        } catch (RuntimeException ex) {
+            wireLog.warn("Error while handling the capture of " + capture.getEndpoint(), ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WireTap{" + "probability=" + probability + ", intervalNanos=" + intervalNanos + ", maxBytes=" + maxBytes + ", operations=" + operations + '}';
+    }
+
+    /**
+     * A sampled exchange, handed to the sink once the response is read.
+     */
+    public static final class Capture {
+
+        private final WireTap wireTap;
+        private final String operationName;
+        private final URI endpoint;
+        private final Tape request;
+        private final Tape response;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private Capture(WireTap wireTap, String operationName, URI endpoint) {
+            this.wireTap = wireTap;
+            this.operationName = operationName;
+            this.endpoint = endpoint;
+            this.request = new Tape(wireTap.maxBytes);
+            this.response = new Tape(wireTap.maxBytes);
+        }
+
+        /**
+         * @param out the stream the request is written to
+         * @return a stream copying the request to this capture
+         */
+        public OutputStream tapRequest(OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    request.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    request.write(b, off, len);
+                }
+            };
+        }
+
+        /**
+         * The capture is completed when the returned stream reaches its end
+         * or is closed.
+         *
+         * @param in the decoded response
+         * @return a stream copying the response to this capture
+         */
+        public InputStream tapResponse(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = in.read();
+                    if (b < 0) {
+                        complete();
+                    } else {
+                        response.write(b);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = in.read(b, off, len);
+                    if (n < 0) {
+                        complete();
+                    } else {
+                        response.write(b, off, n);
+                    }
+                    return n;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    try {
+                        in.close();
+                    } finally {
+                        complete();
+                    }
+                }
+            };
+        }
+
+        /**
+         * Hands the capture to the sink, once.
+         */
+        public void complete() {
+            if (completed.compareAndSet(false, true)) {
+                wireTap.emit(this);
+            }
+        }
+
+        /**
+         * @return the name of the operation, null if anonymous
+         */
+        public String getOperationName() {
+            return operationName;
+        }
+
+        public URI getEndpoint() {
+            return endpoint;
+        }
+
+        /**
+         * @return the beginning of the request, up to maxBytes
+         */
+        public String getRequest() {
+            return request.toString();
+        }
+
+        /**
+         * @return the size of the whole request in bytes
+         */
+        public long getRequestBytes() {
+            return request.total;
+        }
+
+        /**
+         * @return the beginning of the response read so far, up to maxBytes
+         */
+        public String getResponse() {
+            return response.toString();
+        }
+
+        /**
+         * @return the size of the response read so far in bytes
+         */
+        public long getResponseBytes() {
+            return response.total;
+        }
+
+        @Override
+        public String toString() {
+            return "GraphQL exchange " + (operationName != null ? operationName + " " : "") + "with " + endpoint
+                    + "\n> " + request.render() + "\n< " + response.render();
+        }
+    }
+
+    // The first bytes of a payload, and its size
+    private static final class Tape {
+
+        private final byte[] bytes;
+        private int size;
+        private long total;
+
+        private Tape(int maxBytes) {
+            this.bytes = new byte[maxBytes];
+        }
+
+        private void write(int b) {
+            if (size < bytes.length) {
+                bytes[size++] = (byte) b;
+            }
+            total++;
+        }
+
+        private void write(byte[] b, int off, int len) {
+            int copied = Math.min(len, bytes.length - size);
+            if (copied > 0) {
+                System.arraycopy(b, off, bytes, size, copied);
+                size += copied;
+            }
+            total += len;
+        }
+
+        private String render() {
+            return total > size ? toString() + "... (" + total + " bytes)" : toString();
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, size, StandardCharsets.UTF_8);
+        }
+    }
+
+    public static class Builder {
+
+        private double probability = 1;
+        private int maxPerSecond;
+        private int maxBytes = DEFAULT_MAX_BYTES;
+        private Set<String> operations;
+        private Consumer<Capture> sink;
+
+        private Builder() {
+        }
+
+        /**
+         * @param probability the probability of an exchange to be captured, 1 by default
+         */
+        public Builder probability(double probability) {
+            if (probability < 0 || probability > 1) {
+                throw new IllegalArgumentException("Illegal probability: " + probability);
+            }
+            this.probability = probability;
+            return this;
+        }
+
+        /**
+         * @param maxPerSecond the maximum number of exchanges captured per second, unlimited by default
+         */
+        public Builder maxPerSecond(int maxPerSecond) {
+            if (maxPerSecond <= 0) {
+                throw new IllegalArgumentException("Illegal maxPerSecond: " + maxPerSecond);
+            }
+            this.maxPerSecond = maxPerSecond;
+            return this;
+        }
+
+        /**
+         * @param maxBytes the maximum size of the captured request and response, DEFAULT_MAX_BYTES by default
+         */
+        public Builder maxBytes(int maxBytes) {
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("Illegal maxBytes: " + maxBytes);
+            }
+            this.maxBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * @param operationNames the only operations to capture, all by default
+         */
+        public Builder operations(String... operationNames) {
+            this.operations = new HashSet<>(Arrays.asList(operationNames));
+            return this;
+        }
+
+        /**
+         * @param sink receives the captures instead of the org.worldline.dynaql.wire logger
+         */
+        public Builder sink(Consumer<Capture> sink) {
+            this.sink = sink;
+            return this;
+        }
+
+        public WireTap build() {
+            return new WireTap(this);
+        }
+    }
+
+}
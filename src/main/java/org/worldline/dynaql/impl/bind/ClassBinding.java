@@ -0,0 +1,291 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.bind;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+import javax.json.bind.JsonbException;
+import javax.json.bind.annotation.JsonbCreator;
+import javax.json.bind.annotation.JsonbDateFormat;
+import javax.json.bind.annotation.JsonbNumberFormat;
+import javax.json.bind.annotation.JsonbProperty;
+import javax.json.bind.annotation.JsonbTransient;
+import javax.json.bind.annotation.JsonbTypeAdapter;
+import javax.json.bind.annotation.JsonbTypeDeserializer;
+import javax.json.bind.annotation.JsonbVisibility;
+
+/**
+ * The binding metadata of a class, computed once by reflection.
+ *
+ * It follows the JSON-B default mapping: a property is written through its
+ * public setter or, failing that, its public field. Classes relying on
+ * customizations this binding does not implement (creators, adapters,
+ * deserializers, number formats...) or having properties typed by a type
+ * variable have no ClassBinding and are handled by JSON-B itself.
+ *
+ * @author jefrajames
+ */
+final class ClassBinding {
+
+    private final Constructor<?> constructor;
+    private final Map<String, PropertyBinding> properties;
+
+    private ClassBinding(Constructor<?> constructor, Map<String, PropertyBinding> properties) {
+        this.constructor = constructor;
+        this.properties = properties;
+    }
+
+    /**
+     * @param type the class to introspect
+     * @param binder the binder providing the naming strategy and default date format
+     * @return its binding, or null if it must be handled by JSON-B
+     */
+    static ClassBinding of(Class<?> type, JsonValueBinder binder) {
+
+        if (type.isInterface() || Modifier.isAbstract(type.getModifiers())
+                || type.isPrimitive() || type.isArray() || type.isEnum()
+                || (type.isMemberClass() && !Modifier.isStatic(type.getModifiers()))
+                || type.isAnnotationPresent(JsonbTypeDeserializer.class)
+                || type.isAnnotationPresent(JsonbTypeAdapter.class)
+                || type.isAnnotationPresent(JsonbVisibility.class)) {
+            return null;
+        }
+
+        Constructor<?> constructor;
+        try {
+            constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (NoSuchMethodException | RuntimeException ex) {
+            return null;
+        }
+
+        for (Constructor<?> c : type.getDeclaredConstructors()) {
+            if (c.isAnnotationPresent(JsonbCreator.class)) {
+                return null;
+            }
+        }
+
+        List<Class<?>> hierarchy = new ArrayList<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            hierarchy.add(0, c);
+        }
+
+        Map<String, Field> fields = new LinkedHashMap<>();
+        Map<String, Method> setters = new LinkedHashMap<>();
+
+        for (Class<?> c : hierarchy) {
+            for (Method method : c.getDeclaredMethods()) {
+                if (Modifier.isStatic(method.getModifiers()) && method.isAnnotationPresent(JsonbCreator.class)) {
+                    return null;
+                }
+            }
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+                    fields.put(field.getName(), field);
+                }
+            }
+        }
+
+        for (Method method : type.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers()) && method.getParameterCount() == 1
+                    && method.getName().length() > 3 && method.getName().startsWith("set") && !method.isBridge()) {
+                setters.put(decapitalize(method.getName().substring(3)), method);
+            }
+        }
+
+        JsonbDateFormat classDateFormat = type.getAnnotation(JsonbDateFormat.class);
+
+        Map<String, PropertyBinding> properties = binder.isCaseInsensitive()
+                ? new TreeMap<>(String.CASE_INSENSITIVE_ORDER) : new HashMap<>();
+
+        List<String> names = new ArrayList<>(fields.keySet());
+        setters.keySet().stream().filter(n -> !fields.containsKey(n)).forEach(names::add);
+
+        for (String name : names) {
+            Field field = fields.get(name);
+            Method setter = setters.get(name);
+
+            if (isPresent(JsonbTransient.class, field, setter)) {
+                continue;
+            }
+
+            if (isPresent(JsonbTypeAdapter.class, field, setter)
+                    || isPresent(JsonbTypeDeserializer.class, field, setter)
+                    || isPresent(JsonbNumberFormat.class, field, setter)) {
+                return null;
+            }
+
+            AccessibleObject accessor;
+            Type propertyType;
+            if (setter != null) {
+                accessor = setter;
+                propertyType = setter.getGenericParameterTypes()[0];
+            } else if (field != null && Modifier.isPublic(field.getModifiers()) && !Modifier.isFinal(field.getModifiers())) {
+                accessor = field;
+                propertyType = field.getGenericType();
+            } else {
+                continue; // Not writable
+            }
+
+            // The binding is per class, a type variable is only known from the bound type
+            if (hasTypeVariable(propertyType)) {
+                return null;
+            }
+
+            try {
+                accessor.setAccessible(true);
+            } catch (RuntimeException ex) {
+                return null;
+            }
+
+            JsonbDateFormat dateFormat = annotation(JsonbDateFormat.class, field, setter);
+            if (dateFormat == null) {
+                dateFormat = classDateFormat;
+            }
+            if (dateFormat != null && JsonbDateFormat.TIME_IN_MILLIS.equals(dateFormat.value())) {
+                return null;
+            }
+
+            JsonbProperty jsonbProperty = annotation(JsonbProperty.class, field, setter);
+            String jsonName = jsonbProperty != null && !jsonbProperty.value().isEmpty() ? jsonbProperty.value() : binder.translateName(name);
+
+            DateTimeFormatter formatter = formatter(dateFormat);
+            if (formatter == null) {
+                formatter = binder.getDefaultDateFormat();
+            }
+
+            properties.put(jsonName, new PropertyBinding(accessor, propertyType, formatter));
+        }
+
+        return new ClassBinding(constructor, properties);
+    }
+
+    private static boolean hasTypeVariable(Type type) {
+        if (type instanceof TypeVariable) {
+            return true;
+        } else if (type instanceof ParameterizedType) {
+            for (Type argument : ((ParameterizedType) type).getActualTypeArguments()) {
+                if (hasTypeVariable(argument)) {
+                    return true;
+                }
+            }
+        } else if (type instanceof GenericArrayType) {
+            return hasTypeVariable(((GenericArrayType) type).getGenericComponentType());
+        } else if (type instanceof WildcardType) {
+            for (Type bound : ((WildcardType) type).getUpperBounds()) {
+                if (hasTypeVariable(bound)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String decapitalize(String name) {
+        if (name.length() > 1 && Character.isUpperCase(name.charAt(1)) && Character.isUpperCase(name.charAt(0))) {
+            return name;
+        }
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static boolean isPresent(Class<? extends java.lang.annotation.Annotation> annotation, Field field, Method method) {
+        return annotation(annotation, field, method) != null;
+    }
+
+    private static <A extends java.lang.annotation.Annotation> A annotation(Class<A> annotation, Field field, Method method) {
+        A value = method != null ? method.getAnnotation(annotation) : null;
+        if (value == null && field != null) {
+            value = field.getAnnotation(annotation);
+        }
+        return value;
+    }
+
+    private static DateTimeFormatter formatter(JsonbDateFormat dateFormat) {
+        if (dateFormat == null || JsonbDateFormat.DEFAULT_FORMAT.equals(dateFormat.value())) {
+            return null;
+        }
+        Locale locale = JsonbDateFormat.DEFAULT_LOCALE.equals(dateFormat.locale())
+                ? Locale.getDefault() : Locale.forLanguageTag(dateFormat.locale());
+        return DateTimeFormatter.ofPattern(dateFormat.value(), locale);
+    }
+
+    Object bind(JsonObject jsonObject, JsonValueBinder binder) {
+        Object instance;
+        try {
+            instance = constructor.newInstance();
+        } catch (InstantiationException | IllegalAccessException | InvocationTargetException ex) {
+            throw new JsonbException("Unable to instantiate " + constructor.getDeclaringClass().getName(), ex);
+        }
+
+        for (Map.Entry<String, JsonValue> entry : jsonObject.entrySet()) {
+            PropertyBinding property = properties.get(entry.getKey());
+            if (property != null) {
+                property.set(instance, binder.convert(entry.getValue(), property.type, property.dateFormat));
+            }
+        }
+
+        return instance;
+    }
+
+    private static final class PropertyBinding {
+
+        private final AccessibleObject accessor;
+        private final Type type;
+        private final DateTimeFormatter dateFormat;
+
+        private PropertyBinding(AccessibleObject accessor, Type type, DateTimeFormatter dateFormat) {
+            this.accessor = accessor;
+            this.type = type;
+            this.dateFormat = dateFormat;
+        }
+
+        private void set(Object instance, Object value) {
+            if (value == null && type instanceof Class && ((Class<?>) type).isPrimitive()) {
+                return; // Keep the default value
+            }
+            try {
+                if (accessor instanceof Method) {
+                    ((Method) accessor).invoke(instance, value);
+                } else {
+                    ((Field) accessor).set(instance, value);
+                }
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                throw new JsonbException("Unable to set property of " + instance.getClass().getName(), ex);
+            }
+        }
+    }
+
+}
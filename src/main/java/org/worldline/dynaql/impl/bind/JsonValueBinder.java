@@ -0,0 +1,492 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.bind;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.json.JsonArray;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbConfig;
+import javax.json.bind.JsonbException;
+import javax.json.bind.annotation.JsonbDateFormat;
+import javax.json.bind.config.PropertyNamingStrategy;
+
+/**
+ * Maps a JSON-P tree to application objects without any intermediate text.
+ *
+ * Binding metadata are computed once per class and cached. The naming strategy
+ * and the date format of the JsonbConfig are honored. Types, classes and
+ * configurations out of the scope of this binder are delegated to JSON-B.
+ *
+ * This class is thread-safe.
+ *
+ * @author jefrajames
+ */
+public class JsonValueBinder {
+
+    // Marks the classes delegated to JSON-B in the cache
+    private static final Optional<ClassBinding> UNSUPPORTED = Optional.empty();
+
+    // The configuration properties with no effect on deserialization, or implemented here
+    private static final Set<String> SUPPORTED_PROPERTIES = new HashSet<>(Arrays.asList(
+            JsonbConfig.FORMATTING, JsonbConfig.ENCODING, JsonbConfig.NULL_VALUES, JsonbConfig.STRICT_IJSON,
+            JsonbConfig.PROPERTY_ORDER_STRATEGY, JsonbConfig.PROPERTY_NAMING_STRATEGY,
+            JsonbConfig.DATE_FORMAT, JsonbConfig.LOCALE));
+
+    private final Supplier<Jsonb> jsonbSupplier;
+
+    // Set when the configuration can only be honored by JSON-B itself
+    private final boolean delegated;
+    private final Function<String, String> namingStrategy;
+    private final boolean caseInsensitive;
+    private final DateTimeFormatter defaultDateFormat;
+
+    private final ConcurrentMap<Class<?>, Optional<ClassBinding>> bindings = new ConcurrentHashMap<>();
+
+    /**
+     * @param config the JSON-B configuration to honor
+     * @param jsonbSupplier provides the Jsonb used for what this binder does not
+     * support, called on each use
+     */
+    public JsonValueBinder(JsonbConfig config, Supplier<Jsonb> jsonbSupplier) {
+        this.jsonbSupplier = jsonbSupplier;
+
+        String dateFormat = (String) config.getProperty(JsonbConfig.DATE_FORMAT).orElse(null);
+        Locale locale = (Locale) config.getProperty(JsonbConfig.LOCALE).orElse(Locale.getDefault());
+        if (dateFormat == null || JsonbDateFormat.DEFAULT_FORMAT.equals(dateFormat) || JsonbDateFormat.TIME_IN_MILLIS.equals(dateFormat)) {
+            this.defaultDateFormat = null;
+        } else {
+            this.defaultDateFormat = DateTimeFormatter.ofPattern(dateFormat, locale);
+        }
+
+        this.delegated = !SUPPORTED_PROPERTIES.containsAll(config.getAsMap().keySet())
+                || JsonbDateFormat.TIME_IN_MILLIS.equals(dateFormat);
+
+        Object strategy = config.getProperty(JsonbConfig.PROPERTY_NAMING_STRATEGY).orElse(PropertyNamingStrategy.IDENTITY);
+        this.caseInsensitive = PropertyNamingStrategy.CASE_INSENSITIVE.equals(strategy);
+        this.namingStrategy = namingStrategy(strategy);
+    }
+
+    private static Function<String, String> namingStrategy(Object strategy) {
+        if (strategy instanceof PropertyNamingStrategy) {
+            return ((PropertyNamingStrategy) strategy)::translateName;
+        }
+        switch (String.valueOf(strategy)) {
+            case PropertyNamingStrategy.LOWER_CASE_WITH_DASHES:
+                return name -> separate(name, '-', false);
+            case PropertyNamingStrategy.LOWER_CASE_WITH_UNDERSCORES:
+                return name -> separate(name, '_', false);
+            case PropertyNamingStrategy.UPPER_CAMEL_CASE:
+                return name -> Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            case PropertyNamingStrategy.UPPER_CAMEL_CASE_WITH_SPACES:
+                return name -> separate(name, ' ', true);
+            default:
+                return Function.identity();
+        }
+    }
+
+    private static String separate(String name, char separator, boolean upperCase) {
+        StringBuilder result = new StringBuilder(name.length() + 4);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (i == 0) {
+                result.append(upperCase ? Character.toUpperCase(c) : Character.toLowerCase(c));
+            } else if (Character.isUpperCase(c) && !Character.isUpperCase(name.charAt(i - 1))) {
+                result.append(separator).append(upperCase ? c : Character.toLowerCase(c));
+            } else {
+                result.append(upperCase ? c : Character.toLowerCase(c));
+            }
+        }
+        return result.toString();
+    }
+
+    String translateName(String name) {
+        return namingStrategy.apply(name);
+    }
+
+    boolean isCaseInsensitive() {
+        return caseInsensitive;
+    }
+
+    DateTimeFormatter getDefaultDateFormat() {
+        return defaultDateFormat;
+    }
+
+    private Jsonb getJsonb() {
+        return jsonbSupplier.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T fromJsonValue(JsonValue value, Class<T> type) {
+        return (T) fromJsonValue(value, (Type) type);
+    }
+
+    public Object fromJsonValue(JsonValue value, Type type) {
+        if (delegated && value != null && value.getValueType() != JsonValue.ValueType.NULL) {
+            return fallback(value, type);
+        }
+        return convert(value, type, defaultDateFormat);
+    }
+
+    private ClassBinding binding(Class<?> type) {
+        Optional<ClassBinding> binding = bindings.get(type);
+        if (binding == null) {
+            ClassBinding computed = ClassBinding.of(type, this);
+            binding = computed != null ? Optional.of(computed) : UNSUPPORTED;
+            bindings.putIfAbsent(type, binding);
+        }
+        return binding.orElse(null);
+    }
+
+    private Object fallback(JsonValue value, Type type) {
+        return getJsonb().fromJson(value.toString(), type);
+    }
+
+    Object convert(JsonValue value, Type type, DateTimeFormatter dateFormat) {
+
+        if (value == null || value.getValueType() == JsonValue.ValueType.NULL) {
+            return null;
+        }
+
+        Class<?> raw = rawClass(type);
+
+        if (JsonValue.class.isAssignableFrom(raw)) {
+            return raw.isInstance(value) ? value : fallback(value, type);
+        }
+
+        if (raw == Object.class) {
+            return toObject(value);
+        }
+
+        if (raw == String.class || raw == CharSequence.class) {
+            return value instanceof JsonString ? ((JsonString) value).getString() : value.toString();
+        }
+
+        if (raw.isPrimitive() || Number.class.isAssignableFrom(raw) || raw == Boolean.class || raw == Character.class) {
+            return toScalar(value, raw, type);
+        }
+
+        if (raw.isEnum()) {
+            return toEnum(value, raw);
+        }
+
+        if (value instanceof JsonString && isTemporal(raw)) {
+            return toTemporal(((JsonString) value).getString(), raw, dateFormat);
+        }
+
+        if (raw == UUID.class && value instanceof JsonString) {
+            return UUID.fromString(((JsonString) value).getString());
+        }
+
+        if (raw == URI.class && value instanceof JsonString) {
+            return URI.create(((JsonString) value).getString());
+        }
+
+        if (raw.isArray() && value instanceof JsonArray) {
+            return toArray((JsonArray) value, type, raw, dateFormat);
+        }
+
+        if (Collection.class.isAssignableFrom(raw) && value instanceof JsonArray) {
+            Collection<Object> collection = newCollection(raw);
+            if (collection != null) {
+                Type elementType = typeArgument(type, 0);
+                for (JsonValue item : (JsonArray) value) {
+                    collection.add(convert(item, elementType, dateFormat));
+                }
+                return collection;
+            }
+        }
+
+        if (Map.class.isAssignableFrom(raw) && value instanceof JsonObject && rawClass(typeArgument(type, 0)) == String.class) {
+            Map<String, Object> map = newMap(raw);
+            if (map != null) {
+                Type valueType = typeArgument(type, 1);
+                for (Map.Entry<String, JsonValue> entry : ((JsonObject) value).entrySet()) {
+                    map.put(entry.getKey(), convert(entry.getValue(), valueType, dateFormat));
+                }
+                return map;
+            }
+        }
+
+        if (value instanceof JsonObject && isBean(raw)) {
+            ClassBinding binding = binding(raw);
+            if (binding != null) {
+                return binding.bind((JsonObject) value, this);
+            }
+        }
+
+        return fallback(value, type);
+    }
+
+    private static boolean isBean(Class<?> raw) {
+        return !raw.isPrimitive() && !raw.isArray() && !Collection.class.isAssignableFrom(raw) && !Map.class.isAssignableFrom(raw)
+                && !raw.getName().startsWith("java.") && !raw.getName().startsWith("javax.");
+    }
+
+    private Object toScalar(JsonValue value, Class<?> raw, Type type) {
+
+        if (raw == boolean.class || raw == Boolean.class) {
+            if (value.getValueType() == JsonValue.ValueType.TRUE) {
+                return Boolean.TRUE;
+            }
+            if (value.getValueType() == JsonValue.ValueType.FALSE) {
+                return Boolean.FALSE;
+            }
+            if (value instanceof JsonString) {
+                return Boolean.valueOf(((JsonString) value).getString());
+            }
+            return fallback(value, type);
+        }
+
+        if (raw == char.class || raw == Character.class) {
+            if (value instanceof JsonString && ((JsonString) value).getString().length() == 1) {
+                return ((JsonString) value).getString().charAt(0);
+            }
+            return fallback(value, type);
+        }
+
+        BigDecimal number;
+        try {
+            if (value instanceof JsonNumber) {
+                number = ((JsonNumber) value).bigDecimalValue();
+            } else if (value instanceof JsonString) {
+                number = new BigDecimal(((JsonString) value).getString());
+            } else {
+                return fallback(value, type);
+            }
+        } catch (NumberFormatException ex) {
+            throw new JsonbException("Unable to convert " + value + " to " + raw.getName(), ex);
+        }
+
+        try {
+            if (raw == int.class || raw == Integer.class) {
+                return number.intValueExact();
+            } else if (raw == long.class || raw == Long.class) {
+                return number.longValueExact();
+            } else if (raw == double.class || raw == Double.class) {
+                return number.doubleValue();
+            } else if (raw == float.class || raw == Float.class) {
+                return number.floatValue();
+            } else if (raw == short.class || raw == Short.class) {
+                return number.shortValueExact();
+            } else if (raw == byte.class || raw == Byte.class) {
+                return number.byteValueExact();
+            } else if (raw == BigDecimal.class || raw == Number.class) {
+                return number;
+            } else if (raw == BigInteger.class) {
+                return number.toBigIntegerExact();
+            }
+        } catch (ArithmeticException ex) {
+            throw new JsonbException("Unable to convert " + value + " to " + raw.getName(), ex);
+        }
+
+        return fallback(value, type);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object toEnum(JsonValue value, Class<?> raw) {
+        if (!(value instanceof JsonString)) {
+            throw new JsonbException("Unable to convert " + value + " to " + raw.getName());
+        }
+        try {
+            return Enum.valueOf((Class<Enum>) raw, ((JsonString) value).getString());
+        } catch (IllegalArgumentException ex) {
+            throw new JsonbException("Unable to convert " + value + " to " + raw.getName(), ex);
+        }
+    }
+
+    private static boolean isTemporal(Class<?> raw) {
+        return raw == LocalDate.class || raw == LocalDateTime.class || raw == LocalTime.class
+                || raw == OffsetDateTime.class || raw == OffsetTime.class || raw == ZonedDateTime.class
+                || raw == Instant.class || raw == Duration.class || raw == Period.class;
+    }
+
+    private static Object toTemporal(String text, Class<?> raw, DateTimeFormatter dateFormat) {
+        try {
+            if (raw == LocalDate.class) {
+                return dateFormat != null ? LocalDate.parse(text, dateFormat) : LocalDate.parse(text);
+            } else if (raw == LocalDateTime.class) {
+                return dateFormat != null ? LocalDateTime.parse(text, dateFormat) : LocalDateTime.parse(text);
+            } else if (raw == LocalTime.class) {
+                return dateFormat != null ? LocalTime.parse(text, dateFormat) : LocalTime.parse(text);
+            } else if (raw == OffsetDateTime.class) {
+                return dateFormat != null ? OffsetDateTime.parse(text, dateFormat) : OffsetDateTime.parse(text);
+            } else if (raw == OffsetTime.class) {
+                return dateFormat != null ? OffsetTime.parse(text, dateFormat) : OffsetTime.parse(text);
+            } else if (raw == ZonedDateTime.class) {
+                return dateFormat != null ? ZonedDateTime.parse(text, dateFormat) : ZonedDateTime.parse(text);
+            } else if (raw == Instant.class) {
+                return dateFormat != null ? ZonedDateTime.parse(text, dateFormat).toInstant() : Instant.parse(text);
+            } else if (raw == Duration.class) {
+                return Duration.parse(text);
+            } else {
+                return Period.parse(text);
+            }
+        } catch (DateTimeParseException ex) {
+            throw new JsonbException("Unable to convert " + text + " to " + raw.getName(), ex);
+        }
+    }
+
+    private Object toArray(JsonArray jsonArray, Type type, Class<?> raw, DateTimeFormatter dateFormat) {
+        Type componentType = type instanceof GenericArrayType
+                ? ((GenericArrayType) type).getGenericComponentType() : raw.getComponentType();
+        Class<?> componentClass = rawClass(componentType);
+
+        Object array = Array.newInstance(componentClass, jsonArray.size());
+        for (int i = 0; i < jsonArray.size(); i++) {
+            Object item = convert(jsonArray.get(i), componentType, dateFormat);
+            if (item != null || !componentClass.isPrimitive()) {
+                Array.set(array, i, item);
+            }
+        }
+        return array;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<Object> newCollection(Class<?> raw) {
+        if (raw.isAssignableFrom(ArrayList.class)) {
+            return new ArrayList<>();
+        } else if (raw.isAssignableFrom(LinkedHashSet.class)) {
+            return new LinkedHashSet<>();
+        } else if (raw.isAssignableFrom(TreeSet.class) && SortedSet.class.isAssignableFrom(raw)) {
+            return new TreeSet<>();
+        } else if (raw.isAssignableFrom(ArrayDeque.class) && Queue.class.isAssignableFrom(raw)) {
+            return new ArrayDeque<>();
+        } else if (!raw.isInterface() && !Modifier.isAbstract(raw.getModifiers())) {
+            try {
+                return (Collection<Object>) raw.getConstructor().newInstance();
+            } catch (ReflectiveOperationException ex) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> newMap(Class<?> raw) {
+        if (raw.isAssignableFrom(LinkedHashMap.class)) {
+            return new LinkedHashMap<>();
+        } else if (raw.isAssignableFrom(TreeMap.class) && SortedMap.class.isAssignableFrom(raw)) {
+            return new TreeMap<>();
+        } else if (!raw.isInterface() && !Modifier.isAbstract(raw.getModifiers())) {
+            try {
+                return (Map<String, Object>) raw.getConstructor().newInstance();
+            } catch (ReflectiveOperationException ex) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static Object toObject(JsonValue value) {
+        switch (value.getValueType()) {
+            case STRING:
+                return ((JsonString) value).getString();
+            case NUMBER:
+                return ((JsonNumber) value).bigDecimalValue();
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case ARRAY:
+                List<Object> list = new ArrayList<>(((JsonArray) value).size());
+                for (JsonValue item : (JsonArray) value) {
+                    list.add(toObject(item));
+                }
+                return list;
+            case OBJECT:
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (Map.Entry<String, JsonValue> entry : ((JsonObject) value).entrySet()) {
+                    map.put(entry.getKey(), toObject(entry.getValue()));
+                }
+                return map;
+            default:
+                return null;
+        }
+    }
+
+    private static Type typeArgument(Type type, int index) {
+        if (type instanceof ParameterizedType) {
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            if (index < arguments.length) {
+                return arguments[index];
+            }
+        }
+        return Object.class;
+    }
+
+    private static Class<?> rawClass(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return rawClass(((ParameterizedType) type).getRawType());
+        } else if (type instanceof GenericArrayType) {
+            return Array.newInstance(rawClass(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        } else if (type instanceof WildcardType) {
+            return rawClass(((WildcardType) type).getUpperBounds()[0]);
+        } else if (type instanceof TypeVariable) {
+            Type[] bounds = ((TypeVariable<?>) type).getBounds();
+            return bounds.length > 0 ? rawClass(bounds[0]) : Object.class;
+        }
+        return Object.class;
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.bind;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.json.bind.JsonbConfig;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process-wide registry of Jsonb instances and binders, one per distinct
+ * JsonbConfig.
+ *
+ * Creating a Jsonb is costly and each instance has its own reflection caches:
+ * the whole client shares the instances of this registry instead.
+ *
+ * @author jefrajames
+ */
+public final class JsonbRegistry {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(JsonbRegistry.class);
+
+    // JsonbConfig has no equals, its properties are used as the key
+    private static final ConcurrentMap<Map<String, Object>, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    private static final JsonbConfig DEFAULT_CONFIG = new JsonbConfig();
+
+    private JsonbRegistry() {
+    }
+
+    private static Entry entry(JsonbConfig config) {
+        JsonbConfig actual = config != null ? config : DEFAULT_CONFIG;
+        return ENTRIES.computeIfAbsent(new HashMap<>(actual.getAsMap()), JsonbRegistry::newEntry);
+    }
+
+    private static Entry newEntry(Map<String, Object> properties) {
+        // A private copy: the caller may change its JsonbConfig afterwards
+        JsonbConfig config = new JsonbConfig();
+        properties.forEach(config::setProperty);
+        return new Entry(config);
+    }
+
+    /**
+     * @param config the JSON-B configuration, null for the default one
+     * @return the shared Jsonb for this configuration
+     */
+    public static Jsonb getJsonb(JsonbConfig config) {
+        return entry(config).getJsonb();
+    }
+
+    /**
+     * @param config the JSON-B configuration, null for the default one
+     * @return the shared binder for this configuration
+     */
+    public static JsonValueBinder getBinder(JsonbConfig config) {
+        return entry(config).binder;
+    }
+
+    /**
+     * Closes all the Jsonb instances, typically on application shutdown.
+     */
+    public static void closeAll() {
+        ENTRIES.keySet().forEach(key -> {
+            Entry entry = ENTRIES.remove(key);
+            if (entry != null) {
+                entry.close();
+            }
+        });
+    }
+
+    private static final class Entry {
+
+        private final JsonbConfig config;
+        private final JsonValueBinder binder;
+        private volatile Jsonb jsonb;
+
+        private Entry(JsonbConfig config) {
+            this.config = config;
+            this.binder = new JsonValueBinder(config, this::getJsonb);
+        }
+
+        private Jsonb getJsonb() {
+            if (jsonb == null) {
+                synchronized (this) {
+                    if (jsonb == null) {
+                        jsonb = JsonbBuilder.create(config);
+                    }
+                }
+            }
+            return jsonb;
+        }
+
+        private synchronized void close() {
+            if (jsonb != null) {
+                try {
+                    jsonb.close();
+                } catch (Exception ex) {
+                    log.warn("Error while closing Jsonb", ex);
+                }
+            }
+        }
+    }
+
+}
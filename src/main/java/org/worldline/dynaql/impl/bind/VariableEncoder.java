@@ -0,0 +1,397 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.bind;
+
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.json.JsonValue;
+import javax.json.bind.JsonbException;
+import javax.json.bind.annotation.JsonbDateFormat;
+import javax.json.bind.annotation.JsonbProperty;
+import javax.json.bind.annotation.JsonbTransient;
+import javax.json.stream.JsonGenerator;
+
+/**
+ * Writes GraphQL variables to a JsonGenerator.
+ *
+ * The encoder of each class is computed once and cached. Input objects
+ * follow the JSON-B default mapping: public getters or public fields,
+ * lexicographical order, null properties omitted, @JsonbProperty,
+ * @JsonbTransient and @JsonbDateFormat honored.
+ *
+ * @author jefrajames
+ */
+public final class VariableEncoder {
+
+    private static final ConcurrentMap<Class<?>, Encoder> ENCODERS = new ConcurrentHashMap<>();
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ISO_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    private VariableEncoder() {
+    }
+
+    /**
+     * Writes a named value inside the current object.
+     *
+     * @param generator the target
+     * @param name the name of the value
+     * @param value the value, may be null
+     */
+    public static void write(JsonGenerator generator, String name, Object value) {
+        generator.writeKey(name);
+        write(generator, value);
+    }
+
+    /**
+     * Writes a value in the current context.
+     *
+     * @param generator the target
+     * @param value the value, may be null
+     */
+    public static void write(JsonGenerator generator, Object value) {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            ENCODERS.computeIfAbsent(value.getClass(), VariableEncoder::encoderOf).encode(generator, value);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Encoder {
+
+        void encode(JsonGenerator generator, Object value);
+    }
+
+    private static Encoder encoderOf(Class<?> type) {
+
+        if (type == String.class || type == Character.class) {
+            return (g, v) -> g.write(v.toString());
+        }
+        if (type == Boolean.class) {
+            return (g, v) -> g.write((Boolean) v);
+        }
+        if (type == Integer.class || type == Short.class || type == Byte.class) {
+            return (g, v) -> g.write(((Number) v).intValue());
+        }
+        if (type == Long.class) {
+            return (g, v) -> g.write((Long) v);
+        }
+        if (type == Double.class || type == Float.class) {
+            // Non-finite values are rejected by the generator
+            return (g, v) -> g.write(((Number) v).doubleValue());
+        }
+        if (type == BigDecimal.class) {
+            return (g, v) -> g.write((BigDecimal) v);
+        }
+        if (type == BigInteger.class) {
+            return (g, v) -> g.write((BigInteger) v);
+        }
+        if (type.isEnum() || (type.getSuperclass() != null && type.getSuperclass().isEnum())) {
+            return (g, v) -> g.write(((Enum<?>) v).name());
+        }
+        if (JsonValue.class.isAssignableFrom(type)) {
+            return (g, v) -> g.write((JsonValue) v);
+        }
+        if (type == UUID.class || type == URI.class || type == URL.class
+                || type == Duration.class || type == Period.class || ZoneId.class.isAssignableFrom(type)) {
+            return (g, v) -> g.write(v.toString());
+        }
+
+        Encoder temporal = temporalEncoder(type, null);
+        if (temporal != null) {
+            return temporal;
+        }
+
+        if (type == Optional.class) {
+            return (g, v) -> write(g, ((Optional<?>) v).orElse(null));
+        }
+        if (type == OptionalInt.class) {
+            return (g, v) -> write(g, ((OptionalInt) v).isPresent() ? ((OptionalInt) v).getAsInt() : null);
+        }
+        if (type == OptionalLong.class) {
+            return (g, v) -> write(g, ((OptionalLong) v).isPresent() ? ((OptionalLong) v).getAsLong() : null);
+        }
+        if (type == OptionalDouble.class) {
+            return (g, v) -> write(g, ((OptionalDouble) v).isPresent() ? ((OptionalDouble) v).getAsDouble() : null);
+        }
+
+        if (type.isArray()) {
+            return (g, v) -> {
+                g.writeStartArray();
+                int length = Array.getLength(v);
+                for (int i = 0; i < length; i++) {
+                    write(g, Array.get(v, i));
+                }
+                g.writeEnd();
+            };
+        }
+        if (Iterable.class.isAssignableFrom(type)) {
+            return (g, v) -> {
+                g.writeStartArray();
+                for (Object item : (Iterable<?>) v) {
+                    write(g, item);
+                }
+                g.writeEnd();
+            };
+        }
+        if (Map.class.isAssignableFrom(type)) {
+            return (g, v) -> {
+                g.writeStartObject();
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) v).entrySet()) {
+                    write(g, String.valueOf(entry.getKey()), entry.getValue());
+                }
+                g.writeEnd();
+            };
+        }
+
+        return beanEncoder(type);
+    }
+
+    // Returns null if type is not a date or time
+    private static Encoder temporalEncoder(Class<?> type, DateTimeFormatter format) {
+
+        if (Date.class.isAssignableFrom(type)) {
+            DateTimeFormatter formatter = format != null ? format.withZone(ZoneOffset.UTC) : DATE_FORMAT;
+            return (g, v) -> g.write(formatter.format(((Date) v).toInstant()));
+        }
+        if (Calendar.class.isAssignableFrom(type)) {
+            DateTimeFormatter formatter = format != null ? format : DateTimeFormatter.ISO_DATE_TIME;
+            return (g, v) -> g.write(formatter.format(((Calendar) v).toInstant().atZone(((Calendar) v).getTimeZone().toZoneId())));
+        }
+
+        DateTimeFormatter formatter = format;
+        if (formatter == null) {
+            if (type == LocalDate.class) {
+                formatter = DateTimeFormatter.ISO_LOCAL_DATE;
+            } else if (type == LocalDateTime.class) {
+                formatter = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+            } else if (type == LocalTime.class) {
+                formatter = DateTimeFormatter.ISO_LOCAL_TIME;
+            } else if (type == OffsetDateTime.class) {
+                formatter = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+            } else if (type == OffsetTime.class) {
+                formatter = DateTimeFormatter.ISO_OFFSET_TIME;
+            } else if (type == ZonedDateTime.class) {
+                formatter = DateTimeFormatter.ISO_ZONED_DATE_TIME;
+            } else if (type == Instant.class) {
+                formatter = DateTimeFormatter.ISO_INSTANT;
+            } else {
+                return null;
+            }
+        } else if (type == Instant.class) {
+            formatter = formatter.withZone(ZoneOffset.UTC);
+        } else if (!TemporalAccessor.class.isAssignableFrom(type)) {
+            return null;
+        }
+
+        DateTimeFormatter actual = formatter;
+        return (g, v) -> g.write(actual.format((TemporalAccessor) v));
+    }
+
+    private static Encoder beanEncoder(Class<?> type) {
+
+        Map<String, PropertyEncoder> properties = new TreeMap<>();
+
+        JsonbDateFormat classDateFormat = type.getAnnotation(JsonbDateFormat.class);
+
+        for (Method method : type.getMethods()) {
+            String name = propertyName(method);
+            if (name != null) {
+                addProperty(properties, name, method, method.getReturnType(), findField(type, name), classDateFormat);
+            }
+        }
+
+        for (Field field : type.getFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)
+                    && properties.values().stream().noneMatch(p -> p.name.equals(field.getName()))) {
+                addProperty(properties, field.getName(), field, field.getType(), field, classDateFormat);
+            }
+        }
+
+        List<PropertyEncoder> encoders = new ArrayList<>(properties.values());
+
+        return (g, v) -> {
+            g.writeStartObject();
+            for (PropertyEncoder property : encoders) {
+                property.encode(g, v);
+            }
+            g.writeEnd();
+        };
+    }
+
+    private static String propertyName(Method method) {
+        if (Modifier.isStatic(method.getModifiers()) || method.getParameterCount() != 0
+                || method.getDeclaringClass() == Object.class || method.isBridge()) {
+            return null;
+        }
+        String name = method.getName();
+        if (name.startsWith("get") && name.length() > 3 && method.getReturnType() != void.class) {
+            return decapitalize(name.substring(3));
+        }
+        if (name.startsWith("is") && name.length() > 2
+                && (method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class)) {
+            return decapitalize(name.substring(2));
+        }
+        return null;
+    }
+
+    private static String decapitalize(String name) {
+        if (name.length() > 1 && Character.isUpperCase(name.charAt(1)) && Character.isUpperCase(name.charAt(0))) {
+            return name;
+        }
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static Field findField(Class<?> type, String name) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            try {
+                return c.getDeclaredField(name);
+            } catch (NoSuchFieldException ex) {
+                // Look in the superclass
+            }
+        }
+        return null;
+    }
+
+    private static void addProperty(Map<String, PropertyEncoder> properties, String name, AccessibleObject accessor,
+            Class<?> propertyType, Field field, JsonbDateFormat classDateFormat) {
+
+        if (annotation(JsonbTransient.class, accessor, field) != null
+                || (field != null && Modifier.isTransient(field.getModifiers()))) {
+            return;
+        }
+
+        JsonbProperty jsonbProperty = annotation(JsonbProperty.class, accessor, field);
+        String jsonName = jsonbProperty != null && !jsonbProperty.value().isEmpty() ? jsonbProperty.value() : name;
+
+        JsonbDateFormat dateFormat = annotation(JsonbDateFormat.class, accessor, field);
+        if (dateFormat == null) {
+            dateFormat = classDateFormat;
+        }
+
+        Encoder encoder = null;
+        if (dateFormat != null && !JsonbDateFormat.DEFAULT_FORMAT.equals(dateFormat.value())) {
+            if (JsonbDateFormat.TIME_IN_MILLIS.equals(dateFormat.value())) {
+                encoder = millisEncoder(propertyType);
+            } else {
+                Locale locale = JsonbDateFormat.DEFAULT_LOCALE.equals(dateFormat.locale())
+                        ? Locale.getDefault() : Locale.forLanguageTag(dateFormat.locale());
+                encoder = temporalEncoder(propertyType, DateTimeFormatter.ofPattern(dateFormat.value(), locale));
+            }
+        }
+
+        try {
+            accessor.setAccessible(true);
+        } catch (RuntimeException ex) {
+            // Public members remain usable
+        }
+        properties.put(jsonName, new PropertyEncoder(name, jsonName, accessor, encoder));
+    }
+
+    private static Encoder millisEncoder(Class<?> type) {
+        if (Date.class.isAssignableFrom(type)) {
+            return (g, v) -> g.write(((Date) v).getTime());
+        }
+        if (Calendar.class.isAssignableFrom(type)) {
+            return (g, v) -> g.write(((Calendar) v).getTimeInMillis());
+        }
+        if (type == Instant.class) {
+            return (g, v) -> g.write(((Instant) v).toEpochMilli());
+        }
+        return null;
+    }
+
+    private static <A extends java.lang.annotation.Annotation> A annotation(Class<A> annotation, AccessibleObject accessor, Field field) {
+        A value = accessor.getAnnotation(annotation);
+        if (value == null && field != null) {
+            value = field.getAnnotation(annotation);
+        }
+        return value;
+    }
+
+    private static final class PropertyEncoder {
+
+        private final String name;
+        private final String jsonName;
+        private final AccessibleObject accessor;
+        // Set when the property has its own date format
+        private final Encoder encoder;
+
+        private PropertyEncoder(String name, String jsonName, AccessibleObject accessor, Encoder encoder) {
+            this.name = name;
+            this.jsonName = jsonName;
+            this.accessor = accessor;
+            this.encoder = encoder;
+        }
+
+        private void encode(JsonGenerator generator, Object instance) {
+            Object value;
+            try {
+                value = accessor instanceof Method ? ((Method) accessor).invoke(instance) : ((Field) accessor).get(instance);
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                throw new JsonbException("Unable to read property " + name + " of " + instance.getClass().getName(), ex);
+            }
+
+            if (value == null) {
+                return; // Null properties are omitted, as in JSON-B
+            }
+
+            generator.writeKey(jsonName);
+            if (encoder != null) {
+                encoder.encode(generator, value);
+            } else {
+                write(generator, value);
+            }
+        }
+    }
+
+}
@@ -17,8 +17,13 @@ package org.worldline.dynaql.impl.cdi;
 
 import java.util.ServiceLoader;
 import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.Destroyed;
+import javax.enterprise.event.Observes;
 import javax.enterprise.inject.Produces;
 import org.worldline.dynaql.api.GraphQLClientBuilder;
+import org.worldline.dynaql.impl.bind.JsonbRegistry;
+import org.worldline.dynaql.impl.http.BatchLoader;
+import org.worldline.dynaql.impl.http.HttpClientPool;
 
 /**
  *
@@ -32,4 +37,11 @@ public class GraphQLClientBuilderProducer {
         return ServiceLoader.load(GraphQLClientBuilder.class).findFirst().get();
     }
     
+    // Release the HTTP clients, the subscriptions, the batch scheduler and the Jsonb instances when the application stops
+    public void shutdown(@Observes @Destroyed(ApplicationScoped.class) Object event) {
+        HttpClientPool.closeAll();
+        BatchLoader.shutdown();
+        JsonbRegistry.closeAll();
+    }
+    
 }
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.slf4j.LoggerFactory;
+import org.worldline.dynaql.api.GraphQLClientBuilder;
+import org.worldline.dynaql.api.GraphQLRequest;
+import org.worldline.dynaql.api.GraphQLResponse;
+import org.worldline.dynaql.api.GraphQLResponse.GraphQLError;
+
+/**
+ * Collects the lookups of a root field by key and sends them as a single
+ * document, one aliased root field per key:
+ *
+ * query ($k0: Int!, $k1: Int!) { k0: person(personId: $k0) {...} k1: person(personId: $k1) {...} }
+ *
+ * Lookups are sent once the window has elapsed since the first pending one,
+ * or as soon as maxBatchSize distinct keys are pending. The keys are passed
+ * as variables, so that the documents of batches of the same size are
+ * identical.
+ *
+ * @author jefrajames
+ */
+public class BatchLoader<K, V> {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(BatchLoader.class);
+
+    // Guarded by BatchLoader.class, started on the first batch window
+    private static ScheduledExecutorService scheduler;
+
+    private final GraphQLClientBuilder graphQLClientBuilder;
+    private final Supplier<HttpInvocationBuilder> invocationBuilder;
+    private final Class<V> type;
+    private final String rootField;
+    private final String argument;
+    private final String argumentType;
+    private final String selection;
+    private final int maxBatchSize;
+    private final long window;
+
+    // Documents by batch size
+    private final Map<Integer, String> documents = new HashMap<>();
+
+    private LinkedHashMap<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+
+    private BatchLoader(Builder<K, V> builder) {
+        this.graphQLClientBuilder = builder.graphQLClientBuilder;
+        this.invocationBuilder = builder.invocationBuilder;
+        this.type = builder.type;
+        this.rootField = builder.rootField;
+        this.argument = builder.argument;
+        this.argumentType = builder.argumentType;
+        this.selection = builder.selection;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.window = builder.window;
+    }
+
+    private static synchronized ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "dynaql-batch-loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return scheduler;
+    }
+
+    /**
+     * Stops the scheduler, typically on application shutdown. The batches
+     * already waiting for their window are still sent.
+     */
+    public static synchronized void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @param type the class the root field is mapped to
+     */
+    public static <K, V> Builder<K, V> newBuilder(Class<V> type) {
+        return new Builder<>(type);
+    }
+
+    /**
+     * @param key the value of the argument
+     * @return the value of the root field for this key, null if none
+     */
+    public CompletableFuture<V> load(K key) {
+
+        CompletableFuture<V> result;
+        LinkedHashMap<K, CompletableFuture<V>> batch = null;
+
+        synchronized (this) {
+            result = pending.get(key);
+            if (result == null) {
+                result = new CompletableFuture<>();
+                pending.put(key, result);
+                if (pending.size() >= maxBatchSize) {
+                    batch = pending;
+                    pending = new LinkedHashMap<>();
+                } else if (pending.size() == 1) {
+                    LinkedHashMap<K, CompletableFuture<V>> scheduled = pending;
+                    scheduler().schedule(() -> dispatch(scheduled), window, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        if (batch != null) {
+            send(batch);
+        }
+
+        return result;
+    }
+
+    /**
+     * @param keys the values of the argument
+     * @return the values of the root field, in the order of the keys
+     */
+    public CompletableFuture<List<V>> loadAll(Collection<K> keys) {
+        List<CompletableFuture<V>> futures = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            futures.add(load(key));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(v -> {
+            List<V> values = new ArrayList<>(futures.size());
+            futures.forEach(f -> values.add(f.join()));
+            return values;
+        });
+    }
+
+    /**
+     * Sends the pending lookups without waiting for the end of the window.
+     */
+    public void dispatch() {
+        LinkedHashMap<K, CompletableFuture<V>> batch;
+        synchronized (this) {
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+        send(batch);
+    }
+
+    // Sends the batch if it is still the pending one
+    private void dispatch(LinkedHashMap<K, CompletableFuture<V>> scheduled) {
+        synchronized (this) {
+            if (pending != scheduled) {
+                return; // Already sent
+            }
+            pending = new LinkedHashMap<>();
+        }
+        send(scheduled);
+    }
+
+    private synchronized String document(int size) {
+        return documents.computeIfAbsent(size, n -> {
+            StringBuilder variables = new StringBuilder();
+            StringBuilder fields = new StringBuilder();
+            for (int i = 0; i < n; i++) {
+                variables.append(i > 0 ? ", " : "").append("$k").append(i).append(": ").append(argumentType);
+                fields.append(" k").append(i).append(": ").append(rootField)
+                        .append('(').append(argument).append(": $k").append(i).append(") ").append(selection);
+            }
+            return "query (" + variables + ") {" + fields + " }";
+        });
+    }
+
+    private void send(LinkedHashMap<K, CompletableFuture<V>> batch) {
+
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<K> keys = new ArrayList<>(batch.keySet());
+        log.debug("Loading " + keys.size() + " " + rootField);
+
+        CompletableFuture<HttpResponse> response;
+        try {
+            GraphQLRequest graphQLRequest = graphQLClientBuilder.newRequest(document(keys.size()));
+            for (int i = 0; i < keys.size(); i++) {
+                graphQLRequest.addVariable("k" + i, keys.get(i));
+            }
+            response = invocationBuilder.get().graphQLRequest(graphQLRequest).build().invokeAsync();
+        } catch (RuntimeException ex) {
+            batch.values().forEach(f -> f.completeExceptionally(ex));
+            return;
+        }
+
+        response.whenComplete((httpResponse, ex) -> {
+            if (ex != null) {
+                batch.values().forEach(f -> f.completeExceptionally(ex));
+            } else {
+                complete(keys, batch, httpResponse.getGraphQLResponse());
+            }
+        });
+    }
+
+    private void complete(List<K> keys, Map<K, CompletableFuture<V>> batch, GraphQLResponse graphQLResponse) {
+
+        // Errors are reported to the keys they relate to
+        Map<String, GraphQLError> errors = new HashMap<>();
+        GraphQLError globalError = null;
+        if (graphQLResponse.hasError()) {
+            for (GraphQLError error : graphQLResponse.getErrors()) {
+                Object[] path = error.getPath();
+                if (path != null && path.length > 0) {
+                    errors.putIfAbsent(String.valueOf(path[0]), error);
+                } else if (globalError == null) {
+                    globalError = error;
+                }
+            }
+        }
+
+        for (int i = 0; i < keys.size(); i++) {
+            CompletableFuture<V> future = batch.get(keys.get(i));
+            String alias = "k" + i;
+            GraphQLError error = errors.get(alias);
+            if (error == null && !graphQLResponse.hasData()) {
+                error = globalError;
+            }
+            try {
+                if (error != null) {
+                    future.completeExceptionally(new HttpInvocationException("GraphQL error on " + rootField + " " + keys.get(i) + ": " + error.getMessage()));
+                } else {
+                    future.complete(graphQLResponse.getObject(type, alias));
+                }
+            } catch (RuntimeException ex) {
+                future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    public static class Builder<K, V> {
+
+        private final Class<V> type;
+        private GraphQLClientBuilder graphQLClientBuilder;
+        private Supplier<HttpInvocationBuilder> invocationBuilder;
+        private String rootField;
+        private String argument;
+        private String argumentType;
+        private String selection = "";
+        private int maxBatchSize = 100;
+        private long window = 10L;
+
+        private Builder(Class<V> type) {
+            this.type = type;
+        }
+
+        public Builder<K, V> graphQLClientBuilder(GraphQLClientBuilder graphQLClientBuilder) {
+            this.graphQLClientBuilder = graphQLClientBuilder;
+            return this;
+        }
+
+        /**
+         * @param invocationBuilder creates a builder configured with the endpoint, headers and properties
+         */
+        public Builder<K, V> invocationBuilder(Supplier<HttpInvocationBuilder> invocationBuilder) {
+            this.invocationBuilder = invocationBuilder;
+            return this;
+        }
+
+        /**
+         * @param rootField the looked up root field, person for instance
+         * @param argument the name of its key argument, personId for instance
+         * @param argumentType the GraphQL type of this argument, Int! for instance
+         */
+        public Builder<K, V> rootField(String rootField, String argument, String argumentType) {
+            this.rootField = rootField;
+            this.argument = argument;
+            this.argumentType = argumentType;
+            return this;
+        }
+
+        /**
+         * @param selection the selection set of the root field, { id surname } for instance
+         */
+        public Builder<K, V> selection(String selection) {
+            this.selection = selection;
+            return this;
+        }
+
+        public Builder<K, V> maxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * @param window how long in ms lookups are collected before being sent
+         */
+        public Builder<K, V> window(long window) {
+            this.window = window;
+            return this;
+        }
+
+        public BatchLoader<K, V> build() {
+            if (graphQLClientBuilder == null || invocationBuilder == null || rootField == null || argument == null || argumentType == null) {
+                throw new IllegalArgumentException("graphQLClientBuilder, invocationBuilder and rootField are required");
+            }
+            if (maxBatchSize <= 0) {
+                throw new IllegalArgumentException("Illegal maxBatchSize value: " + maxBatchSize);
+            }
+            return new BatchLoader<>(this);
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The extra requests a policy may send, as a ratio of the traffic.
+ *
+ * Each request earns ratio extra request, and up to min unused ones are saved
+ * for a low traffic. When the server is in trouble, the extra requests are
+ * bounded to this ratio of the traffic instead of multiplying it.
+ *
+ * @author jefrajames
+ */
+final class Budget {
+
+    // Counted in thousandths of a request
+    private static final long COST = 1000;
+
+    private final long deposit;
+    private final long max;
+    private final AtomicLong balance;
+
+    Budget(double ratio, int min) {
+        this.deposit = Math.round(ratio * COST);
+        this.max = min * COST;
+        this.balance = new AtomicLong(max);
+    }
+
+    /**
+     * Called once per request.
+     */
+    void deposit() {
+        long current;
+        do {
+            current = balance.get();
+            if (current >= max) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(max, current + deposit)));
+    }
+
+    /**
+     * @return true if an extra request can be sent
+     */
+    boolean withdraw() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < COST) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - COST));
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(balance.get() / (double) COST);
+    }
+
+}
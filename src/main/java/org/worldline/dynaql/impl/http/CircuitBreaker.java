@@ -0,0 +1,235 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.net.URI;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fails fast the requests to an unhealthy endpoint, configured with
+ * HttpConfiguration.CIRCUIT_BREAKER.
+ *
+ * Each endpoint has its own circuit. It opens after failureThreshold
+ * consecutive network failures or 5xx statuses: requests are then rejected
+ * with a CircuitBreakerOpenException. After openDuration a single trial
+ * request is let through, which closes the circuit if it succeeds and opens
+ * it again otherwise.
+ *
+ * @author jefrajames
+ */
+public class CircuitBreaker {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final ConcurrentMap<URI, Circuit> circuits = new ConcurrentHashMap<>();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private CircuitBreaker(Builder builder) {
+        this.failureThreshold = builder.failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(builder.openDuration);
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * To be called before sending a request, then release once its outcome is known.
+     *
+     * @return the permit to release
+     * @throws CircuitBreakerOpenException if the circuit of the endpoint is open
+     */
+    Permit acquire(URI uri) {
+        Permit permit = circuits.computeIfAbsent(uri, u -> new Circuit()).tryAcquire(uri);
+        if (permit == null) {
+            rejected.increment();
+            throw new CircuitBreakerOpenException("Circuit breaker open for " + uri);
+        }
+        return permit;
+    }
+
+    /**
+     * @param failure the failure of the request, null if it succeeded
+     */
+    void release(Permit permit, Throwable failure) {
+        if (failure == null || !Failures.isServerFailure(failure)) {
+            // A cancelled request says nothing about the server
+            permit.circuit.release(permit, failure instanceof CancellationException ? null : Boolean.TRUE);
+        } else {
+            permit.circuit.release(permit, Boolean.FALSE);
+        }
+    }
+
+    /**
+     * @return the state of the circuit of the endpoint
+     */
+    public State getState(String endpoint) {
+        Circuit circuit = circuits.get(URI.create(endpoint));
+        return circuit != null ? circuit.getState() : State.CLOSED;
+    }
+
+    /**
+     * @return the number of requests rejected while open
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker{" + "failureThreshold=" + failureThreshold + ", openNanos=" + openNanos + ", circuits=" + circuits + ", rejected=" + rejected + '}';
+    }
+
+    /**
+     * A request let through by a circuit. Only the outcome of the trial
+     * request closes or opens again a half-open circuit, and only the
+     * requests acquired since the circuit last closed are counted.
+     */
+    static final class Permit {
+
+        private final Circuit circuit;
+        private final URI uri;
+        private final long generation;
+        private final boolean trial;
+
+        private Permit(Circuit circuit, URI uri, long generation, boolean trial) {
+            this.circuit = circuit;
+            this.uri = uri;
+            this.generation = generation;
+            this.trial = trial;
+        }
+    }
+
+    private final class Circuit {
+
+        private State state = State.CLOSED;
+        private int failures;
+        private long openedAt;
+        private boolean trialInFlight;
+
+        // Incremented when the circuit opens or closes
+        private long generation;
+
+        // Returns null if the request is rejected
+        private synchronized Permit tryAcquire(URI uri) {
+            switch (state) {
+                case CLOSED:
+                    return new Permit(this, uri, generation, false);
+                case OPEN:
+                    if (System.nanoTime() - openedAt < openNanos) {
+                        return null;
+                    }
+                    state = State.HALF_OPEN;
+                    trialInFlight = true;
+                    return new Permit(this, uri, generation, true);
+                default:
+                    if (trialInFlight) {
+                        return null;
+                    }
+                    trialInFlight = true;
+                    return new Permit(this, uri, generation, true);
+            }
+        }
+
+        // success is null if the outcome is unknown
+        private synchronized void release(Permit permit, Boolean success) {
+            if (permit.trial) {
+                trialInFlight = false;
+                if (success == null) {
+                    return;
+                }
+                if (success) {
+                    log.info("Circuit breaker closed for " + permit.uri);
+                    state = State.CLOSED;
+                    failures = 0;
+                    generation++;
+                } else {
+                    open();
+                }
+                return;
+            }
+            if (success == null || state != State.CLOSED || permit.generation != generation) {
+                return;
+            }
+            if (success) {
+                failures = 0;
+            } else if (++failures >= failureThreshold) {
+                log.warn("Circuit breaker open for " + permit.uri + " after " + failures + " failures");
+                open();
+            }
+        }
+
+        private void open() {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            generation++;
+        }
+
+        private synchronized State getState() {
+            return state;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return state + "(" + failures + ")";
+        }
+    }
+
+    public static class Builder {
+
+        private int failureThreshold = 5;
+        private long openDuration = 10_000L;
+
+        private Builder() {
+        }
+
+        /**
+         * @param failureThreshold the number of consecutive failures opening the circuit, 5 by default
+         */
+        public Builder failureThreshold(int failureThreshold) {
+            if (failureThreshold < 1) {
+                throw new IllegalArgumentException("Illegal failureThreshold: " + failureThreshold);
+            }
+            this.failureThreshold = failureThreshold;
+            return this;
+        }
+
+        /**
+         * @param openDuration the time in milliseconds before a trial request, 10 seconds by default
+         */
+        public Builder openDuration(long openDuration) {
+            this.openDuration = openDuration;
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(this);
+        }
+    }
+
+}
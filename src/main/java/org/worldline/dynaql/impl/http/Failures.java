@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+
+/**
+ * Classifies the failures of an invocation, for the RetryPolicy, the
+ * CircuitBreaker and the LoadBalancer.
+ *
+ * @author jefrajames
+ */
+final class Failures {
+
+    private Failures() {
+    }
+
+    /**
+     * @return the HTTP status which caused the failure, -1 if none
+     */
+    static int statusCode(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpResponseException) {
+                return ((HttpResponseException) cause).getStatusCode();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the connection could not be established: the request was not sent
+     */
+    static boolean isConnectFailure(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof ConnectTimeoutException
+                    || cause instanceof HttpConnectTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the server could not be reached or answered with a 5xx status
+     */
+    static boolean isServerFailure(Throwable failure) {
+        int statusCode = statusCode(failure);
+        if (statusCode > 0) {
+            return statusCode >= 500;
+        }
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
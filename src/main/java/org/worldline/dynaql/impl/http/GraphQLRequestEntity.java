@@ -0,0 +1,165 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.worldline.dynaql.api.GraphQLRequest;
+import org.worldline.dynaql.impl.DynaQLRequest;
+import org.worldline.dynaql.impl.WireTap;
+
+/**
+ * An HTTP entity writing the GraphQL request straight to the connection.
+ *
+ * The blocking client calls writeTo: the body is streamed without any
+ * intermediate String. The asynchronous client reads getContent, which
+ * serializes the request in memory.
+ *
+ * When request compression is enabled, the body is buffered to know its size
+ * and compressed if large enough.
+ *
+ * A batch is sent as a JSON array of requests, a persisted query as its hash
+ * and its variables.
+ *
+ * @author jefrajames
+ */
+class GraphQLRequestEntity extends AbstractHttpEntity {
+
+    @FunctionalInterface
+    private interface BodyWriter {
+
+        void write(OutputStream out) throws IOException;
+    }
+
+    private final BodyWriter bodyWriter;
+    private long contentLength = -1;
+
+    GraphQLRequestEntity(GraphQLRequest graphQLRequest) {
+        this(graphQLRequest::writeJson);
+    }
+
+    GraphQLRequestEntity(List<GraphQLRequest> graphQLRequests) {
+        this(out -> {
+            out.write('[');
+            for (int i = 0; i < graphQLRequests.size(); i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                graphQLRequests.get(i).writeJson(out);
+            }
+            out.write(']');
+        });
+    }
+
+    /**
+     * @param withQuery false to send the hash of the query only
+     */
+    GraphQLRequestEntity(DynaQLRequest graphQLRequest, boolean withQuery) {
+        this(out -> graphQLRequest.writePersistedJson(out, withQuery));
+    }
+
+    private GraphQLRequestEntity(BodyWriter bodyWriter) {
+        this.bodyWriter = bodyWriter;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+        setChunked(true);
+    }
+
+    /**
+     * @param threshold the minimum size in bytes of a compressed body
+     * @return a buffered entity, gzip-compressed if large enough
+     */
+    HttpEntity buffer(int threshold) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bodyWriter.write(out);
+
+        if (out.size() < threshold) {
+            return new ByteArrayEntity(out.toByteArray(), ContentType.APPLICATION_JSON);
+        }
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(out.size() / 4 + 32);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            out.writeTo(gzip);
+        }
+
+        ByteArrayEntity entity = new ByteArrayEntity(compressed.toByteArray(), ContentType.APPLICATION_JSON);
+        entity.setContentEncoding("gzip");
+        return entity;
+    }
+
+    /**
+     * @return an entity reporting the size and the writing time of the body to the metrics
+     */
+    GraphQLRequestEntity measured(InvocationMetrics metrics) {
+        GraphQLRequestEntity measured = new GraphQLRequestEntity(out -> {
+            CountingOutputStream counting = new CountingOutputStream(out);
+            long start = System.nanoTime();
+            bodyWriter.write(counting);
+            metrics.written(System.nanoTime() - start, counting.getByteCount());
+        });
+        measured.contentLength = contentLength;
+        measured.setChunked(isChunked());
+        return measured;
+    }
+
+    /**
+     * @return an entity copying the body to the capture while writing it
+     */
+    GraphQLRequestEntity tap(WireTap.Capture capture) {
+        GraphQLRequestEntity tapped = new GraphQLRequestEntity(out -> bodyWriter.write(capture.tapRequest(out)));
+        tapped.contentLength = contentLength;
+        tapped.setChunked(isChunked());
+        return tapped;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bodyWriter.write(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        bodyWriter.write(outStream);
+        outStream.flush();
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+}
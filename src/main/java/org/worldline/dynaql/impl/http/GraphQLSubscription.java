@@ -0,0 +1,258 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+import org.slf4j.LoggerFactory;
+import org.worldline.dynaql.api.GraphQLRequest;
+import org.worldline.dynaql.api.GraphQLResponse;
+import org.worldline.dynaql.impl.DynaQLResponse;
+
+/**
+ * One GraphQL subscription, from the subscribe message to the complete one.
+ *
+ * Events are buffered until the subscriber requests them, up to bufferSize:
+ * beyond, the overflow policy applies. They are delivered on the executor,
+ * never on the WebSocket thread, one at a time.
+ *
+ * @author jefrajames
+ */
+class GraphQLSubscription implements Flow.Subscription {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(GraphQLSubscription.class);
+
+    private final Flow.Subscriber<? super GraphQLResponse> subscriber;
+    private final GraphQLRequest graphqlRequest;
+    private final int bufferSize;
+    private final OverflowPolicy overflowPolicy;
+    private final Executor executor;
+    private final Consumer<GraphQLSubscription> start;
+
+    // Guarded by this
+    private final ArrayDeque<DynaQLResponse> buffer = new ArrayDeque<>();
+    private long demand;
+    private boolean started;
+    private boolean completed; // No more events will be buffered
+    private Throwable failure;
+    private boolean done; // Terminated or cancelled
+    private boolean delivering;
+    private SubscriptionConnection connection;
+    private String id;
+
+    /**
+     * @param start registers the subscription on its connection, on the first request
+     */
+    GraphQLSubscription(Flow.Subscriber<? super GraphQLResponse> subscriber, GraphQLRequest graphqlRequest,
+            int bufferSize, OverflowPolicy overflowPolicy, Executor executor, Consumer<GraphQLSubscription> start) {
+        this.subscriber = subscriber;
+        this.graphqlRequest = graphqlRequest;
+        this.bufferSize = bufferSize;
+        this.overflowPolicy = overflowPolicy;
+        this.executor = executor;
+        this.start = start;
+    }
+
+    GraphQLRequest getGraphQLRequest() {
+        return graphqlRequest;
+    }
+
+    synchronized String getId() {
+        return id;
+    }
+
+    /**
+     * @return false if the subscription has been cancelled meanwhile
+     */
+    synchronized boolean attach(SubscriptionConnection connection, String id) {
+        this.connection = connection;
+        this.id = id;
+        return !done;
+    }
+
+    @Override
+    public void request(long n) {
+
+        boolean starting = false;
+        boolean invalid = false;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            if (n <= 0) {
+                // Rule 3.9 of the Reactive Streams specification
+                failure = new IllegalArgumentException("Non-positive request: " + n);
+                buffer.clear();
+                completed = true;
+                invalid = true;
+            } else {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                starting = !started;
+                started = true;
+            }
+        }
+
+        if (invalid) {
+            stop(true);
+        } else if (starting) {
+            start.accept(this);
+        }
+        schedule();
+    }
+
+    @Override
+    public void cancel() {
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+            buffer.clear();
+        }
+        stop(true);
+    }
+
+    // Unregisters from the connection, telling the server to stop if still running
+    private void stop(boolean notifyServer) {
+        SubscriptionConnection attached;
+        synchronized (this) {
+            attached = connection;
+        }
+        if (attached != null) {
+            attached.unsubscribe(this, notifyServer);
+        }
+    }
+
+    /**
+     * Called by the connection for each event of the server.
+     */
+    void onNext(DynaQLResponse response) {
+
+        boolean overflow = false;
+        synchronized (this) {
+            if (done || completed) {
+                return;
+            }
+            if (buffer.size() < bufferSize) {
+                buffer.add(response);
+            } else {
+                switch (overflowPolicy) {
+                    case DROP_OLDEST:
+                        buffer.poll();
+                        buffer.add(response);
+                        log.debug("Subscription " + id + " buffer full, oldest event dropped");
+                        break;
+                    case DROP_LATEST:
+                        log.debug("Subscription " + id + " buffer full, latest event dropped");
+                        break;
+                    default:
+                        failure = new HttpInvocationException("Subscription " + id + " buffer overflow: more than " + bufferSize + " pending events");
+                        buffer.clear();
+                        completed = true;
+                        overflow = true;
+                }
+            }
+        }
+
+        if (overflow) {
+            stop(true);
+        }
+        schedule();
+    }
+
+    /**
+     * Called by the connection once the server has completed the subscription.
+     */
+    void onComplete() {
+        synchronized (this) {
+            completed = true;
+        }
+        schedule();
+    }
+
+    /**
+     * Called by the connection when it fails.
+     */
+    void onError(Throwable ex) {
+        synchronized (this) {
+            if (completed) {
+                return;
+            }
+            failure = ex;
+            buffer.clear();
+            completed = true;
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        synchronized (this) {
+            if (delivering || done) {
+                return;
+            }
+            delivering = true;
+        }
+        executor.execute(this::deliver);
+    }
+
+    private void deliver() {
+        for (;;) {
+            DynaQLResponse next = null;
+            Throwable error = null;
+            synchronized (this) {
+                if (done) {
+                    delivering = false;
+                    return;
+                }
+                if (!buffer.isEmpty() && demand > 0) {
+                    next = buffer.poll();
+                    demand--;
+                } else if (buffer.isEmpty() && completed) {
+                    done = true;
+                    delivering = false;
+                    error = failure;
+                } else {
+                    delivering = false;
+                    return;
+                }
+            }
+
+            if (next == null) {
+                if (error != null) {
+                    subscriber.onError(error);
+                } else {
+                    subscriber.onComplete();
+                }
+                return;
+            }
+
+            try {
+                subscriber.onNext(next);
+            } catch (RuntimeException ex) {
+                log.warn("Subscriber failure, cancelling subscription " + id, ex);
+                cancel();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "GraphQLSubscription{" + "id=" + id + ", graphqlRequest=" + graphqlRequest + '}';
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cuts the tail latency of the invocations it is configured on with
+ * HttpConfiguration.HEDGING_POLICY.
+ *
+ * When no response has arrived after the hedging delay, the request is sent
+ * a second time, to another endpoint of the LoadBalancer if any or over
+ * another connection. The first response wins and the other request is
+ * cancelled. Only queries, and mutations marked with
+ * HttpConfiguration.IDEMPOTENT, are hedged.
+ *
+ * The delay is the given percentile of the latencies measured over the last
+ * requests, the initial delay until enough of them are measured. The hedges
+ * are bounded by a Budget shared by all the invocations of the policy.
+ *
+ * @author jefrajames
+ */
+public class HedgingPolicy {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(HedgingPolicy.class);
+
+    // The delay is updated every UPDATE_SAMPLES latencies, measured over up to WINDOW_SAMPLES of them
+    private static final int UPDATE_SAMPLES = 100;
+    private static final int WINDOW_SAMPLES = 1000;
+
+    private final double percentile;
+    private final Budget budget;
+
+    private volatile MetricsInvocationListener.Histogram latencies = new MetricsInvocationListener.Histogram();
+    private volatile long delayNanos;
+
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    private HedgingPolicy(Builder builder) {
+        this.percentile = builder.percentile;
+        this.delayNanos = TimeUnit.MILLISECONDS.toNanos(builder.initialDelay);
+        this.budget = new Budget(builder.budgetRatio, builder.minHedges);
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Called once per request, hedged or not.
+     */
+    void deposit() {
+        budget.deposit();
+    }
+
+    /**
+     * @return the time to wait for a response before hedging, in nanoseconds
+     */
+    long delay() {
+        return delayNanos;
+    }
+
+    /**
+     * @param nanos the latency of a request which was not hedged, or the time it was waited for
+     */
+    void measured(long nanos) {
+        MetricsInvocationListener.Histogram window = latencies;
+        window.update(nanos);
+
+        long count = window.getCount();
+        if (count % UPDATE_SAMPLES == 0) {
+            delayNanos = window.getValue(percentile);
+            if (count >= WINDOW_SAMPLES) {
+                latencies = new MetricsInvocationListener.Histogram();
+            }
+        }
+    }
+
+    /**
+     * @return true if the request must be sent again
+     */
+    boolean tryHedge() {
+        if (!budget.withdraw()) {
+            budgetExhausted.increment();
+            log.debug("Hedging budget exhausted, not hedging");
+            return false;
+        }
+        hedges.increment();
+        return true;
+    }
+
+    void hedgeWon() {
+        hedgeWins.increment();
+    }
+
+    /**
+     * @return the current hedging delay in milliseconds
+     */
+    public long getDelay() {
+        return TimeUnit.NANOSECONDS.toMillis(delayNanos);
+    }
+
+    /**
+     * @return the number of hedged requests sent
+     */
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    /**
+     * @return the number of hedged requests answered first
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.sum();
+    }
+
+    /**
+     * @return the number of hedges given up because the budget was exhausted
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "HedgingPolicy{" + "percentile=" + percentile + ", delay=" + getDelay() + ", budget=" + budget
+                + ", hedges=" + hedges + ", hedgeWins=" + hedgeWins + ", budgetExhausted=" + budgetExhausted + '}';
+    }
+
+    public static class Builder {
+
+        private double percentile = 0.95;
+        private long initialDelay = 100L;
+        private double budgetRatio = 0.05;
+        private int minHedges = 10;
+
+        private Builder() {
+        }
+
+        /**
+         * @param percentile the percentile of the latencies used as hedging delay, 0.95 by default
+         */
+        public Builder percentile(double percentile) {
+            if (percentile <= 0 || percentile >= 1) {
+                throw new IllegalArgumentException("Illegal percentile: " + percentile);
+            }
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * @param initialDelay the hedging delay in milliseconds until enough latencies are measured, 100 by default
+         */
+        public Builder initialDelay(long initialDelay) {
+            if (initialDelay < 0) {
+                throw new IllegalArgumentException("Illegal initialDelay: " + initialDelay);
+            }
+            this.initialDelay = initialDelay;
+            return this;
+        }
+
+        /**
+         * @param budgetRatio the hedges earned by each request, 0.05 by default
+         * @param minHedges the hedges kept in reserve for a low traffic, 10 by default
+         */
+        public Builder budget(double budgetRatio, int minHedges) {
+            if (budgetRatio < 0 || minHedges < 0) {
+                throw new IllegalArgumentException("Illegal budget: " + budgetRatio + ", " + minHedges);
+            }
+            this.budgetRatio = budgetRatio;
+            this.minHedges = minHedges;
+            return this;
+        }
+
+        public HedgingPolicy build() {
+            return new HedgingPolicy(this);
+        }
+    }
+
+}
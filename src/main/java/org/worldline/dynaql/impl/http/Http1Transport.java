@@ -0,0 +1,290 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import org.apache.http.Header;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.LoggerFactory;
+import static org.worldline.dynaql.impl.http.HttpConfiguration.REQUEST_CONFIG;
+
+/**
+ * The default transport: HTTP/1.1 over the Apache clients of an
+ * HttpClientPool, one connection per in-flight request.
+ *
+ * @author jefrajames
+ */
+class Http1Transport implements HttpTransport {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(Http1Transport.class);
+
+    private final HttpConfiguration configuration;
+    private volatile HttpClientPool pool;
+
+    Http1Transport(HttpConfiguration configuration) {
+        this.configuration = configuration;
+        this.pool = HttpClientPool.of(configuration);
+    }
+
+    // The pool may have been closed on shutdown, the process-wide one is then acquired again
+    HttpClientPool pool() {
+        HttpClientPool current = pool;
+        if (current.isClosed()) {
+            current = HttpClientPool.of(configuration);
+            pool = current;
+        }
+        return current;
+    }
+
+    private HttpPost createHttpPost(URI uri, Map<String, String> headers, GraphQLRequestEntity entity) throws IOException {
+
+        HttpPost httpPost = new HttpPost(uri);
+
+        httpPost.setConfig((RequestConfig) configuration.get(REQUEST_CONFIG));
+
+        if (!Boolean.FALSE.equals(configuration.get(HttpConfiguration.RESPONSE_COMPRESSION))) {
+            httpPost.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+        }
+
+        // Set the HTTP headers
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                httpPost.addHeader(header.getKey(), header.getValue());
+            }
+        }
+
+        Integer threshold = (Integer) configuration.get(HttpConfiguration.REQUEST_COMPRESSION_THRESHOLD);
+        httpPost.setEntity(threshold == null ? entity : entity.buffer(threshold));
+
+        return httpPost;
+    }
+
+    // The context carries the metrics to the client, null if not measured
+    private static HttpContext createContext(InvocationMetrics metrics) {
+        if (metrics == null) {
+            return null;
+        }
+        HttpContext context = HttpClientContext.create();
+        context.setAttribute(InvocationMetrics.CONTEXT_ATTRIBUTE, metrics);
+        metrics.requested();
+        return context;
+    }
+
+    @Override
+    public HttpExchange execute(URI uri, Map<String, String> headers, GraphQLRequestEntity entity, InvocationMetrics metrics) throws IOException {
+        HttpClientPool pool = pool();
+        // The client is shared: only the response is closed, the connection goes back to the pool
+        CloseableHttpResponse serverResponse = pool.getHttpClient().execute(createHttpPost(uri, headers, entity), createContext(metrics));
+        if (metrics != null) {
+            metrics.poolStats(pool.getStats());
+        }
+        return new Exchange(serverResponse, serverResponse);
+    }
+
+    @Override
+    public CompletableFuture<HttpExchange> executeAsync(URI uri, Map<String, String> headers, GraphQLRequestEntity entity, InvocationMetrics metrics) {
+
+        HttpPost httpPost;
+        try {
+            httpPost = createHttpPost(uri, headers, entity);
+        } catch (IOException ex) {
+            CompletableFuture<HttpExchange> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new HttpInvocationException(ex));
+            return failed;
+        }
+
+        HttpClientPool pool = pool();
+        CompletableFuture<HttpExchange> received = new CompletableFuture<>();
+
+        FutureCallback<org.apache.http.HttpResponse> callback = new FutureCallback<org.apache.http.HttpResponse>() {
+            @Override
+            public void completed(org.apache.http.HttpResponse serverResponse) {
+                if (metrics != null) {
+                    metrics.poolStats(pool.getAsyncStats());
+                }
+                received.complete(new Exchange(serverResponse, null));
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                received.completeExceptionally(new HttpInvocationException(ex));
+            }
+
+            @Override
+            public void cancelled() {
+                received.cancel(false);
+            }
+        };
+
+        Future<org.apache.http.HttpResponse> exchange;
+        if (metrics == null) {
+            exchange = pool.getHttpAsyncClient().execute(httpPost, callback);
+        } else {
+            CloseableHttpAsyncClient client = pool.getHttpAsyncClient(); // Started before measuring
+            HttpContext context = createContext(metrics);
+            exchange = client.execute(new MeasuredRequestProducer(HttpAsyncMethods.create(httpPost), metrics),
+                    HttpAsyncMethods.createConsumer(), context, callback);
+        }
+
+        received.whenComplete((r, ex) -> {
+            if (received.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+
+        return received;
+    }
+
+    @Override
+    public String toString() {
+        return "Http1Transport{" + "pool=" + pool + '}';
+    }
+
+    // The content is produced once the connection is leased, the request is completed once sent
+    private static final class MeasuredRequestProducer implements HttpAsyncRequestProducer {
+
+        private final HttpAsyncRequestProducer producer;
+        private final InvocationMetrics metrics;
+
+        private MeasuredRequestProducer(HttpAsyncRequestProducer producer, InvocationMetrics metrics) {
+            this.producer = producer;
+            this.metrics = metrics;
+        }
+
+        @Override
+        public HttpHost getTarget() {
+            return producer.getTarget();
+        }
+
+        @Override
+        public org.apache.http.HttpRequest generateRequest() throws IOException, HttpException {
+            return producer.generateRequest();
+        }
+
+        @Override
+        public void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException {
+            metrics.connected();
+            producer.produceContent(encoder, ioctrl);
+        }
+
+        @Override
+        public void requestCompleted(HttpContext context) {
+            metrics.sent();
+            producer.requestCompleted(context);
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            producer.failed(ex);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return producer.isRepeatable();
+        }
+
+        @Override
+        public void resetRequest() throws IOException {
+            producer.resetRequest();
+        }
+
+        @Override
+        public void close() throws IOException {
+            producer.close();
+        }
+    }
+
+    private static final class Exchange extends HttpExchange {
+
+        private final org.apache.http.HttpResponse serverResponse;
+        private final Closeable connection;
+
+        private Exchange(org.apache.http.HttpResponse serverResponse, Closeable connection) {
+            this.serverResponse = serverResponse;
+            this.connection = connection;
+        }
+
+        @Override
+        protected int getStatusCode() {
+            return serverResponse.getStatusLine().getStatusCode();
+        }
+
+        @Override
+        protected String getHeader(String name) {
+            Header header = serverResponse.getFirstHeader(name);
+            return header != null ? header.getValue() : null;
+        }
+
+        @Override
+        protected InputStream getBody() throws IOException {
+            return serverResponse.getEntity() != null ? serverResponse.getEntity().getContent() : new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        HttpResponse createHttpResponse() {
+            HttpResponse httpResponse = new HttpResponse();
+
+            Header[] headers = serverResponse.getAllHeaders();
+            for (int i = 0; i < headers.length; i++) {
+                httpResponse.header(headers[i].getName(), headers[i].getValue());
+            }
+
+            return httpResponse;
+        }
+
+        @Override
+        void release() {
+            // Make sure the connection can be reused, even with a compressed content
+            EntityUtils.consumeQuietly(serverResponse.getEntity());
+            close();
+        }
+
+        @Override
+        public void close() {
+            if (connection == null) {
+                EntityUtils.consumeQuietly(serverResponse.getEntity()); // Already buffered
+                return;
+            }
+            try {
+                connection.close();
+            } catch (IOException ex) {
+                log.debug("Error while closing the HTTP response", ex);
+            }
+        }
+    }
+
+}
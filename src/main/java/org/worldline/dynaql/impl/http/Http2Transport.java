@@ -0,0 +1,284 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.http.HttpEntity;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An HTTP/2 transport over the JDK HttpClient.
+ *
+ * Concurrent requests to the same endpoint are multiplexed as streams of a
+ * single connection, with HTTP/2 flow control. https endpoints negotiate h2
+ * with ALPN, http ones are upgraded to h2c by the first request, which suits
+ * local sidecars. Servers which do not speak HTTP/2 are still reached over
+ * HTTP/1.1.
+ *
+ * Clients are shared for the whole process, per connect timeout and proxy.
+ *
+ * @author jefrajames
+ */
+class Http2Transport implements HttpTransport {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(Http2Transport.class);
+
+    private static final ConcurrentMap<List<Object>, HttpClient> CLIENTS = new ConcurrentHashMap<>();
+
+    // Set by the client itself
+    static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        RESTRICTED_HEADERS.addAll(Arrays.asList("Connection", "Content-Length", "Expect", "Host", "Upgrade"));
+    }
+
+    private final HttpConfiguration configuration;
+    private final HttpClient httpClient;
+
+    private Http2Transport(HttpConfiguration configuration, HttpClient httpClient) {
+        this.configuration = configuration;
+        this.httpClient = httpClient;
+    }
+
+    /**
+     * @param configuration the configuration holding the connect timeout and proxy settings
+     * @return a transport using the process-wide client matching these settings
+     */
+    static Http2Transport of(HttpConfiguration configuration) {
+        return new Http2Transport(configuration, getHttpClient(configuration));
+    }
+
+    /**
+     * @param configuration the configuration holding the connect timeout and proxy settings
+     * @return the process-wide JDK client matching these settings
+     */
+    static HttpClient getHttpClient(HttpConfiguration configuration) {
+        List<Object> settings = Arrays.asList(
+                configuration.get(HttpConfiguration.CONNECT_TIMEOUT),
+                configuration.get(HttpConfiguration.PROXY_HOSTNAME),
+                configuration.get(HttpConfiguration.PROXY_PORT));
+
+        return CLIENTS.computeIfAbsent(settings, Http2Transport::createHttpClient);
+    }
+
+    /**
+     * Drops the process-wide clients, the JDK client has no close method: its
+     * resources are released once the transports using it are unreachable.
+     */
+    static void releaseAll() {
+        CLIENTS.clear();
+    }
+
+    private static HttpClient createHttpClient(List<Object> settings) {
+
+        HttpClient.Builder builder = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2);
+
+        Long connectTimeout = (Long) settings.get(0);
+        if (connectTimeout != null) {
+            builder.connectTimeout(Duration.ofMillis(connectTimeout));
+        }
+
+        String proxyHostname = (String) settings.get(1);
+        if (proxyHostname != null) {
+            Integer port = (Integer) settings.get(2);
+            if (port == null || port <= 0) {
+                port = HttpConfiguration.DEFAULT_HTTP_PROXY_PORT;
+            }
+            builder.proxy(ProxySelector.of(new InetSocketAddress(proxyHostname, port)));
+        }
+
+        log.debug("HTTP/2 client created for " + settings);
+
+        return builder.build();
+    }
+
+    private HttpRequest createHttpRequest(URI uri, Map<String, String> headers, GraphQLRequestEntity entity) throws IOException {
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri)
+                .header("Content-Type", entity.getContentType().getValue());
+
+        Long readTimeout = (Long) configuration.get(HttpConfiguration.READ_TIMEOUT);
+        if (readTimeout != null) {
+            builder.timeout(Duration.ofMillis(readTimeout));
+        }
+
+        if (!Boolean.FALSE.equals(configuration.get(HttpConfiguration.RESPONSE_COMPRESSION))) {
+            builder.header("Accept-Encoding", "gzip, deflate");
+        }
+
+        // Set the HTTP headers
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                if (RESTRICTED_HEADERS.contains(header.getKey())) {
+                    log.debug("Header ignored by the HTTP/2 transport: " + header.getKey());
+                } else {
+                    builder.header(header.getKey(), header.getValue());
+                }
+            }
+        }
+
+        // The body is sent in DATA frames of a known length
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        Integer threshold = (Integer) configuration.get(HttpConfiguration.REQUEST_COMPRESSION_THRESHOLD);
+        if (threshold == null) {
+            entity.writeTo(body);
+        } else {
+            HttpEntity buffered = entity.buffer(threshold);
+            if (buffered.getContentEncoding() != null) {
+                builder.header("Content-Encoding", buffered.getContentEncoding().getValue());
+            }
+            buffered.writeTo(body);
+        }
+
+        return builder.POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray())).build();
+    }
+
+    @Override
+    public HttpExchange execute(URI uri, Map<String, String> headers, GraphQLRequestEntity entity, InvocationMetrics metrics) throws IOException {
+        try {
+            HttpRequest httpRequest = createHttpRequest(uri, headers, entity);
+            if (metrics != null) {
+                metrics.requested();
+            }
+            java.net.http.HttpResponse<InputStream> serverResponse = httpClient.send(httpRequest, java.net.http.HttpResponse.BodyHandlers.ofInputStream());
+            if (metrics != null) {
+                metrics.firstByte();
+            }
+            return new Exchange(serverResponse);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + uri);
+        }
+    }
+
+    @Override
+    public CompletableFuture<HttpExchange> executeAsync(URI uri, Map<String, String> headers, GraphQLRequestEntity entity, InvocationMetrics metrics) {
+
+        CompletableFuture<HttpExchange> received = new CompletableFuture<>();
+
+        HttpRequest httpRequest;
+        try {
+            httpRequest = createHttpRequest(uri, headers, entity);
+        } catch (IOException ex) {
+            received.completeExceptionally(new HttpInvocationException(ex));
+            return received;
+        }
+
+        if (metrics != null) {
+            metrics.requested();
+        }
+        CompletableFuture<java.net.http.HttpResponse<InputStream>> sent = httpClient.sendAsync(httpRequest, java.net.http.HttpResponse.BodyHandlers.ofInputStream());
+
+        sent.whenComplete((serverResponse, ex) -> {
+            if (ex != null) {
+                received.completeExceptionally(new HttpInvocationException(ex instanceof CompletionException ? ex.getCause() : ex));
+            } else {
+                if (metrics != null) {
+                    metrics.firstByte();
+                }
+                Exchange exchange = new Exchange(serverResponse);
+                if (!received.complete(exchange)) {
+                    exchange.close(); // Cancelled meanwhile
+                }
+            }
+        });
+
+        received.whenComplete((r, ex) -> {
+            if (received.isCancelled()) {
+                sent.cancel(true);
+            }
+        });
+
+        return received;
+    }
+
+    @Override
+    public String toString() {
+        return "Http2Transport{" + "httpClient=" + httpClient + '}';
+    }
+
+    private static final class Exchange extends HttpExchange {
+
+        private final java.net.http.HttpResponse<InputStream> serverResponse;
+
+        private Exchange(java.net.http.HttpResponse<InputStream> serverResponse) {
+            this.serverResponse = serverResponse;
+        }
+
+        @Override
+        protected int getStatusCode() {
+            return serverResponse.statusCode();
+        }
+
+        @Override
+        protected String getHeader(String name) {
+            return serverResponse.headers().firstValue(name).orElse(null);
+        }
+
+        @Override
+        protected InputStream getBody() {
+            return serverResponse.body();
+        }
+
+        @Override
+        HttpResponse createHttpResponse() {
+            HttpResponse httpResponse = new HttpResponse();
+
+            serverResponse.headers().map().forEach((name, values) -> values.forEach(value -> httpResponse.header(name, value)));
+
+            return httpResponse;
+        }
+
+        @Override
+        void release() {
+            // An HTTP/1.1 connection can only be reused once its body is fully read
+            try (InputStream body = serverResponse.body()) {
+                body.transferTo(OutputStream.nullOutputStream());
+            } catch (IOException ex) {
+                log.debug("Error while releasing the HTTP response", ex);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                serverResponse.body().close();
+            } catch (IOException ex) {
+                log.debug("Error while closing the HTTP response", ex);
+            }
+        }
+    }
+
+}
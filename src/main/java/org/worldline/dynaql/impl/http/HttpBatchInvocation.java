@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.json.JsonException;
+import javax.json.bind.JsonbConfig;
+import javax.json.stream.JsonParser;
+import org.apache.http.client.HttpResponseException;
+import org.slf4j.LoggerFactory;
+import org.worldline.dynaql.api.GraphQLRequest;
+import org.worldline.dynaql.impl.DynaQLRequest;
+import org.worldline.dynaql.impl.DynaQLResponse;
+import org.worldline.dynaql.impl.JsonResponseParser;
+import static org.worldline.dynaql.impl.http.HttpConfiguration.CLIENT_TRANSPORT;
+
+/**
+ * Sends several GraphQL requests in a single HTTP round trip.
+ *
+ * The requests are posted as a JSON array and the server is expected to
+ * answer with an array of responses, in the same order. When it clearly
+ * rejects batching, with a 400, 404, 405 or 415 status or a single JSON object,
+ * the requests are sent in parallel, one per HTTP exchange, provided they are
+ * all idempotent. The endpoint is remembered for 5 minutes, the batches sent
+ * in between go there one request at a time directly.
+ *
+ * @author jefrajames
+ */
+public class HttpBatchInvocation {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(HttpBatchInvocation.class);
+
+    private static final long UNSUPPORTED_DURATION = TimeUnit.MINUTES.toNanos(5);
+
+    // The endpoints known to reject batching, with the time until which they are
+    private static final ConcurrentMap<URI, Long> UNSUPPORTED = new ConcurrentHashMap<>();
+
+    private final HttpConfiguration configuration;
+    private final URI uri;
+    private final List<GraphQLRequest> graphqlRequests;
+    private final Map<String, String> headers;
+
+    protected HttpBatchInvocation(HttpConfiguration configuration, URI uri, List<GraphQLRequest> requests, Map<String, String> headers) {
+        this.configuration = configuration;
+        this.uri = uri;
+        this.graphqlRequests = requests;
+        this.headers = headers;
+    }
+
+    /**
+     * @return one response per request, in the order of the requests
+     */
+    public List<HttpResponse> invoke() {
+
+        if (graphqlRequests.size() == 1 || isUnsupported()) {
+            return invokeEach();
+        }
+
+        List<HttpResponse> responses = invokeBatch();
+        if (responses != null) {
+            return responses;
+        }
+
+        UNSUPPORTED.put(uri, System.nanoTime() + UNSUPPORTED_DURATION);
+        if (!isIdempotent()) {
+            throw new HttpInvocationException("Batching rejected by " + uri + ", the mutations are not sent again");
+        }
+        log.info("Batching rejected by " + uri + ", falling back to single requests");
+        return invokeEach();
+    }
+
+    private boolean isUnsupported() {
+        Long until = UNSUPPORTED.get(uri);
+        if (until == null) {
+            return false;
+        }
+        if (System.nanoTime() - until < 0) {
+            return true;
+        }
+        UNSUPPORTED.remove(uri, until);
+        return false;
+    }
+
+    private boolean isIdempotent() {
+        if (Boolean.TRUE.equals(configuration.get(HttpConfiguration.IDEMPOTENT))) {
+            return true;
+        }
+        for (GraphQLRequest graphqlRequest : graphqlRequests) {
+            if (!(graphqlRequest instanceof DynaQLRequest) || !((DynaQLRequest) graphqlRequest).isQuery()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Returns null if the server has rejected the batch without running it
+    private List<HttpResponse> invokeBatch() {
+
+        log.debug("Sending a batch of " + graphqlRequests.size() + " GraphQL requests");
+
+        HttpTransport transport = (HttpTransport) configuration.get(CLIENT_TRANSPORT);
+
+        HttpExchange exchange;
+        try {
+            exchange = transport.execute(uri, headers, new GraphQLRequestEntity(graphqlRequests));
+        } catch (IOException ex) {
+            throw new HttpInvocationException(ex);
+        }
+
+        List<DynaQLResponse> graphQLResponses;
+        try (JsonParser parser = JsonResponseParser.createParser(exchange.getContent())) {
+            graphQLResponses = JsonResponseParser.parseBatch(parser);
+        } catch (HttpResponseException ex) {
+            if (isRejection(ex.getStatusCode())) {
+                log.debug("Batch rejected", ex);
+                return null;
+            }
+            throw new HttpInvocationException(ex);
+        } catch (IOException | JsonException ex) {
+            throw new HttpInvocationException(ex);
+        } finally {
+            exchange.release();
+        }
+
+        if (graphQLResponses == null) {
+            log.debug("Batch answered with a single response");
+            return null;
+        }
+
+        // The operations may have run: the requests are not sent again
+        if (graphQLResponses.size() != graphqlRequests.size()) {
+            throw new HttpInvocationException("Batch response size mismatch: " + graphQLResponses.size()
+                    + " responses to " + graphqlRequests.size() + " requests");
+        }
+
+        JsonbConfig jsonbConfig = (JsonbConfig) configuration.get(HttpConfiguration.JSONB_CONFIG);
+        List<HttpResponse> responses = new ArrayList<>(graphQLResponses.size());
+        for (DynaQLResponse graphQLResponse : graphQLResponses) {
+            graphQLResponse.setJsonbConfig(jsonbConfig);
+            HttpResponse httpResponse = exchange.createHttpResponse();
+            httpResponse.setGraphQLResponse(graphQLResponse);
+            responses.add(httpResponse);
+        }
+
+        return responses;
+    }
+
+    // A 5xx status or an authentication failure says nothing about batching
+    private static boolean isRejection(int statusCode) {
+        return statusCode == 400 || statusCode == 404 || statusCode == 405 || statusCode == 415;
+    }
+
+    private List<HttpResponse> invokeEach() {
+
+        List<CompletableFuture<HttpResponse>> futures = new ArrayList<>(graphqlRequests.size());
+        for (GraphQLRequest graphqlRequest : graphqlRequests) {
+            futures.add(new HttpInvocation(configuration, uri, graphqlRequest, headers).invokeAsync());
+        }
+
+        List<HttpResponse> responses = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<HttpResponse> future : futures) {
+                responses.add(future.join());
+            }
+        } catch (CompletionException ex) {
+            futures.forEach(f -> f.cancel(true));
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new HttpInvocationException(ex.getCause());
+        }
+
+        return responses;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpBatchInvocation{" + "configuration=" + configuration + ", uri=" + uri + ", graphqlRequests=" + graphqlRequests + ", headers=" + headers + '}';
+    }
+
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A long-lived, thread-safe HttpClient backed by a connection pool.
+ *
+ * Pools are shared for the whole process: all the invocations built with the
+ * same pool settings reuse the same connections.
+ *
+ * @author jefrajames
+ */
+public class HttpClientPool implements Closeable {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(HttpClientPool.class);
+
+    private static final ConcurrentMap<List<Object>, HttpClientPool> POOLS = new ConcurrentHashMap<>();
+
+    private final List<Object> settings;
+    private final long idleTimeout;
+    private final ConnectionKeepAliveStrategy keepAliveStrategy;
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+
+    // Non-blocking client, lazily started on the first asynchronous invocation
+    private PoolingNHttpClientConnectionManager asyncConnectionManager;
+    private CloseableHttpAsyncClient httpAsyncClient;
+    private ScheduledExecutorService asyncEvictor;
+
+    private volatile boolean closed;
+
+    private HttpClientPool(List<Object> settings) {
+        this.settings = settings;
+
+        int maxTotal = (Integer) settings.get(0);
+        int maxPerRoute = (Integer) settings.get(1);
+        long keepAlive = (Long) settings.get(2);
+        this.idleTimeout = (Long) settings.get(3);
+
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+
+        // Honor the server Keep-Alive header, fall back to the configured duration
+        keepAliveStrategy = (response, context) -> {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration > 0 ? duration : keepAlive;
+        };
+
+        // Compression is negotiated and decoded per invocation, the same way for both clients
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .disableContentCompression()
+                .setRequestExecutor(new MeasuredRequestExecutor())
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS)
+                .build();
+
+        log.debug("Connection pool created: maxTotal=" + maxTotal + ", maxPerRoute=" + maxPerRoute
+                + ", keepAlive=" + keepAlive + ", idleTimeout=" + idleTimeout);
+    }
+
+    // Any Number is accepted: 30000 as well as 30000L
+    private static Number value(HttpConfiguration configuration, String key, Number defaultValue) {
+        Number value = (Number) configuration.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * @param configuration the configuration holding the pool settings
+     * @return the process-wide pool matching these settings, a closed one is replaced
+     */
+    public static HttpClientPool of(HttpConfiguration configuration) {
+        List<Object> settings = Arrays.asList(
+                value(configuration, HttpConfiguration.POOL_MAX_TOTAL, HttpConfiguration.DEFAULT_POOL_MAX_TOTAL).intValue(),
+                value(configuration, HttpConfiguration.POOL_MAX_PER_ROUTE, HttpConfiguration.DEFAULT_POOL_MAX_PER_ROUTE).intValue(),
+                value(configuration, HttpConfiguration.POOL_KEEP_ALIVE, HttpConfiguration.DEFAULT_POOL_KEEP_ALIVE).longValue(),
+                value(configuration, HttpConfiguration.POOL_IDLE_TIMEOUT, HttpConfiguration.DEFAULT_POOL_IDLE_TIMEOUT).longValue());
+
+        return POOLS.compute(settings, (key, pool) -> pool == null || pool.closed ? new HttpClientPool(key) : pool);
+    }
+
+    /**
+     * Closes all the pools and the subscription connections, and releases the
+     * HTTP/2 clients, typically on application shutdown. The invocations
+     * built earlier open new ones if used again.
+     */
+    public static void closeAll() {
+        POOLS.values().forEach(HttpClientPool::close);
+        Http2Transport.releaseAll();
+        SubscriptionConnection.closeAll();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * The asynchronous client shares the limits of the blocking one but has
+     * its own connections, handled by a small set of I/O dispatch threads.
+     *
+     * @return the non-blocking client of this pool, started if needed
+     */
+    public synchronized CloseableHttpAsyncClient getHttpAsyncClient() {
+        if (httpAsyncClient == null) {
+            try {
+                asyncConnectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(IOReactorConfig.DEFAULT));
+            } catch (IOReactorException ex) {
+                throw new HttpInvocationException("Unable to start the I/O reactor", ex);
+            }
+            asyncConnectionManager.setMaxTotal(connectionManager.getMaxTotal());
+            asyncConnectionManager.setDefaultMaxPerRoute(connectionManager.getDefaultMaxPerRoute());
+
+            httpAsyncClient = HttpAsyncClients.custom()
+                    .setConnectionManager(asyncConnectionManager)
+                    .setKeepAliveStrategy(keepAliveStrategy)
+                    .addInterceptorLast((HttpResponseInterceptor) (response, context) -> {
+                        InvocationMetrics metrics = InvocationMetrics.of(context);
+                        if (metrics != null) {
+                            metrics.firstByte();
+                        }
+                    })
+                    .build();
+            httpAsyncClient.start();
+            startAsyncEvictor();
+
+            log.debug("Asynchronous client started for " + settings);
+        }
+        return httpAsyncClient;
+    }
+
+    // The async builder has no eviction option: expired and idle connections are closed the same way as the blocking ones
+    private void startAsyncEvictor() {
+        long period = idleTimeout > 0 ? idleTimeout : 10_000L;
+        asyncEvictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dynaql-async-connection-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        PoolingNHttpClientConnectionManager manager = asyncConnectionManager;
+        asyncEvictor.scheduleWithFixedDelay(() -> {
+            manager.closeExpiredConnections();
+            if (idleTimeout > 0) {
+                manager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public PoolStats getStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * @return the statistics of the asynchronous connections, null if not started
+     */
+    public synchronized PoolStats getAsyncStats() {
+        return asyncConnectionManager != null ? asyncConnectionManager.getTotalStats() : null;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        POOLS.remove(settings, this);
+        try {
+            httpClient.close();
+            synchronized (this) {
+                if (httpAsyncClient != null) {
+                    asyncEvictor.shutdownNow();
+                    httpAsyncClient.close();
+                }
+            }
+        } catch (IOException ex) {
+            log.warn("Error while closing the connection pool", ex);
+        }
+    }
+
+    // Runs once the connection is leased: measures the exchanges having InvocationMetrics
+    private static final class MeasuredRequestExecutor extends HttpRequestExecutor {
+
+        @Override
+        protected org.apache.http.HttpResponse doSendRequest(HttpRequest request, HttpClientConnection conn, HttpContext context) throws IOException, HttpException {
+            InvocationMetrics metrics = InvocationMetrics.of(context);
+            if (metrics == null) {
+                return super.doSendRequest(request, conn, context);
+            }
+            metrics.connected();
+            org.apache.http.HttpResponse response = super.doSendRequest(request, conn, context);
+            metrics.sent();
+            return response;
+        }
+
+        @Override
+        protected org.apache.http.HttpResponse doReceiveResponse(HttpRequest request, HttpClientConnection conn, HttpContext context) throws HttpException, IOException {
+            org.apache.http.HttpResponse response = super.doReceiveResponse(request, conn, context);
+            InvocationMetrics metrics = InvocationMetrics.of(context);
+            if (metrics != null) {
+                metrics.firstByte();
+            }
+            return response;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HttpClientPool{" + "settings=" + settings + ", stats=" + getStats() + ", asyncStats=" + getAsyncStats() + '}';
+    }
+
+}
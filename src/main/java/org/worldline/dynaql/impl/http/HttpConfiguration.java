@@ -39,6 +39,91 @@ public class HttpConfiguration {
     // The time waiting a connection from the pool/manager (specific to HTTP client)
     public static final String CONNECTION_MANAGER_TIMEOUT="http.connection.manager.timeout";
     
+    // The maximum number of pooled connections, all routes included
+    public static final String POOL_MAX_TOTAL="http.pool.max.total";
+    
+    // The maximum number of pooled connections per route
+    public static final String POOL_MAX_PER_ROUTE="http.pool.max.per.route";
+    
+    // How long a connection is kept alive when the server does not send a Keep-Alive header
+    public static final String POOL_KEEP_ALIVE="http.pool.keep.alive";
+    
+    // The time after which an idle pooled connection is evicted
+    public static final String POOL_IDLE_TIMEOUT="http.pool.idle.timeout";
+    
+    // The HTTP protocol, TRANSPORT_HTTP1 (default) or TRANSPORT_HTTP2
+    public static final String TRANSPORT="http.transport";
+    
+    // HTTP/1.1 over a pool of Apache clients, one connection per in-flight request
+    public static final String TRANSPORT_HTTP1="http1";
+    
+    // HTTP/2 over the JDK client, requests multiplexed on shared connections (h2 with TLS, h2c without)
+    public static final String TRANSPORT_HTTP2="http2";
+    
+    protected static final String CLIENT_TRANSPORT="http.client.transport";
+    
+    // The Executor parsing asynchronous responses, the common ForkJoinPool by default
+    public static final String ASYNC_EXECUTOR="http.async.executor";
+    
+    // The JsonbConfig used to map the response data
+    public static final String JSONB_CONFIG="json.bind.config";
+    
+    // Shortcuts for the JSON-B date format and property naming strategy (a name or a PropertyNamingStrategy)
+    public static final String JSONB_DATE_FORMAT="json.bind.date.format";
+    public static final String JSONB_NAMING_STRATEGY="json.bind.naming.strategy";
+    
+    // An InvocationListener receiving the measures of each invocation, none by default
+    public static final String INVOCATION_LISTENER="http.invocation.listener";
+    
+    // A WireTap capturing sampled requests and responses, none by default
+    public static final String WIRE_TAP="http.wire.tap";
+    
+    // A RetryPolicy retrying the failed requests, none by default
+    public static final String RETRY_POLICY="http.retry.policy";
+    
+    // A CircuitBreaker failing fast the requests to unhealthy endpoints, none by default
+    public static final String CIRCUIT_BREAKER="http.circuit.breaker";
+    
+    // A LoadBalancer spreading the requests over several endpoints, none by default
+    public static final String LOAD_BALANCER="http.load.balancer";
+    
+    // A HedgingPolicy sending slow requests again, none by default
+    public static final String HEDGING_POLICY="http.hedging.policy";
+    
+    // The mutation of the invocation can be retried once received by the server (Boolean), queries always can
+    public static final String IDEMPOTENT="graphql.idempotent";
+    
+    // Send the hash of the query instead of its text, the Automatic Persisted Queries protocol (Boolean)
+    public static final String PERSISTED_QUERIES="graphql.persisted.queries";
+    
+    // A ResponseCache put in front of invoke(), none by default
+    public static final String RESPONSE_CACHE="graphql.response.cache";
+    
+    // A RequestCoalescer sharing one HTTP call between identical in-flight queries, none by default
+    public static final String REQUEST_COALESCER="graphql.request.coalescer";
+    
+    // Request bodies of at least this size in bytes are sent gzip-compressed (Integer), never by default
+    public static final String REQUEST_COMPRESSION_THRESHOLD="http.compression.request.threshold";
+    
+    // Ask for gzip or deflate compressed responses (Boolean), true by default
+    public static final String RESPONSE_COMPRESSION="http.compression.response";
+    
+    // The payload of the graphql-transport-ws connection_init message (JsonObject), none by default
+    public static final String SUBSCRIPTION_INIT_PAYLOAD="graphql.subscription.init.payload";
+    
+    // The maximum number of events buffered per subscription until requested (Integer)
+    public static final String SUBSCRIPTION_BUFFER_SIZE="graphql.subscription.buffer.size";
+    
+    // What to do when a subscription buffer is full (an OverflowPolicy or its name), ERROR by default
+    public static final String SUBSCRIPTION_OVERFLOW="graphql.subscription.overflow";
+    
+    public static final int DEFAULT_SUBSCRIPTION_BUFFER_SIZE = 256;
+    
+    public static final int DEFAULT_POOL_MAX_TOTAL = 200;
+    public static final int DEFAULT_POOL_MAX_PER_ROUTE = 50;
+    public static final long DEFAULT_POOL_KEEP_ALIVE = 30_000L;
+    public static final long DEFAULT_POOL_IDLE_TIMEOUT = 60_000L;
+    
     private final Properties properties = new Properties();
     
     protected HttpConfiguration() {}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A response received by an HttpTransport, whose body has not been read yet.
+ *
+ * Once the body is read, release gives the connection back for reuse. Closing
+ * the exchange instead discards whatever has not been read.
+ *
+ * @author jefrajames
+ */
+abstract class HttpExchange implements Closeable {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(HttpExchange.class);
+
+    protected abstract int getStatusCode();
+
+    /**
+     * @return the value of the header, null if absent
+     */
+    protected abstract String getHeader(String name);
+
+    /**
+     * @return the body as received, possibly compressed
+     */
+    protected abstract InputStream getBody() throws IOException;
+
+    /**
+     * @return a response holding the headers of the exchange
+     */
+    abstract HttpResponse createHttpResponse();
+
+    /**
+     * Consumes the rest of the body, so that the connection can be reused.
+     */
+    abstract void release();
+
+    @Override
+    public abstract void close();
+
+    /**
+     * @return the decoded body
+     * @throws HttpResponseException if the status code is not 200
+     */
+    InputStream getContent() throws IOException {
+        return getContent(null);
+    }
+
+    /**
+     * @param metrics counts the bytes of the body when not null
+     * @return the decoded body
+     * @throws HttpResponseException if the status code is not 200
+     */
+    InputStream getContent(InvocationMetrics metrics) throws IOException {
+        InputStream body = getBody();
+        if (metrics != null) {
+            body = metrics.countResponseBytes(body);
+        }
+
+        int statusCode = getStatusCode();
+        if (statusCode != 200) {
+            // The body is only materialized here, for diagnostic purpose
+            String contentString = "";
+            try {
+                contentString = IOUtils.toString(decode(body), "UTF-8");
+            } catch (IOException ex) {
+                // The status is what matters, not a body wrongly encoded
+                log.debug("Unable to read the body of the HTTP response " + statusCode, ex);
+            }
+            log.warn("HTTP response code NOK " + statusCode);
+            throw new HttpResponseException(statusCode, "The server responded with" + contentString);
+        }
+
+        return decode(body);
+    }
+
+    // The content is decompressed while being read by the parser
+    private InputStream decode(InputStream body) throws IOException {
+
+        String contentEncoding = getHeader("Content-Encoding");
+        if (contentEncoding == null) {
+            return body;
+        }
+
+        // An empty body is returned as is, whatever its declared encoding
+        PushbackInputStream contentStream = new PushbackInputStream(body, 1);
+        int first = contentStream.read();
+        if (first == -1) {
+            return contentStream;
+        }
+        contentStream.unread(first);
+
+        String encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+        switch (encoding) {
+            case "gzip":
+            case "x-gzip":
+                return new GZIPInputStream(contentStream);
+            case "deflate":
+                return new DeflateInputStream(contentStream);
+            case "identity":
+                return contentStream;
+            default:
+                throw new IOException("Unsupported Content-Encoding: " + encoding);
+        }
+    }
+
+}
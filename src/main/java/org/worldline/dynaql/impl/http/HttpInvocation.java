@@ -15,36 +15,40 @@
  */
 package org.worldline.dynaql.impl.http;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringReader;
 import java.net.URI;
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import javax.json.Json;
-import javax.json.JsonArray;
-import javax.json.JsonObject;
-import javax.json.JsonReader;
-import javax.json.bind.Jsonb;
-import javax.json.bind.JsonbBuilder;
-import org.apache.commons.io.IOUtils;
-import org.apache.http.Header;
-import org.apache.http.client.HttpResponseException;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.ContentType;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.json.JsonException;
+import javax.json.bind.JsonbConfig;
+import javax.json.stream.JsonParser;
+import org.apache.http.pool.PoolStats;
 import org.slf4j.LoggerFactory;
 import org.worldline.dynaql.impl.DynaQLRequest;
 import org.worldline.dynaql.impl.DynaQLResponse;
-import org.worldline.dynaql.impl.DynaQLResponse.DynaQLError;
+import org.worldline.dynaql.impl.DynaQLStreamingResponse;
+import org.worldline.dynaql.impl.JsonResponseParser;
+import org.worldline.dynaql.impl.PersistedQueries;
+import org.worldline.dynaql.impl.WireTap;
 import org.worldline.dynaql.api.GraphQLRequest;
-import org.worldline.dynaql.api.GraphQLResponse.GraphQLError;
-import static org.worldline.dynaql.impl.http.HttpConfiguration.REQUEST_CONFIG;
+import org.worldline.dynaql.api.GraphQLResponse;
+import static org.worldline.dynaql.impl.http.HttpConfiguration.CLIENT_TRANSPORT;
 
 /**
  *
@@ -59,7 +63,11 @@ public class HttpInvocation {
 
     private static final org.slf4j.Logger log = LoggerFactory.getLogger(HttpInvocation.class);
 
-    private static final int MAX_LOG_LENGTH = 128;
+    // The current incremental delivery format first, then a plain response
+    private static final String INCREMENTAL_ACCEPT = "multipart/mixed;deferSpec=20220824, multipart/mixed, application/json";
+
+    // The endpoints known not to support persisted queries
+    private static final Set<URI> PERSISTED_QUERIES_UNSUPPORTED = ConcurrentHashMap.newKeySet();
 
     protected HttpInvocation(HttpConfiguration configuration, URI uri, GraphQLRequest request, Map<String, String> headers) {
         this.configuration = configuration;
@@ -68,94 +76,683 @@ public class HttpInvocation {
         this.headers = headers;
     }  
 
-    private String postHttp(StringEntity stringEntity, HttpResponse httpResponse) throws IOException {
+    // Automatic Persisted Queries are used if enabled, until the server says it does not support them
+    private boolean usePersistedQuery() {
+        return graphqlRequest instanceof DynaQLRequest
+                && Boolean.TRUE.equals(configuration.get(HttpConfiguration.PERSISTED_QUERIES))
+                && !PERSISTED_QUERIES_UNSUPPORTED.contains(uri);
+    }
 
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
+    private GraphQLRequestEntity createEntity() {
+        return new GraphQLRequestEntity(graphqlRequest);
+    }
 
-            HttpPost httpPost = new HttpPost(uri);
+    private GraphQLRequestEntity createPersistedEntity(boolean withQuery) {
+        return new GraphQLRequestEntity((DynaQLRequest) graphqlRequest, withQuery);
+    }
 
-            httpPost.setConfig((RequestConfig)configuration.get(REQUEST_CONFIG));
+    // Returns the body to send after a hash-only one, null if the response is final
+    private GraphQLRequestEntity persistedQueryRetry(HttpResponse httpResponse) {
+        GraphQLResponse graphQLResponse = httpResponse.getGraphQLResponse();
 
-            // Set the HTTP headers
-            if (headers != null) {
-                for (Map.Entry<String, String> header : headers.entrySet()) {
-                    httpPost.addHeader(header.getKey(), header.getValue());
-                }
+        if (PersistedQueries.isNotFound(graphQLResponse)) {
+            log.debug("Persisted query not found, sending its text");
+            return createPersistedEntity(true);
+        }
+
+        if (PersistedQueries.isNotSupported(graphQLResponse)) {
+            log.info("Persisted queries not supported by " + uri);
+            PERSISTED_QUERIES_UNSUPPORTED.add(uri);
+            return createEntity();
+        }
+
+        return null;
+    }
+
+    private HttpTransport transport() {
+
+        if (log.isDebugEnabled()) {
+            log.debug("Sending GraphQL request: " + graphqlRequest.toJson());
+        }
+
+        return (HttpTransport) configuration.get(CLIENT_TRANSPORT);
+    }
+
+    private InvocationListener listener() {
+        return (InvocationListener) configuration.get(HttpConfiguration.INVOCATION_LISTENER);
+    }
+
+    private String operationName() {
+        return graphqlRequest instanceof DynaQLRequest ? ((DynaQLRequest) graphqlRequest).getOperationName() : null;
+    }
+
+    // A failing listener must not fail the invocation
+    private static void fireInvocation(InvocationListener listener, InvocationMetrics metrics) {
+        if (!metrics.completed()) {
+            return; // Already notified
+        }
+        try {
+            listener.onInvocation(metrics);
+        } catch (RuntimeException ex) {
+            log.warn("Error while notifying the InvocationListener", ex);
+        }
+    }
+
+    // Returns the capture of this exchange if sampled by the configured WireTap, null otherwise
+    private WireTap.Capture capture() {
+        WireTap wireTap = (WireTap) configuration.get(HttpConfiguration.WIRE_TAP);
+        return wireTap != null && graphqlRequest instanceof DynaQLRequest ? wireTap.sample((DynaQLRequest) graphqlRequest, uri) : null;
+    }
+
+    /**
+     * @param metrics the measures to fill in, null if not measured
+     * @param capture the capture of the exchange, null if not sampled
+     */
+    private HttpResponse readResponse(HttpExchange exchange, InvocationMetrics metrics, WireTap.Capture capture) {
+
+        HttpResponse httpResponse = exchange.createHttpResponse();
+
+        try {
+            InputStream contentStream = exchange.getContent(metrics);
+            if (capture != null) {
+                contentStream = capture.tapResponse(contentStream);
+            }
+
+            // data and errors are parsed straight from the socket
+            long start = metrics != null ? System.nanoTime() : 0;
+            DynaQLResponse graphQLResponse = JsonResponseParser.parse(contentStream);
+            graphQLResponse.setJsonbConfig((JsonbConfig) configuration.get(HttpConfiguration.JSONB_CONFIG));
+            httpResponse.setGraphQLResponse(graphQLResponse);
+
+            if (metrics != null) {
+                metrics.parsed(System.nanoTime() - start, graphQLResponse);
+                InvocationListener listener = listener();
+                String operationName = metrics.getOperationName();
+                graphQLResponse.setMappingTimer(nanos -> listener.onMapping(operationName, nanos));
             }
 
-            httpPost.setEntity(stringEntity);
+            log.debug("Received GraphQL response");
 
-            try (CloseableHttpResponse serverResponse = httpClient.execute(httpPost)) {
+            return httpResponse;
 
-                Header[] headers = serverResponse.getAllHeaders();
-                for (int i = 0; i < headers.length; i++) {
-                    httpResponse.header(headers[i].getName(), headers[i].getValue());
-                }
+        } catch (IOException ex) {
+            throw new HttpInvocationException(ex);
+        } catch (JsonException ex) {
+            throw new HttpInvocationException("Invalid GraphQL response", ex);
+        } finally {
+            exchange.release();
+            if (capture != null) {
+                capture.complete();
+            }
+        }
+    }
+
+    public HttpResponse invoke() {
+
+        ResponseCache cache = (ResponseCache) configuration.get(HttpConfiguration.RESPONSE_CACHE);
+        if (cache != null && graphqlRequest instanceof DynaQLRequest) {
+            return cache.get(uri, headers, (DynaQLRequest) graphqlRequest, this::sendCoalesced, this::invokeAsync);
+        }
+
+        return sendCoalesced();
+    }
+
+    // Returns the coalescer if this invocation can share its response with identical ones
+    private RequestCoalescer coalescer() {
+        RequestCoalescer coalescer = (RequestCoalescer) configuration.get(HttpConfiguration.REQUEST_COALESCER);
+        if (coalescer != null && graphqlRequest instanceof DynaQLRequest
+                && ((DynaQLRequest) graphqlRequest).isQuery()) {
+            return coalescer;
+        }
+        return null;
+    }
 
-                InputStream contentStream = serverResponse.getEntity().getContent();
+    private HttpResponse sendCoalesced() {
+        RequestCoalescer coalescer = coalescer();
+        if (coalescer != null) {
+            return coalescer.execute(new RequestKey(uri, headers, (DynaQLRequest) graphqlRequest), this::send);
+        }
+        return send();
+    }
 
-                String contentString = IOUtils.toString(contentStream, "UTF-8");
-                
-                if (serverResponse.getStatusLine().getStatusCode() != 200) {
-                    log.warn("HTTP response code NOK " + serverResponse.getStatusLine().getStatusCode());
-                    throw new HttpResponseException(serverResponse.getStatusLine().getStatusCode(), "The server responded with" + contentString);
+    private HttpResponse send() {
+
+        if (!usePersistedQuery()) {
+            return execute(createEntity());
+        }
+
+        HttpResponse httpResponse = execute(createPersistedEntity(false));
+
+        GraphQLRequestEntity retry = persistedQueryRetry(httpResponse);
+        return retry != null ? execute(retry) : httpResponse;
+    }
+
+    // Queries can always be sent again, mutations only if declared idempotent
+    private boolean isIdempotent() {
+        return Boolean.TRUE.equals(configuration.get(HttpConfiguration.IDEMPOTENT))
+                || graphqlRequest instanceof DynaQLRequest && ((DynaQLRequest) graphqlRequest).isQuery();
+    }
+
+    // Sends the entity, again as long as the RetryPolicy allows it
+    private HttpResponse execute(GraphQLRequestEntity entity) {
+
+        RetryPolicy retryPolicy = (RetryPolicy) configuration.get(HttpConfiguration.RETRY_POLICY);
+        if (retryPolicy == null) {
+            return executeOnce(entity);
+        }
+
+        retryPolicy.deposit();
+        for (int attempt = 1;; attempt++) {
+            try {
+                return executeOnce(entity);
+            } catch (HttpInvocationException ex) {
+                if (!retryPolicy.shouldRetry(ex, attempt, isIdempotent())) {
+                    throw ex;
                 }
-        
-                log.info("Received GraphQL response: " + (contentString.length() <= MAX_LOG_LENGTH ? contentString : contentString.substring(0, MAX_LOG_LENGTH) + " etc..."));
+                try {
+                    Thread.sleep(retryPolicy.backoff(attempt));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    // Only idempotent requests are hedged
+    private HedgingPolicy hedgingPolicy() {
+        HedgingPolicy hedgingPolicy = (HedgingPolicy) configuration.get(HttpConfiguration.HEDGING_POLICY);
+        return hedgingPolicy != null && isIdempotent() ? hedgingPolicy : null;
+    }
 
-                return contentString;
+    // Sends the entity once, hedged if the HedgingPolicy applies
+    private HttpResponse executeOnce(GraphQLRequestEntity entity) {
+        HedgingPolicy hedgingPolicy = hedgingPolicy();
+        return hedgingPolicy != null ? join(executeHedgedAsync(entity, hedgingPolicy)) : executeBalanced(entity);
+    }
+
+    // The outcome of the future, as the synchronous invocation returns it
+    private static HttpResponse join(CompletableFuture<HttpResponse> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new HttpInvocationException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
             }
+            throw new HttpInvocationException(ex.getCause());
+        }
+    }
 
+    // Sends the entity to the endpoint selected by the LoadBalancer
+    private HttpResponse executeBalanced(GraphQLRequestEntity entity) {
+
+        LoadBalancer balancer = (LoadBalancer) configuration.get(HttpConfiguration.LOAD_BALANCER);
+        if (balancer == null) {
+            return executeGuarded(entity, uri);
         }
 
+        LoadBalancer.Selection selection = balancer.select();
+        long start = System.nanoTime();
+        try {
+            HttpResponse httpResponse = executeGuarded(entity, selection.getUri());
+            balancer.release(selection, System.nanoTime() - start, null);
+            return httpResponse;
+        } catch (RuntimeException ex) {
+            balancer.release(selection, System.nanoTime() - start, ex);
+            throw ex;
+        }
     }
 
-    public HttpResponse invoke() {
+    // Sends the entity unless the CircuitBreaker is open
+    private HttpResponse executeGuarded(GraphQLRequestEntity entity, URI target) {
+
+        CircuitBreaker breaker = (CircuitBreaker) configuration.get(HttpConfiguration.CIRCUIT_BREAKER);
+        if (breaker == null) {
+            return exchange(entity, target);
+        }
+
+        CircuitBreaker.Permit permit = breaker.acquire(target);
+        try {
+            HttpResponse httpResponse = exchange(entity, target);
+            breaker.release(permit, null);
+            return httpResponse;
+        } catch (RuntimeException ex) {
+            breaker.release(permit, ex);
+            throw ex;
+        }
+    }
+
+    private HttpResponse exchange(GraphQLRequestEntity entity, URI target) {
+        WireTap.Capture capture = capture();
+        if (capture == null) {
+            return exchange(entity, target, null);
+        }
+        try {
+            return exchange(entity.tap(capture), target, capture);
+        } finally {
+            capture.complete(); // Also when no response is read
+        }
+    }
+
+    private HttpResponse exchange(GraphQLRequestEntity entity, URI target, WireTap.Capture capture) {
+
+        InvocationListener listener = listener();
+        if (listener == null) {
+            try {
+                return readResponse(transport().execute(target, headers, entity), null, capture);
+            } catch (IOException ex) {
+                throw new HttpInvocationException(ex);
+            }
+        }
+
+        InvocationMetrics metrics = new InvocationMetrics(operationName());
+        try {
+            return readResponse(transport().execute(target, headers, metrics.measure(entity), metrics), metrics, capture);
+        } catch (IOException ex) {
+            HttpInvocationException failure = new HttpInvocationException(ex);
+            metrics.failed(failure);
+            throw failure;
+        } catch (RuntimeException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            fireInvocation(listener, metrics);
+        }
+    }
+
+    /**
+     * Sends the request and returns as soon as the response headers are read.
+     *
+     * The body is decoded on demand by the DynaQLStreamingResponse: the
+     * elements of a list can be consumed while they are being downloaded. The
+     * returned response must be closed, closing it early discards the
+     * connection instead of downloading the rest of the body.
+     *
+     * @return a response holding a DynaQLStreamingResponse
+     */
+    public HttpResponse invokeStreaming() {
+
+        // Once streaming there is no retry: a persisted query is sent along with its text
+        GraphQLRequestEntity entity = usePersistedQuery() ? createPersistedEntity(true) : createEntity();
+
+        HttpExchange exchange = null;
+        try {
+            exchange = transport().execute(uri, headers, entity);
 
-        String jsonRequest = graphqlRequest.toJson();
-        log.info("Sending GraphQL request: " + jsonRequest);
+            HttpResponse httpResponse = exchange.createHttpResponse();
 
-        StringEntity stringEntity = new StringEntity(jsonRequest, ContentType.APPLICATION_JSON);
+            DynaQLStreamingResponse graphQLResponse = new DynaQLStreamingResponse(
+                    JsonResponseParser.createParser(exchange.getContent()), exchange);
+            graphQLResponse.setJsonbConfig((JsonbConfig) configuration.get(HttpConfiguration.JSONB_CONFIG));
+            httpResponse.setGraphQLResponse(graphQLResponse);
+            httpResponse.setResource(graphQLResponse);
 
-        HttpResponse httpResponse = new HttpResponse();
+            return httpResponse;
 
-        String responseBody;
+        } catch (IOException ex) {
+            closeQuietly(exchange);
+            throw new HttpInvocationException(ex);
+        } catch (JsonException ex) {
+            closeQuietly(exchange);
+            throw new HttpInvocationException("Invalid GraphQL response", ex);
+        } catch (RuntimeException ex) {
+            closeQuietly(exchange);
+            throw ex;
+        }
+    }
+
+    /**
+     * Sends a request using @defer or @stream, accepting an incremental
+     * multipart/mixed response.
+     *
+     * Each part is patched into the response as soon as it is received, and
+     * the listener notified with the response completed so far: the fast
+     * data can be used without waiting for the slow one. A server answering
+     * with a single JSON response notifies the listener once.
+     *
+     * @param listener notified on the calling thread, for each part
+     * @return the complete response
+     */
+    public HttpResponse invokeIncremental(IncrementalListener listener) {
+
+        Map<String, String> incrementalHeaders = new HashMap<>(headers);
+        incrementalHeaders.put("Accept", INCREMENTAL_ACCEPT);
+
+        HttpExchange exchange = null;
         try {
-            responseBody = postHttp(stringEntity, httpResponse);
+            exchange = transport().execute(uri, incrementalHeaders, createEntity());
+
+            HttpResponse httpResponse = exchange.createHttpResponse();
+            JsonbConfig jsonbConfig = (JsonbConfig) configuration.get(HttpConfiguration.JSONB_CONFIG);
+
+            String boundary = MultipartReader.getBoundary(exchange.getHeader("Content-Type"));
+            if (boundary == null) {
+                DynaQLResponse graphQLResponse = JsonResponseParser.parse(exchange.getContent());
+                graphQLResponse.setJsonbConfig(jsonbConfig);
+                httpResponse.setGraphQLResponse(graphQLResponse);
+                listener.onUpdate(graphQLResponse, false);
+                return httpResponse;
+            }
+
+            MultipartReader reader = new MultipartReader(exchange.getContent(), boundary);
+            IncrementalResponse incrementalResponse = new IncrementalResponse(jsonbConfig);
+
+            byte[] part;
+            while (incrementalResponse.hasNext() && (part = reader.nextPart()) != null) {
+                try (JsonParser parser = JsonResponseParser.createParser(new ByteArrayInputStream(part))) {
+                    if (incrementalResponse.apply(parser)) {
+                        listener.onUpdate(incrementalResponse.toResponse(), incrementalResponse.hasNext());
+                    }
+                }
+            }
+
+            httpResponse.setGraphQLResponse(incrementalResponse.toResponse());
+            return httpResponse;
+
         } catch (IOException ex) {
             throw new HttpInvocationException(ex);
+        } catch (JsonException ex) {
+            throw new HttpInvocationException("Invalid GraphQL response", ex);
+        } finally {
+            if (exchange != null) {
+                exchange.release();
+            }
         }
+    }
 
-        JsonReader jsonReader = Json.createReader(new StringReader(responseBody));
+    private static void closeQuietly(HttpExchange exchange) {
+        if (exchange != null) {
+            exchange.close();
+        }
+    }
 
-        JsonObject jsonResponse = jsonReader.readObject();
+    /**
+     * Sends the request without blocking the calling thread.
+     *
+     * The response body is parsed on the executor configured with
+     * HttpConfiguration.ASYNC_EXECUTOR, never on the I/O dispatch threads.
+     * Cancelling the returned future aborts the HTTP exchange, unless it is
+     * shared with identical requests by a RequestCoalescer.
+     *
+     * @return a future completed with the response, or with an HttpInvocationException
+     */
+    public CompletableFuture<HttpResponse> invokeAsync() {
+        RequestCoalescer coalescer = coalescer();
+        try {
+            if (coalescer != null) {
+                return coalescer.executeAsync(new RequestKey(uri, headers, (DynaQLRequest) graphqlRequest), this::sendAsync);
+            }
+            return sendAsync();
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
 
-        DynaQLResponse graphQLResponse = new DynaQLResponse();
-        httpResponse.setGraphQLResponse(graphQLResponse);
+    private CompletableFuture<HttpResponse> sendAsync() {
 
-        if (jsonResponse.containsKey("errors")) {
-            log.warn("GraphQL errors element detected");
-            JsonArray rawErrors = jsonResponse.getJsonArray("errors");
-            Jsonb jsonb = JsonbBuilder.create();
-            List<GraphQLError> errors = jsonb.fromJson(rawErrors.toString(), new ArrayList<DynaQLError>() {
-            }.getClass().getGenericSuperclass());
-            graphQLResponse.setErrors(errors);
-            try {
-                jsonb.close();
-            } catch (Exception ignore) {
-            } // Ugly!!!
+        if (!usePersistedQuery()) {
+            return executeAsync(createEntity());
         }
 
-        if (jsonResponse.containsKey("data")) {
-            if (!jsonResponse.isNull("data")) {
-                JsonObject data = jsonResponse.getJsonObject("data");
-                graphQLResponse.setData(data);
-            } else {
-                log.warn("GraphQL data element is null");
+        CompletableFuture<HttpResponse> first = executeAsync(createPersistedEntity(false));
+        AtomicReference<CompletableFuture<HttpResponse>> current = new AtomicReference<>(first);
+
+        CompletableFuture<HttpResponse> result = first.thenCompose(httpResponse -> {
+            GraphQLRequestEntity retry = persistedQueryRetry(httpResponse);
+            if (retry == null) {
+                return CompletableFuture.completedFuture(httpResponse);
             }
+            current.set(executeAsync(retry));
+            return current.get();
+        });
+
+        result.whenComplete((r, ex) -> {
+            if (result.isCancelled()) {
+                current.get().cancel(true);
+            }
+        });
+
+        return result;
+    }
+
+    private Executor asyncExecutor() {
+        Executor executor = (Executor) configuration.get(HttpConfiguration.ASYNC_EXECUTOR);
+        return executor != null ? executor : ForkJoinPool.commonPool();
+    }
+
+    // Sends the entity, again as long as the RetryPolicy allows it
+    private CompletableFuture<HttpResponse> executeAsync(GraphQLRequestEntity entity) {
+
+        RetryPolicy retryPolicy = (RetryPolicy) configuration.get(HttpConfiguration.RETRY_POLICY);
+        if (retryPolicy == null) {
+            return executeOnceAsync(entity);
+        }
+
+        retryPolicy.deposit();
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        AtomicReference<CompletableFuture<HttpResponse>> current = new AtomicReference<>();
+        retryAsync(entity, retryPolicy, 1, result, current);
+
+        result.whenComplete((r, ex) -> {
+            if (result.isCancelled()) {
+                current.get().cancel(true);
+            }
+        });
+
+        return result;
+    }
+
+    private void retryAsync(GraphQLRequestEntity entity, RetryPolicy retryPolicy, int attempt,
+            CompletableFuture<HttpResponse> result, AtomicReference<CompletableFuture<HttpResponse>> current) {
+
+        CompletableFuture<HttpResponse> call = executeOnceAsync(entity);
+        current.set(call);
+        if (result.isCancelled()) {
+            call.cancel(true);
+            return;
         }
 
-        return httpResponse;
+        call.whenComplete((httpResponse, ex) -> {
+            if (ex == null) {
+                result.complete(httpResponse);
+                return;
+            }
+            Throwable failure = ex instanceof CompletionException ? ex.getCause() : ex;
+            if (result.isDone() || !retryPolicy.shouldRetry(failure, attempt, isIdempotent())) {
+                result.completeExceptionally(failure);
+                return;
+            }
+            CompletableFuture.delayedExecutor(retryPolicy.backoff(attempt), TimeUnit.MILLISECONDS, asyncExecutor())
+                    .execute(() -> retryAsync(entity, retryPolicy, attempt + 1, result, current));
+        });
+    }
+
+    // Sends the entity once, hedged if the HedgingPolicy applies
+    private CompletableFuture<HttpResponse> executeOnceAsync(GraphQLRequestEntity entity) {
+        HedgingPolicy hedgingPolicy = hedgingPolicy();
+        return hedgingPolicy != null ? executeHedgedAsync(entity, hedgingPolicy) : executeBalancedAsync(entity);
+    }
+
+    // Sends the entity again if no response arrived within the hedging delay, the first response wins
+    private CompletableFuture<HttpResponse> executeHedgedAsync(GraphQLRequestEntity entity, HedgingPolicy hedgingPolicy) {
+
+        hedgingPolicy.deposit();
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        List<CompletableFuture<HttpResponse>> calls = new CopyOnWriteArrayList<>();
+        AtomicInteger pending = new AtomicInteger(1);
+
+        CompletableFuture<HttpResponse> primary = executeBalancedAsync(entity);
+        calls.add(primary);
+        primary.whenComplete((httpResponse, ex) -> {
+            if (ex == null || result.isDone()) {
+                hedgingPolicy.measured(System.nanoTime() - start); // At least, if the hedge won
+            }
+            settle(result, pending, httpResponse, ex);
+        });
+
+        CompletableFuture.delayedExecutor(hedgingPolicy.delay(), TimeUnit.NANOSECONDS, asyncExecutor()).execute(() -> {
+            if (result.isDone() || !hedgingPolicy.tryHedge()) {
+                return;
+            }
+            log.debug("No response after the hedging delay, hedging: " + operationName());
+            pending.incrementAndGet();
+            CompletableFuture<HttpResponse> hedge = executeBalancedAsync(entity);
+            calls.add(hedge);
+            hedge.whenComplete((httpResponse, ex) -> {
+                if (settle(result, pending, httpResponse, ex) && ex == null) {
+                    hedgingPolicy.hedgeWon();
+                }
+            });
+            if (result.isDone()) {
+                hedge.cancel(true);
+            }
+        });
+
+        // The loser is cancelled, and all the requests if the invocation is
+        result.whenComplete((r, ex) -> calls.forEach(call -> call.cancel(true)));
+
+        return result;
+    }
+
+    // The first response completes the result, the last failure if all the requests failed
+    private static boolean settle(CompletableFuture<HttpResponse> result, AtomicInteger pending, HttpResponse httpResponse, Throwable ex) {
+        if (ex == null) {
+            return result.complete(httpResponse);
+        }
+        return pending.decrementAndGet() == 0 && result.completeExceptionally(ex instanceof CompletionException ? ex.getCause() : ex);
+    }
+
+    // Sends the entity to the endpoint selected by the LoadBalancer
+    private CompletableFuture<HttpResponse> executeBalancedAsync(GraphQLRequestEntity entity) {
+
+        LoadBalancer balancer = (LoadBalancer) configuration.get(HttpConfiguration.LOAD_BALANCER);
+        if (balancer == null) {
+            return executeGuardedAsync(entity, uri);
+        }
+
+        LoadBalancer.Selection selection = balancer.select();
+        long start = System.nanoTime();
+        CompletableFuture<HttpResponse> call = executeGuardedAsync(entity, selection.getUri());
+        call.whenComplete((r, ex) -> balancer.release(selection, System.nanoTime() - start,
+                ex instanceof CompletionException ? ex.getCause() : ex));
+        return call;
+    }
+
+    // Sends the entity unless the CircuitBreaker is open
+    private CompletableFuture<HttpResponse> executeGuardedAsync(GraphQLRequestEntity entity, URI target) {
+
+        CircuitBreaker breaker = (CircuitBreaker) configuration.get(HttpConfiguration.CIRCUIT_BREAKER);
+        if (breaker == null) {
+            return exchangeAsync(entity, target);
+        }
+
+        CircuitBreaker.Permit permit;
+        try {
+            permit = breaker.acquire(target);
+        } catch (CircuitBreakerOpenException ex) {
+            CompletableFuture<HttpResponse> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(ex);
+            return rejected;
+        }
+
+        CompletableFuture<HttpResponse> call = exchangeAsync(entity, target);
+        call.whenComplete((r, ex) -> breaker.release(permit, ex instanceof CompletionException ? ex.getCause() : ex));
+        return call;
+    }
+
+    private CompletableFuture<HttpResponse> exchangeAsync(GraphQLRequestEntity entity, URI target) {
+
+        WireTap.Capture capture = capture();
+        GraphQLRequestEntity requestEntity = capture != null ? entity.tap(capture) : entity;
+
+        InvocationListener listener = listener();
+        InvocationMetrics metrics = listener != null ? new InvocationMetrics(operationName()) : null;
+
+        CompletableFuture<HttpExchange> received = metrics == null
+                ? transport().executeAsync(target, headers, requestEntity)
+                : transport().executeAsync(target, headers, metrics.measure(requestEntity), metrics);
+
+        CompletableFuture<HttpResponse> result = received.thenApplyAsync(exchange -> readResponse(exchange, listener, metrics, capture), asyncExecutor());
+
+        result.whenComplete((r, ex) -> {
+            if (result.isCancelled()) {
+                received.cancel(true);
+            }
+            if (metrics != null && ex != null) {
+                metrics.failed(ex instanceof CompletionException ? ex.getCause() : ex);
+                fireInvocation(listener, metrics);
+            }
+            if (capture != null) {
+                capture.complete(); // Also when no response is read
+            }
+        });
+
+        return result;
+    }
+
+    // The listener is notified before the future completes
+    private HttpResponse readResponse(HttpExchange exchange, InvocationListener listener, InvocationMetrics metrics, WireTap.Capture capture) {
+        if (metrics == null) {
+            return readResponse(exchange, null, capture);
+        }
+        try {
+            return readResponse(exchange, metrics, capture);
+        } catch (RuntimeException ex) {
+            metrics.failed(ex);
+            throw ex;
+        } finally {
+            fireInvocation(listener, metrics);
+        }
+    }
+
+    /**
+     * Subscribes with the graphql-transport-ws protocol, over a WebSocket
+     * shared by the subscriptions to the same endpoint.
+     *
+     * Each subscriber starts its own subscription on its first request, and
+     * receives one response per event. Events not requested yet are buffered
+     * up to HttpConfiguration.SUBSCRIPTION_BUFFER_SIZE, then handled according
+     * to HttpConfiguration.SUBSCRIPTION_OVERFLOW. They are delivered on the
+     * HttpConfiguration.ASYNC_EXECUTOR. A subscription rejected by the server
+     * ends with a response holding its errors, a connection failure with
+     * onError.
+     *
+     * @return a publisher of the subscription events
+     */
+    public Flow.Publisher<GraphQLResponse> subscribe() {
+
+        Integer bufferSize = (Integer) configuration.get(HttpConfiguration.SUBSCRIPTION_BUFFER_SIZE);
+        if (bufferSize == null) {
+            bufferSize = HttpConfiguration.DEFAULT_SUBSCRIPTION_BUFFER_SIZE;
+        }
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Illegal " + HttpConfiguration.SUBSCRIPTION_BUFFER_SIZE + " value: " + bufferSize);
+        }
+
+        Object overflow = configuration.get(HttpConfiguration.SUBSCRIPTION_OVERFLOW);
+        OverflowPolicy overflowPolicy = overflow == null ? OverflowPolicy.ERROR
+                : overflow instanceof OverflowPolicy ? (OverflowPolicy) overflow
+                : OverflowPolicy.valueOf(overflow.toString().toUpperCase(Locale.ROOT));
+
+        Executor deliveryExecutor = asyncExecutor();
+        int subscriptionBufferSize = bufferSize;
+
+        return subscriber -> subscriber.onSubscribe(new GraphQLSubscription(subscriber, graphqlRequest,
+                subscriptionBufferSize, overflowPolicy, deliveryExecutor,
+                subscription -> SubscriptionConnection.subscribe(configuration, uri, headers, subscription)));
+    }
+
+    /**
+     * @return the statistics of the connection pool used by this invocation, null with the HTTP/2 transport
+     */
+    public PoolStats getPoolStats() {
+        Object transport = configuration.get(CLIENT_TRANSPORT);
+        return transport instanceof Http1Transport ? ((Http1Transport) transport).pool().getStats() : null;
     }
 
     public Object getConfiguration(String key) {
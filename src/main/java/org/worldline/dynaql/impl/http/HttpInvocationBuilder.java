@@ -17,8 +17,13 @@ package org.worldline.dynaql.impl.http;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import javax.json.bind.JsonbConfig;
+import javax.json.bind.config.PropertyNamingStrategy;
 import org.apache.http.HttpHost;
 import org.apache.http.client.config.RequestConfig;
 import org.slf4j.LoggerFactory;
@@ -36,10 +41,11 @@ public class HttpInvocationBuilder {
     private final HttpConfiguration configuration;
     private URI uri;
     private GraphQLRequest graphqlRequest;
+    private List<GraphQLRequest> graphqlRequests;
     private final Map<String, String> headers;
 
     private HttpInvocationBuilder() {
-        this.headers = new HashMap();
+        this.headers = new HashMap<>();
         this.configuration = new HttpConfiguration();
     }
 
@@ -77,6 +83,14 @@ public class HttpInvocationBuilder {
         return this;
     }
 
+    /**
+     * The requests of a batch, see buildBatch.
+     */
+    public HttpInvocationBuilder graphQLRequests(List<GraphQLRequest> graphqlRequests) {
+        this.graphqlRequests = graphqlRequests;
+        return this;
+    }
+
     private void setProxy(RequestConfig.Builder configBuilder) {
 
         String hostname = (String) configuration.get(HttpConfiguration.PROXY_HOSTNAME);
@@ -120,14 +134,84 @@ public class HttpInvocationBuilder {
 
     }
 
-    public HttpInvocation build() {
+    private void setJsonbConfig() {
+
+        String dateFormat = (String) configuration.get(HttpConfiguration.JSONB_DATE_FORMAT);
+        Object namingStrategy = configuration.get(HttpConfiguration.JSONB_NAMING_STRATEGY);
+        if (dateFormat == null && namingStrategy == null) {
+            return; // Nothing to merge
+        }
+
+        JsonbConfig jsonbConfig = new JsonbConfig();
+        JsonbConfig baseConfig = (JsonbConfig) configuration.get(HttpConfiguration.JSONB_CONFIG);
+        if (baseConfig != null) {
+            baseConfig.getAsMap().forEach(jsonbConfig::setProperty);
+        }
+
+        if (dateFormat != null) {
+            log.debug(HttpConfiguration.JSONB_DATE_FORMAT + "=" + dateFormat);
+            jsonbConfig.withDateFormat(dateFormat, Locale.getDefault());
+        }
+
+        if (namingStrategy instanceof PropertyNamingStrategy) {
+            jsonbConfig.withPropertyNamingStrategy((PropertyNamingStrategy) namingStrategy);
+        } else if (namingStrategy != null) {
+            log.debug(HttpConfiguration.JSONB_NAMING_STRATEGY + "=" + namingStrategy);
+            jsonbConfig.withPropertyNamingStrategy(namingStrategy.toString());
+        }
+
+        configuration.property(HttpConfiguration.JSONB_CONFIG, jsonbConfig);
+    }
+
+    private void configure() {
         RequestConfig.Builder configBuilder = RequestConfig.custom();
         setProxy(configBuilder);
         setTimeout(configBuilder);
+        setJsonbConfig();
         
         configuration.property(HttpConfiguration.REQUEST_CONFIG, configBuilder.build());
+        setTransport();
+        setLoadBalancer();
+    }
+
+    private void setTransport() {
+
+        Object transport = configuration.get(HttpConfiguration.TRANSPORT);
+
+        if (transport == null || HttpConfiguration.TRANSPORT_HTTP1.equals(transport)) {
+            configuration.property(HttpConfiguration.CLIENT_TRANSPORT, new Http1Transport(configuration));
+        } else if (HttpConfiguration.TRANSPORT_HTTP2.equals(transport)) {
+            log.debug(HttpConfiguration.TRANSPORT + "=" + transport);
+            configuration.property(HttpConfiguration.CLIENT_TRANSPORT, Http2Transport.of(configuration));
+        } else {
+            throw new IllegalArgumentException("Illegal " + HttpConfiguration.TRANSPORT + " value: " + transport);
+        }
+    }
+
+    // The endpoints of a LoadBalancer stand for the one of the invocation
+    private void setLoadBalancer() {
+        LoadBalancer balancer = (LoadBalancer) configuration.get(HttpConfiguration.LOAD_BALANCER);
+        if (uri == null && balancer != null) {
+            uri = balancer.getPrimaryUri();
+        }
+    }
+
+    public HttpInvocation build() {
+        configure();
         
         return new HttpInvocation(configuration, uri, graphqlRequest, headers);
     }
 
+    /**
+     * @return an invocation sending all the graphQLRequests in a single round trip
+     */
+    public HttpBatchInvocation buildBatch() {
+        if (graphqlRequests == null || graphqlRequests.isEmpty()) {
+            throw new IllegalArgumentException("A batch needs at least one GraphQL request");
+        }
+        configure();
+
+        return new HttpBatchInvocation(configuration, uri, new ArrayList<>(graphqlRequests), headers);
+    }
+
 }
@@ -15,19 +15,23 @@
  */
 package org.worldline.dynaql.impl.http;
 
-import java.util.HashMap;
+import java.io.Closeable;
 import java.util.Map;
+import java.util.TreeMap;
 import org.worldline.dynaql.impl.DynaQLResponse;
 
 /**
  *
  * @author jefrajames
  */
-public class HttpResponse {
+public class HttpResponse implements Closeable {
     
-    private Map<String, String> headers = new HashMap<>();
+    // HTTP header names are case-insensitive
+    private Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
     
     private DynaQLResponse graphQLResponse;
+
+    private Closeable resource;
     
     protected HttpResponse() {}
 
@@ -47,6 +51,25 @@ public class HttpResponse {
         return graphQLResponse;
     }
 
+    protected void setResource(Closeable resource) {
+        this.resource = resource;
+    }
+
+    /**
+     * Releases the connection of a streaming response, does nothing for a
+     * buffered one.
+     */
+    @Override
+    public void close() {
+        if (resource != null) {
+            try {
+                resource.close();
+            } catch (java.io.IOException ex) {
+                throw new HttpInvocationException(ex);
+            }
+        }
+    }
+
     @Override
     public String toString() {
         return "HttpResponse{" + "headers=" + headers + ", graphQLResponse=" + graphQLResponse + '}';
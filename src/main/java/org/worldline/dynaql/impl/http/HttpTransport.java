@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Posts GraphQL request bodies over HTTP, selected with
+ * HttpConfiguration.TRANSPORT.
+ *
+ * @author jefrajames
+ */
+interface HttpTransport {
+
+    /**
+     * @return the exchange, once the response headers are received
+     */
+    default HttpExchange execute(URI uri, Map<String, String> headers, GraphQLRequestEntity entity) throws IOException {
+        return execute(uri, headers, entity, null);
+    }
+
+    /**
+     * @param metrics the measures of the exchange to fill in, null if not measured
+     * @return the exchange, once the response headers are received
+     */
+    HttpExchange execute(URI uri, Map<String, String> headers, GraphQLRequestEntity entity, InvocationMetrics metrics) throws IOException;
+
+    /**
+     * Cancelling the returned future aborts the exchange.
+     *
+     * @return a future completed with the exchange, or with an HttpInvocationException
+     */
+    default CompletableFuture<HttpExchange> executeAsync(URI uri, Map<String, String> headers, GraphQLRequestEntity entity) {
+        return executeAsync(uri, headers, entity, null);
+    }
+
+    /**
+     * @param metrics the measures of the exchange to fill in, null if not measured
+     * @return a future completed with the exchange, or with an HttpInvocationException
+     */
+    CompletableFuture<HttpExchange> executeAsync(URI uri, Map<String, String> headers, GraphQLRequestEntity entity, InvocationMetrics metrics);
+
+}
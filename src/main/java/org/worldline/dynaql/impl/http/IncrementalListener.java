@@ -0,0 +1,35 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import org.worldline.dynaql.api.GraphQLResponse;
+
+/**
+ * Notified each time a part of an incremental response (@defer, @stream) has
+ * been patched into it.
+ *
+ * @author jefrajames
+ */
+@FunctionalInterface
+public interface IncrementalListener {
+
+    /**
+     * @param response the response completed so far, not modified afterwards
+     * @param hasNext true if more parts are expected
+     */
+    void onUpdate(GraphQLResponse response, boolean hasNext);
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonNumber;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonString;
+import javax.json.JsonValue;
+import javax.json.bind.JsonbConfig;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParsingException;
+import org.worldline.dynaql.api.GraphQLResponse.GraphQLError;
+import org.worldline.dynaql.impl.DynaQLResponse;
+import org.worldline.dynaql.impl.JsonResponseParser;
+
+/**
+ * A response delivered incrementally: the initial payload, then patches
+ * at a path of the data.
+ *
+ * Both the current format, where patches are listed in an incremental
+ * element, and the former one, where the patch is the payload itself, are
+ * supported. A @defer patch is merged into the object at its path, the items
+ * of a @stream patch are inserted in the list at its path from the given
+ * index.
+ *
+ * @author jefrajames
+ */
+class IncrementalResponse {
+
+    private final JsonbConfig jsonbConfig;
+
+    private JsonObject data;
+    private final List<GraphQLError> errors = new ArrayList<>();
+    private boolean hasNext = true;
+
+    IncrementalResponse(JsonbConfig jsonbConfig) {
+        this.jsonbConfig = jsonbConfig;
+    }
+
+    boolean hasNext() {
+        return hasNext;
+    }
+
+    /**
+     * @param parser a parser positioned before a payload
+     * @return false if the payload has changed nothing, a heartbeat for instance
+     */
+    boolean apply(JsonParser parser) {
+
+        if (!parser.hasNext() || parser.next() != JsonParser.Event.START_OBJECT) {
+            throw new JsonParsingException("An incremental payload must be a JSON object", parser.getLocation());
+        }
+        JsonObject payload = parser.getObject();
+
+        boolean changed = false;
+
+        if (payload.containsKey("path")) {
+            changed = patch(payload); // Former format
+        } else if (payload.get("data") instanceof JsonObject) {
+            data = payload.getJsonObject("data");
+            changed = true;
+        }
+
+        changed |= addErrors(payload);
+
+        if (payload.get("incremental") instanceof JsonArray) {
+            for (JsonValue patch : payload.getJsonArray("incremental")) {
+                if (patch instanceof JsonObject) {
+                    changed |= patch((JsonObject) patch);
+                }
+            }
+        }
+
+        if (payload.containsKey("hasNext")) {
+            boolean next = payload.getBoolean("hasNext", false);
+            changed |= next != hasNext;
+            hasNext = next;
+        }
+
+        return changed;
+    }
+
+    private boolean addErrors(JsonObject payload) {
+        if (payload.get("errors") instanceof JsonArray && !payload.getJsonArray("errors").isEmpty()) {
+            errors.addAll(JsonResponseParser.readErrors(payload.getJsonArray("errors")));
+            return true;
+        }
+        return false;
+    }
+
+    private boolean patch(JsonObject patch) {
+
+        boolean changed = addErrors(patch);
+
+        if (!(patch.get("path") instanceof JsonArray) || data == null) {
+            return changed;
+        }
+        JsonArray path = patch.getJsonArray("path");
+
+        if (patch.get("data") instanceof JsonObject) {
+            JsonObject deferred = patch.getJsonObject("data");
+            data = (JsonObject) patch(data, path, 0, target -> merge(target, deferred));
+            return true;
+        }
+
+        if (patch.get("items") instanceof JsonArray && !path.isEmpty() && path.get(path.size() - 1) instanceof JsonNumber) {
+            JsonArray items = patch.getJsonArray("items");
+            int index = ((JsonNumber) path.get(path.size() - 1)).intValue();
+            data = (JsonObject) patch(data, path.subList(0, path.size() - 1), 0, target -> insert(target, index, items));
+            return true;
+        }
+
+        return changed;
+    }
+
+    // Rebuilds the values along the path, the others are shared
+    private static JsonValue patch(JsonValue target, List<JsonValue> path, int depth, UnaryOperator<JsonValue> change) {
+
+        if (depth == path.size()) {
+            return change.apply(target);
+        }
+
+        JsonValue segment = path.get(depth);
+
+        if (segment instanceof JsonString && target instanceof JsonObject) {
+            String key = ((JsonString) segment).getString();
+            JsonObject object = (JsonObject) target;
+            JsonValue child = object.get(key);
+            if (child == null) {
+                return target; // Nothing to patch, the value is null
+            }
+            return Json.createObjectBuilder(object).add(key, patch(child, path, depth + 1, change)).build();
+        }
+
+        if (segment instanceof JsonNumber && target instanceof JsonArray) {
+            int index = ((JsonNumber) segment).intValue();
+            JsonArray array = (JsonArray) target;
+            if (index < 0 || index >= array.size()) {
+                return target;
+            }
+            return Json.createArrayBuilder(array).set(index, patch(array.get(index), path, depth + 1, change)).build();
+        }
+
+        return target;
+    }
+
+    private static JsonValue merge(JsonValue target, JsonObject deferred) {
+
+        if (!(target instanceof JsonObject)) {
+            return target;
+        }
+
+        JsonObject object = (JsonObject) target;
+        JsonObjectBuilder builder = Json.createObjectBuilder(object);
+        for (Map.Entry<String, JsonValue> field : deferred.entrySet()) {
+            JsonValue existing = object.get(field.getKey());
+            if (existing instanceof JsonObject && field.getValue() instanceof JsonObject) {
+                builder.add(field.getKey(), merge(existing, (JsonObject) field.getValue()));
+            } else {
+                builder.add(field.getKey(), field.getValue());
+            }
+        }
+        return builder.build();
+    }
+
+    private static JsonValue insert(JsonValue target, int index, JsonArray items) {
+
+        if (!(target instanceof JsonArray)) {
+            return target;
+        }
+
+        JsonArray array = (JsonArray) target;
+        JsonArrayBuilder builder = Json.createArrayBuilder(array);
+        for (int i = 0; i < items.size(); i++) {
+            if (index + i < array.size()) {
+                builder.set(index + i, items.get(i));
+            } else {
+                builder.add(items.get(i));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the response as completed so far
+     */
+    DynaQLResponse toResponse() {
+        DynaQLResponse response = new DynaQLResponse();
+        response.setData(data);
+        if (!errors.isEmpty()) {
+            response.setErrors(new ArrayList<>(errors));
+        }
+        response.setJsonbConfig(jsonbConfig);
+        return response;
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+/**
+ * Receives the measures of the invocations it is configured on with
+ * HttpConfiguration.INVOCATION_LISTENER, see MetricsInvocationListener.
+ *
+ * Without a listener, nothing is measured.
+ *
+ * @author jefrajames
+ */
+public interface InvocationListener {
+
+    /**
+     * Called once per HTTP exchange of invoke or invokeAsync, succeeded or
+     * failed, on the thread which completed it.
+     *
+     * @param metrics the measures of the exchange
+     */
+    void onInvocation(InvocationMetrics metrics);
+
+    /**
+     * Called each time getObject or getList maps the data of a response.
+     *
+     * @param operationName the name of the operation, null if anonymous
+     * @param nanos the mapping time
+     */
+    default void onMapping(String operationName, long nanos) {
+    }
+
+}
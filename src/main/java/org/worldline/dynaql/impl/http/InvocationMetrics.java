@@ -0,0 +1,209 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.io.InputStream;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.worldline.dynaql.api.GraphQLResponse;
+
+/**
+ * The measures of one HTTP exchange, passed to an InvocationListener.
+ *
+ * Times are in nanoseconds, -1 when not measured. The pool wait is the time
+ * to get a connection, including its establishment when a new one is opened:
+ * it is not measured by the HTTP/2 transport, whose time to first byte
+ * includes it. The serialization time includes the upload of the body, which
+ * is streamed to the connection. The parse time includes the download of the
+ * body, which is parsed while being read.
+ *
+ * @author jefrajames
+ */
+public final class InvocationMetrics {
+
+    // The HttpContext attribute holding the metrics of an Apache exchange
+    static final String CONTEXT_ATTRIBUTE = "dynaql.invocation.metrics";
+
+    private final String operationName;
+    private final long startTime = System.nanoTime();
+
+    private long serializationNanos = -1;
+    private long requestBytes = -1;
+    private long parseNanos = -1;
+    private long totalNanos = -1;
+    private int errorCount;
+
+    // Timestamps of the exchange, 0 until reached
+    private long requestedTime;
+    private long connectedTime;
+    private long sentTime;
+    private long firstByteTime;
+
+    private CountingInputStream responseBody;
+    private PoolStats poolStats;
+    private Throwable failure;
+
+    InvocationMetrics(String operationName) {
+        this.operationName = operationName;
+    }
+
+    /**
+     * @return the metrics attached to the Apache exchange, null if not measured
+     */
+    static InvocationMetrics of(HttpContext context) {
+        return context != null ? (InvocationMetrics) context.getAttribute(CONTEXT_ATTRIBUTE) : null;
+    }
+
+    // The body is still streamed: it is measured while being written
+    GraphQLRequestEntity measure(GraphQLRequestEntity entity) {
+        return entity.measured(this);
+    }
+
+    void written(long nanos, long bytes) {
+        serializationNanos = nanos;
+        requestBytes = bytes;
+    }
+
+    void requested() {
+        requestedTime = System.nanoTime();
+    }
+
+    void connected() {
+        if (connectedTime == 0) {
+            connectedTime = System.nanoTime();
+        }
+    }
+
+    void sent() {
+        sentTime = System.nanoTime();
+    }
+
+    void firstByte() {
+        if (firstByteTime == 0) {
+            firstByteTime = System.nanoTime();
+        }
+    }
+
+    InputStream countResponseBytes(InputStream body) {
+        responseBody = new CountingInputStream(body);
+        return responseBody;
+    }
+
+    void parsed(long nanos, GraphQLResponse response) {
+        parseNanos = nanos;
+        errorCount = response.hasError() ? response.getErrors().size() : 0;
+    }
+
+    void poolStats(PoolStats poolStats) {
+        this.poolStats = poolStats;
+    }
+
+    void failed(Throwable failure) {
+        this.failure = failure;
+    }
+
+    /**
+     * @return false if already completed
+     */
+    synchronized boolean completed() {
+        if (totalNanos >= 0) {
+            return false;
+        }
+        totalNanos = System.nanoTime() - startTime;
+        return true;
+    }
+
+    /**
+     * @return the name of the operation, null if anonymous
+     */
+    public String getOperationName() {
+        return operationName;
+    }
+
+    public long getSerializationNanos() {
+        return serializationNanos;
+    }
+
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    public long getPoolWaitNanos() {
+        return requestedTime != 0 && connectedTime != 0 ? connectedTime - requestedTime : -1;
+    }
+
+    /**
+     * @return the time between the request sent, or the connection got if
+     * unknown, and the response headers received
+     */
+    public long getTimeToFirstByteNanos() {
+        if (firstByteTime == 0) {
+            return -1;
+        }
+        long from = sentTime != 0 ? sentTime : connectedTime != 0 ? connectedTime : requestedTime;
+        return from != 0 ? firstByteTime - from : -1;
+    }
+
+    public long getParseNanos() {
+        return parseNanos;
+    }
+
+    /**
+     * @return the size of the response body as received, possibly compressed
+     */
+    public long getResponseBytes() {
+        return responseBody != null ? responseBody.getByteCount() : -1;
+    }
+
+    /**
+     * @return the number of GraphQL errors of the response
+     */
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * @return the statistics of the connection pool used by the exchange, null with the HTTP/2 transport
+     */
+    public PoolStats getPoolStats() {
+        return poolStats;
+    }
+
+    /**
+     * @return the time from the serialization to the parsed response
+     */
+    public synchronized long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return the failure of the exchange, null if succeeded
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return "InvocationMetrics{" + "operationName=" + operationName + ", serializationNanos=" + serializationNanos
+                + ", requestBytes=" + requestBytes + ", poolWaitNanos=" + getPoolWaitNanos()
+                + ", timeToFirstByteNanos=" + getTimeToFirstByteNanos() + ", parseNanos=" + parseNanos
+                + ", responseBytes=" + getResponseBytes() + ", errorCount=" + errorCount
+                + ", totalNanos=" + totalNanos + ", failure=" + failure + '}';
+    }
+
+}
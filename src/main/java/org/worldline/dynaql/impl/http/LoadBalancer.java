@@ -0,0 +1,361 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads the requests over several replicas of a GraphQL endpoint,
+ * configured with HttpConfiguration.LOAD_BALANCER.
+ *
+ * Each request goes to the endpoint with the fewest requests in flight,
+ * either among all of them or among two picked at random. An endpoint whose
+ * error rate or mean latency goes over its limit, once minRequests have been
+ * measured, is ejected for ejectionDuration. A single probe request is then
+ * sent to it: the endpoint is admitted again if the probe succeeds. When all
+ * the endpoints are ejected, they are all used.
+ *
+ * @author jefrajames
+ */
+public class LoadBalancer {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(LoadBalancer.class);
+
+    public enum Strategy {
+        LEAST_OUTSTANDING, POWER_OF_TWO_CHOICES
+    }
+
+    private final List<Endpoint> endpoints;
+    private final Strategy strategy;
+    private final double maxErrorRate;
+    private final long maxLatencyNanos;
+    private final int minRequests;
+    private final long ejectionNanos;
+
+    private final LongAdder ejections = new LongAdder();
+
+    private LoadBalancer(Builder builder) {
+        List<Endpoint> list = new ArrayList<>();
+        builder.uris.forEach(uri -> list.add(new Endpoint(uri)));
+        this.endpoints = Collections.unmodifiableList(list);
+        this.strategy = builder.strategy;
+        this.maxErrorRate = builder.maxErrorRate;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(builder.maxLatency);
+        this.minRequests = builder.minRequests;
+        this.ejectionNanos = TimeUnit.MILLISECONDS.toNanos(builder.ejectionDuration);
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the endpoint identifying the invocations, for caching and logging
+     */
+    URI getPrimaryUri() {
+        return endpoints.get(0).uri;
+    }
+
+    /**
+     * To be called before sending a request, then release once its outcome is known.
+     *
+     * @return the endpoint to send the request to
+     */
+    Selection select() {
+        long now = System.nanoTime();
+
+        List<Endpoint> admitted = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            Selection probe = endpoint.tryProbe(now);
+            if (probe != null) {
+                return probe;
+            }
+            if (!endpoint.isEjected()) {
+                admitted.add(endpoint);
+            }
+        }
+
+        return choose(admitted.isEmpty() ? endpoints : admitted).select(false);
+    }
+
+    private Endpoint choose(List<Endpoint> candidates) {
+        int size = candidates.size();
+        if (size == 1) {
+            return candidates.get(0);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (strategy == Strategy.POWER_OF_TWO_CHOICES) {
+            int first = random.nextInt(size);
+            int second = (first + 1 + random.nextInt(size - 1)) % size;
+            return lessLoaded(candidates.get(first), candidates.get(second));
+        }
+
+        // Ties are broken from a random start, not always in favour of the first endpoint
+        int start = random.nextInt(size);
+        Endpoint selected = candidates.get(start);
+        for (int i = 1; i < size; i++) {
+            selected = lessLoaded(selected, candidates.get((start + i) % size));
+        }
+        return selected;
+    }
+
+    private static Endpoint lessLoaded(Endpoint first, Endpoint second) {
+        return second.outstanding.get() < first.outstanding.get() ? second : first;
+    }
+
+    /**
+     * @param nanos the duration of the request
+     * @param failure the failure of the request, null if it succeeded
+     */
+    void release(Selection selection, long nanos, Throwable failure) {
+        Endpoint endpoint = selection.endpoint;
+        endpoint.outstanding.decrementAndGet();
+        if (failure instanceof CancellationException || failure instanceof CircuitBreakerOpenException) {
+            endpoint.measure(selection, null, nanos); // Says nothing about the endpoint
+        } else {
+            endpoint.measure(selection, failure == null || !Failures.isServerFailure(failure), nanos);
+        }
+    }
+
+    /**
+     * @return true if the endpoint is currently ejected
+     */
+    public boolean isEjected(String endpoint) {
+        URI uri = URI.create(endpoint);
+        return endpoints.stream().anyMatch(e -> e.uri.equals(uri) && e.isEjected());
+    }
+
+    /**
+     * @return the number of requests in flight to the endpoint
+     */
+    public int getOutstanding(String endpoint) {
+        URI uri = URI.create(endpoint);
+        return endpoints.stream().filter(e -> e.uri.equals(uri)).mapToInt(e -> e.outstanding.get()).sum();
+    }
+
+    /**
+     * @return the number of times an endpoint has been ejected
+     */
+    public long getEjectionCount() {
+        return ejections.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "LoadBalancer{" + "strategy=" + strategy + ", endpoints=" + endpoints + ", ejections=" + ejections + '}';
+    }
+
+    /**
+     * An endpoint selected for a request. Only the outcome of the probe of an
+     * ejected endpoint admits it again, and only the requests selected since
+     * it was last ejected or admitted are measured.
+     */
+    static final class Selection {
+
+        private final Endpoint endpoint;
+        private final long generation;
+        private final boolean probe;
+
+        private Selection(Endpoint endpoint, long generation, boolean probe) {
+            this.endpoint = endpoint;
+            this.generation = generation;
+            this.probe = probe;
+        }
+
+        URI getUri() {
+            return endpoint.uri;
+        }
+    }
+
+    private final class Endpoint {
+
+        private final URI uri;
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        // Averages over the last minRequests requests, at least
+        private int samples;
+        private double errorRate;
+        private double latencyNanos;
+
+        private long ejectedAt;
+        private boolean ejected;
+        private boolean probeInFlight;
+
+        // Incremented when the endpoint is ejected or admitted again
+        private long generation;
+
+        private Endpoint(URI uri) {
+            this.uri = uri;
+        }
+
+        private synchronized Selection select(boolean probe) {
+            outstanding.incrementAndGet();
+            return new Selection(this, generation, probe);
+        }
+
+        // Returns the probe of the endpoint if it is ejected and due to be probed, null otherwise
+        private synchronized Selection tryProbe(long now) {
+            if (!ejected || probeInFlight || now - ejectedAt < ejectionNanos) {
+                return null;
+            }
+            probeInFlight = true;
+            return select(true);
+        }
+
+        // success is null if the outcome is unknown
+        private synchronized void measure(Selection selection, Boolean success, long nanos) {
+            if (selection.probe) {
+                probeInFlight = false;
+                if (success == null) {
+                    return;
+                }
+                if (success && (maxLatencyNanos <= 0 || nanos <= maxLatencyNanos)) {
+                    log.info("Endpoint admitted again: " + uri);
+                    ejected = false;
+                    generation++;
+                    samples = 0;
+                    errorRate = 0;
+                    latencyNanos = 0;
+                } else {
+                    ejectedAt = System.nanoTime();
+                }
+                return;
+            }
+            if (success == null || ejected || selection.generation != generation) {
+                return;
+            }
+
+            // A cumulative average first, then a moving one
+            double weight = 1.0 / Math.min(++samples, minRequests);
+            errorRate += weight * ((success ? 0 : 1) - errorRate);
+            latencyNanos += weight * (nanos - latencyNanos);
+
+            if (samples >= minRequests
+                    && (errorRate > maxErrorRate || maxLatencyNanos > 0 && latencyNanos > maxLatencyNanos)) {
+                log.warn("Endpoint ejected: " + uri + ", error rate " + errorRate
+                        + ", mean latency " + TimeUnit.NANOSECONDS.toMillis((long) latencyNanos) + " ms");
+                ejected = true;
+                generation++;
+                ejectedAt = System.nanoTime();
+                ejections.increment();
+            }
+        }
+
+        private synchronized boolean isEjected() {
+            return ejected;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return uri + (ejected ? "(ejected)" : "(" + outstanding + ")");
+        }
+    }
+
+    public static class Builder {
+
+        private final List<URI> uris = new ArrayList<>();
+        private Strategy strategy = Strategy.POWER_OF_TWO_CHOICES;
+        private double maxErrorRate = 0.5;
+        private long maxLatency;
+        private int minRequests = 10;
+        private long ejectionDuration = 30_000L;
+
+        private Builder() {
+        }
+
+        /**
+         * @param endpoints the replicas of the GraphQL endpoint
+         */
+        public Builder endpoints(String... endpoints) {
+            for (String endpoint : endpoints) {
+                if (endpoint == null || !endpoint.startsWith("http")) {
+                    throw new IllegalArgumentException("Illegal URI value: " + endpoint);
+                }
+                try {
+                    uris.add(new URI(endpoint));
+                } catch (URISyntaxException ex) {
+                    throw new IllegalArgumentException("Illegal URI value: " + endpoint);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * @param strategy how an endpoint is selected, POWER_OF_TWO_CHOICES by default
+         */
+        public Builder strategy(Strategy strategy) {
+            this.strategy = strategy;
+            return this;
+        }
+
+        /**
+         * @param maxErrorRate the ratio of network failures and 5xx statuses ejecting an endpoint, 0.5 by default
+         */
+        public Builder maxErrorRate(double maxErrorRate) {
+            if (maxErrorRate < 0 || maxErrorRate >= 1) {
+                throw new IllegalArgumentException("Illegal maxErrorRate: " + maxErrorRate);
+            }
+            this.maxErrorRate = maxErrorRate;
+            return this;
+        }
+
+        /**
+         * @param maxLatency the mean latency in milliseconds ejecting an endpoint, none by default
+         */
+        public Builder maxLatency(long maxLatency) {
+            this.maxLatency = maxLatency;
+            return this;
+        }
+
+        /**
+         * @param minRequests the number of requests measured before ejecting an endpoint, 10 by default
+         */
+        public Builder minRequests(int minRequests) {
+            if (minRequests < 1) {
+                throw new IllegalArgumentException("Illegal minRequests: " + minRequests);
+            }
+            this.minRequests = minRequests;
+            return this;
+        }
+
+        /**
+         * @param ejectionDuration the time in milliseconds before probing an ejected endpoint, 30 seconds by default
+         */
+        public Builder ejectionDuration(long ejectionDuration) {
+            this.ejectionDuration = ejectionDuration;
+            return this;
+        }
+
+        public LoadBalancer build() {
+            if (uris.isEmpty()) {
+                throw new IllegalArgumentException("A load balancer needs at least one endpoint");
+            }
+            return new LoadBalancer(this);
+        }
+    }
+
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * The default InvocationListener, recording in memory the metrics of each
+ * operation in the manner of MicroProfile Metrics: histograms of times and
+ * sizes, and counters.
+ *
+ * Histograms keep no sample: the values are counted in buckets whose width is
+ * an eighth of their power of 2, percentiles are accurate within 12.5%. They
+ * can be exported to any metrics system by polling the getters.
+ *
+ * @author jefrajames
+ */
+public class MetricsInvocationListener implements InvocationListener {
+
+    // The operation name under which anonymous operations are recorded
+    public static final String ANONYMOUS = "anonymous";
+
+    // Histograms, in nanoseconds
+    public static final String SERIALIZATION_TIME = "serialization.time";
+    public static final String POOL_WAIT_TIME = "pool.wait.time";
+    public static final String TIME_TO_FIRST_BYTE = "time.to.first.byte";
+    public static final String PARSE_TIME = "parse.time";
+    public static final String MAPPING_TIME = "mapping.time";
+    public static final String INVOCATION_TIME = "invocation.time";
+
+    // Histograms, in bytes
+    public static final String REQUEST_BYTES = "request.bytes";
+    public static final String RESPONSE_BYTES = "response.bytes";
+
+    // Counters
+    public static final String INVOCATIONS = "invocations";
+    public static final String FAILURES = "failures";
+    public static final String GRAPHQL_ERRORS = "graphql.errors";
+
+    private final ConcurrentMap<String, ConcurrentMap<String, Histogram>> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ConcurrentMap<String, LongAdder>> counters = new ConcurrentHashMap<>();
+
+    private volatile PoolStats poolStats;
+
+    private static String key(String operationName) {
+        return operationName != null ? operationName : ANONYMOUS;
+    }
+
+    private Histogram histogram(String operationName, String name) {
+        return histograms.computeIfAbsent(key(operationName), k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(name, k -> new Histogram());
+    }
+
+    private LongAdder counter(String operationName, String name) {
+        return counters.computeIfAbsent(key(operationName), k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(name, k -> new LongAdder());
+    }
+
+    // Values not measured are -1
+    private void update(String operationName, String name, long value) {
+        if (value >= 0) {
+            histogram(operationName, name).update(value);
+        }
+    }
+
+    @Override
+    public void onInvocation(InvocationMetrics metrics) {
+        String operationName = metrics.getOperationName();
+
+        counter(operationName, INVOCATIONS).increment();
+        if (metrics.getFailure() != null) {
+            counter(operationName, FAILURES).increment();
+        }
+        counter(operationName, GRAPHQL_ERRORS).add(metrics.getErrorCount());
+
+        update(operationName, SERIALIZATION_TIME, metrics.getSerializationNanos());
+        update(operationName, POOL_WAIT_TIME, metrics.getPoolWaitNanos());
+        update(operationName, TIME_TO_FIRST_BYTE, metrics.getTimeToFirstByteNanos());
+        update(operationName, PARSE_TIME, metrics.getParseNanos());
+        update(operationName, INVOCATION_TIME, metrics.getTotalNanos());
+        update(operationName, REQUEST_BYTES, metrics.getRequestBytes());
+        update(operationName, RESPONSE_BYTES, metrics.getResponseBytes());
+
+        if (metrics.getPoolStats() != null) {
+            poolStats = metrics.getPoolStats();
+        }
+    }
+
+    @Override
+    public void onMapping(String operationName, long nanos) {
+        update(operationName, MAPPING_TIME, nanos);
+    }
+
+    /**
+     * @return the names of the operations recorded so far, ANONYMOUS included
+     */
+    public Set<String> getOperationNames() {
+        return Collections.unmodifiableSet(counters.keySet());
+    }
+
+    /**
+     * @param operationName the name of the operation, null if anonymous
+     * @param name one of the histogram names
+     * @return the histogram, empty if nothing was recorded
+     */
+    public Histogram getHistogram(String operationName, String name) {
+        return histogram(operationName, name);
+    }
+
+    /**
+     * @param operationName the name of the operation, null if anonymous
+     * @param name INVOCATIONS, FAILURES or GRAPHQL_ERRORS
+     * @return the value of the counter
+     */
+    public long getCount(String operationName, String name) {
+        return counter(operationName, name).sum();
+    }
+
+    /**
+     * @return the utilization of the connection pool, as last seen by an invocation, null if none
+     */
+    public PoolStats getPoolStats() {
+        return poolStats;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsInvocationListener{" + "counters=" + counters + ", histograms=" + histograms + ", poolStats=" + poolStats + '}';
+    }
+
+    /**
+     * A histogram of non-negative values, updated without locking.
+     */
+    public static final class Histogram {
+
+        // 8 sub-buckets per power of 2
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        private static int index(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        // The greatest value counted in the bucket
+        private static long upperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long lowerBound = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+            return lowerBound + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+        }
+
+        void update(long value) {
+            buckets.incrementAndGet(index(value));
+            count.increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getSum() {
+            return sum.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        public double getMean() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) sum.sum() / n;
+        }
+
+        /**
+         * @param quantile between 0 and 1, 0.99 for the 99th percentile
+         * @return the value below which this quantile of the values falls, 0 if empty
+         */
+        public long getValue(double quantile) {
+            if (quantile < 0 || quantile > 1) {
+                throw new IllegalArgumentException("Illegal quantile: " + quantile);
+            }
+
+            long n = count.sum();
+            if (n == 0) {
+                return 0;
+            }
+
+            long rank = Math.max(1, (long) Math.ceil(quantile * n));
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), getMax());
+                }
+            }
+            return getMax();
+        }
+
+        @Override
+        public String toString() {
+            return "Histogram{" + "count=" + getCount() + ", mean=" + getMean() + ", p50=" + getValue(0.5)
+                    + ", p99=" + getValue(0.99) + ", max=" + getMax() + '}';
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Reads the parts of a multipart/mixed body as they arrive, without waiting
+ * for the end of the body.
+ *
+ * @author jefrajames
+ */
+class MultipartReader {
+
+    private final InputStream in;
+    private final byte[] delimiter;
+
+    private boolean started;
+    private boolean ended;
+
+    // The rest of the delimiter line, "--" after the last part, is still to be read
+    private boolean afterDelimiter;
+
+    /**
+     * @param in the body
+     * @param boundary the boundary parameter of the Content-Type
+     */
+    MultipartReader(InputStream in, String boundary) {
+        this.in = new BufferedInputStream(in);
+        this.delimiter = ("--" + boundary).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @param contentType the Content-Type of a response
+     * @return its boundary if it is multipart/mixed, null otherwise
+     */
+    static String getBoundary(String contentType) {
+
+        if (contentType == null || !contentType.trim().toLowerCase(Locale.ROOT).startsWith("multipart/mixed")) {
+            return null;
+        }
+
+        for (String parameter : contentType.split(";")) {
+            String[] nameValue = parameter.trim().split("=", 2);
+            if (nameValue.length == 2 && "boundary".equalsIgnoreCase(nameValue[0].trim())) {
+                String boundary = nameValue[1].trim();
+                if (boundary.length() > 1 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+                    boundary = boundary.substring(1, boundary.length() - 1);
+                }
+                return boundary;
+            }
+        }
+
+        return "-"; // The default of the GraphQL incremental delivery servers
+    }
+
+    /**
+     * @return the body of the next part, null after the last one
+     */
+    byte[] nextPart() throws IOException {
+
+        // The preamble is ignored
+        while (!started && !ended) {
+            byte[] line = readLine(true);
+            if (line == null) {
+                ended = true;
+            } else if (Arrays.equals(line, delimiter)) {
+                started = true;
+                afterDelimiter = true;
+            }
+        }
+
+        if (afterDelimiter) {
+            byte[] rest = readLine(false);
+            ended = rest == null || (rest.length >= 2 && rest[0] == '-' && rest[1] == '-');
+            afterDelimiter = false;
+        }
+
+        if (ended) {
+            return null;
+        }
+
+        // The part headers are ignored, the body is expected to be JSON
+        byte[] line;
+        do {
+            line = readLine(false);
+            if (line == null) {
+                ended = true;
+                return null;
+            }
+        } while (!isBlank(line));
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        while ((line = readLine(true)) != null) {
+            if (Arrays.equals(line, delimiter)) {
+                afterDelimiter = true;
+                break;
+            }
+            body.write(line);
+        }
+        if (line == null) {
+            ended = true;
+        }
+
+        // The line break before the delimiter belongs to it
+        byte[] bytes = body.toByteArray();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\n') {
+            length--;
+            if (length > 0 && bytes[length - 1] == '\r') {
+                length--;
+            }
+        }
+        return length == bytes.length ? bytes : Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * Servers send the delimiter right after a part, its line break only
+     * with the next one: the delimiter is returned as soon as it is read, not
+     * to delay the part until the next one.
+     *
+     * @return the line with its line break, null at the end of the body
+     */
+    private byte[] readLine(boolean stopAtDelimiter) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != -1) {
+            line.write(b);
+            if (b == '\n' || (stopAtDelimiter && line.size() == delimiter.length && Arrays.equals(line.toByteArray(), delimiter))) {
+                break;
+            }
+        }
+        return line.size() == 0 ? null : line.toByteArray();
+    }
+
+    private static boolean isBlank(byte[] line) {
+        for (byte b : line) {
+            if (b != '\n' && b != '\r' && b != ' ' && b != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+/**
+ * What a subscription does when an event arrives while its buffer is full,
+ * because the subscriber does not request events as fast as the server
+ * sends them.
+ *
+ * @author jefrajames
+ */
+public enum OverflowPolicy {
+
+    // The oldest buffered event is discarded, the latest state always gets through
+    DROP_OLDEST,
+
+    // The incoming event is discarded
+    DROP_LATEST,
+
+    // The subscription is cancelled and the subscriber notified with onError
+    ERROR
+}
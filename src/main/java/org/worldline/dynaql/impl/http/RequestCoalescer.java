@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight execution of identical queries, configured with
+ * HttpConfiguration.REQUEST_COALESCER.
+ *
+ * While a query is in flight, the identical ones (same endpoint, headers,
+ * query and variables) wait for its response instead of sending their own:
+ * all of them receive the same HttpResponse. Mutations are never coalesced.
+ *
+ * @author jefrajames
+ */
+public class RequestCoalescer {
+
+    private final ConcurrentMap<RequestKey, CompletableFuture<HttpResponse>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    HttpResponse execute(RequestKey key, Supplier<HttpResponse> send) {
+
+        CompletableFuture<HttpResponse> call = new CompletableFuture<>();
+        CompletableFuture<HttpResponse> existing = inFlight.putIfAbsent(key, call);
+
+        if (existing != null) {
+            coalesced.increment();
+            try {
+                return existing.join();
+            } catch (CompletionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw ex;
+            }
+        }
+
+        executed.increment();
+        try {
+            HttpResponse response = send.get();
+            call.complete(response);
+            return response;
+        } catch (RuntimeException ex) {
+            call.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    CompletableFuture<HttpResponse> executeAsync(RequestKey key, Supplier<CompletableFuture<HttpResponse>> send) {
+
+        CompletableFuture<HttpResponse> call = new CompletableFuture<>();
+        CompletableFuture<HttpResponse> existing = inFlight.putIfAbsent(key, call);
+
+        if (existing != null) {
+            coalesced.increment();
+        } else {
+            executed.increment();
+            CompletableFuture<HttpResponse> sent;
+            try {
+                sent = send.get();
+            } catch (RuntimeException ex) {
+                // Never leave a key in flight which would not be completed
+                inFlight.remove(key, call);
+                call.completeExceptionally(ex);
+                return CompletableFuture.failedFuture(ex);
+            }
+            sent.whenComplete((response, ex) -> {
+                inFlight.remove(key, call);
+                if (ex == null) {
+                    call.complete(response);
+                } else {
+                    call.completeExceptionally(ex instanceof CompletionException ? ex.getCause() : ex);
+                }
+            });
+            existing = call;
+        }
+
+        // Each caller gets its own future: cancelling it does not affect the others
+        return existing.thenApply(response -> response);
+    }
+
+    /**
+     * @return the number of requests actually sent
+     */
+    public long getExecutedCount() {
+        return executed.sum();
+    }
+
+    /**
+     * @return the number of requests which shared the response of another one
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return the number of distinct requests currently in flight
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    @Override
+    public String toString() {
+        return "RequestCoalescer{" + "executed=" + executed + ", coalesced=" + coalesced + ", inFlight=" + inFlight.size() + '}';
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.lang.reflect.Array;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.worldline.dynaql.impl.DynaQLRequest;
+import org.worldline.dynaql.impl.QueryNormalizer;
+
+/**
+ * Identifies the requests giving the same response: same endpoint, headers,
+ * normalized query and variables.
+ *
+ * @author jefrajames
+ */
+final class RequestKey {
+
+    private final URI uri;
+    private final Map<String, String> headers;
+    private final String query;
+    private final Map<Object, Object> variables;
+    private final int hash;
+
+    RequestKey(URI uri, Map<String, String> headers, DynaQLRequest request) {
+        this.uri = uri;
+        this.headers = headers == null || headers.isEmpty() ? null : new HashMap<>(headers);
+        this.query = QueryNormalizer.normalize(request.getRequest());
+        // A deep copy: the variables of the request, and their arrays, may change afterwards
+        this.variables = request.getVariables() == null ? null : copyMap(request.getVariables());
+        this.hash = Objects.hash(uri, this.headers, query, variables);
+    }
+
+    private static Map<Object, Object> copyMap(Map<?, ?> map) {
+        Map<Object, Object> copy = new HashMap<>();
+        map.forEach((k, v) -> copy.put(k, copy(v)));
+        return copy;
+    }
+
+    // Arrays are compared by identity: they are copied into lists, compared by content
+    private static Object copy(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value.getClass().isArray()) {
+            List<Object> copy = new ArrayList<>(Array.getLength(value));
+            for (int i = 0; i < Array.getLength(value); i++) {
+                copy.add(copy(Array.get(value, i)));
+            }
+            return copy;
+        }
+        if (value instanceof Collection) {
+            List<Object> copy = new ArrayList<>(((Collection<?>) value).size());
+            ((Collection<?>) value).forEach(element -> copy.add(copy(element)));
+            return copy;
+        }
+        if (value instanceof Map) {
+            return copyMap((Map<?, ?>) value);
+        }
+        return value;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof RequestKey)) {
+            return false;
+        }
+        RequestKey other = (RequestKey) obj;
+        return hash == other.hash
+                && Objects.equals(query, other.query)
+                && Objects.equals(variables, other.variables)
+                && Objects.equals(uri, other.uri)
+                && Objects.equals(headers, other.headers);
+    }
+
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.slf4j.LoggerFactory;
+import org.worldline.dynaql.impl.DynaQLRequest;
+
+/**
+ * An in-memory cache of query responses, shared by the invocations it is
+ * configured on with HttpConfiguration.RESPONSE_CACHE.
+ *
+ * Entries are evicted in LRU order once maxEntries is reached, and expire
+ * after a TTL which can be set per operation name. An expired entry is still
+ * served during the stale-while-revalidate window while it is refreshed in the
+ * background. Only queries answered without errors are cached, mutations never
+ * are.
+ *
+ * @author jefrajames
+ */
+public class ResponseCache {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(ResponseCache.class);
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final long staleNanos;
+    private final Map<String, Long> operationTtlNanos;
+
+    // Access ordered: the eldest entry is the least recently used
+    private final LinkedHashMap<RequestKey, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private ResponseCache(Builder builder) {
+        this.maxEntries = builder.maxEntries;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(builder.ttl);
+        this.staleNanos = TimeUnit.MILLISECONDS.toNanos(builder.staleWhileRevalidate);
+        this.operationTtlNanos = new HashMap<>();
+        builder.operationTtls.forEach((k, v) -> operationTtlNanos.put(k, TimeUnit.MILLISECONDS.toNanos(v)));
+        this.entries = new LinkedHashMap<RequestKey, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<RequestKey, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    // Returns the TTL of the request, 0 if it must not be cached
+    private long ttlOf(DynaQLRequest request) {
+        if (!request.isQuery()) {
+            return 0;
+        }
+        String operationName = request.getOperationName();
+        Long ttl = operationName != null ? operationTtlNanos.get(operationName) : null;
+        return ttl != null ? ttl : ttlNanos;
+    }
+
+    /**
+     * @param uri the endpoint
+     * @param headers the HTTP headers of the request, part of the key
+     * @param request the GraphQL request
+     * @param load invokes the request
+     * @param refresh invokes the request asynchronously
+     * @return the cached or loaded response
+     */
+    HttpResponse get(URI uri, Map<String, String> headers, DynaQLRequest request,
+            Supplier<HttpResponse> load, Supplier<CompletableFuture<HttpResponse>> refresh) {
+
+        long ttl = ttlOf(request);
+        if (ttl <= 0) {
+            return load.get();
+        }
+
+        RequestKey key = new RequestKey(uri, headers, request);
+        long now = System.nanoTime();
+
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+
+        if (entry != null) {
+            if (now - entry.expiresAt < 0) {
+                hits.increment();
+                return entry.response;
+            }
+            if (now - entry.expiresAt - staleNanos < 0) {
+                staleHits.increment();
+                if (entry.refreshing.compareAndSet(false, true)) {
+                    log.debug("Refreshing stale response");
+                    refresh.get().whenComplete((response, ex) -> {
+                        if (ex != null) {
+                            log.debug("Unable to refresh a stale response", ex);
+                        }
+                        // Another refresh may be attempted while the response is stale
+                        if (ex != null || !put(key, response, ttl)) {
+                            entry.refreshing.set(false);
+                        }
+                    });
+                }
+                return entry.response;
+            }
+        }
+
+        misses.increment();
+        HttpResponse response = load.get();
+        put(key, response, ttl);
+        return response;
+    }
+
+    // Returns false if the response is not cached
+    private boolean put(RequestKey key, HttpResponse response, long ttl) {
+        if (response.getGraphQLResponse() == null || response.getGraphQLResponse().hasError()) {
+            return false;
+        }
+        Entry entry = new Entry(response, System.nanoTime() + ttl);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        return true;
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getStaleHitCount() {
+        return staleHits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseCache{" + "maxEntries=" + maxEntries + ", size=" + size() + ", hits=" + hits + ", staleHits=" + staleHits + ", misses=" + misses + '}';
+    }
+
+    private static final class Entry {
+
+        private final HttpResponse response;
+        private final long expiresAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(HttpResponse response, long expiresAt) {
+            this.response = response;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public static class Builder {
+
+        private int maxEntries = 1000;
+        private long ttl = 10_000L;
+        private long staleWhileRevalidate;
+        private final Map<String, Long> operationTtls = new HashMap<>();
+
+        private Builder() {
+        }
+
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * @param ttl the default time to live in ms
+         */
+        public Builder ttl(long ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        /**
+         * @param operationName the name of a query operation
+         * @param ttl its time to live in ms, 0 not to cache it
+         */
+        public Builder ttl(String operationName, long ttl) {
+            this.operationTtls.put(operationName, ttl);
+            return this;
+        }
+
+        /**
+         * @param staleWhileRevalidate how long in ms an expired response is still served while refreshed
+         */
+        public Builder staleWhileRevalidate(long staleWhileRevalidate) {
+            this.staleWhileRevalidate = staleWhileRevalidate;
+            return this;
+        }
+
+        public ResponseCache build() {
+            if (maxEntries <= 0) {
+                throw new IllegalArgumentException("Illegal maxEntries value: " + maxEntries);
+            }
+            return new ResponseCache(this);
+        }
+    }
+
+}
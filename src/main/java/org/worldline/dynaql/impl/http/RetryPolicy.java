@@ -0,0 +1,194 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retries the failed requests of the invocations it is configured on with
+ * HttpConfiguration.RETRY_POLICY.
+ *
+ * Queries, and mutations marked with HttpConfiguration.IDEMPOTENT, are retried
+ * on network failures and on the retryable statuses. Other mutations are only
+ * retried when the connection could not be established, since the server has
+ * not received them. Retries wait for an exponential backoff with full jitter.
+ *
+ * The retry Budget is shared by all the invocations of the policy: each of
+ * them earns budgetRatio retry, and up to minRetries unused ones are saved
+ * for a low traffic.
+ *
+ * @author jefrajames
+ */
+public class RetryPolicy {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(RetryPolicy.class);
+
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final Set<Integer> retryableStatuses;
+    private final Budget budget;
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoff = builder.initialBackoff;
+        this.maxBackoff = builder.maxBackoff;
+        this.retryableStatuses = builder.retryableStatuses;
+        this.budget = new Budget(builder.budgetRatio, builder.minRetries);
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Called once per invocation, whatever its number of attempts.
+     */
+    void deposit() {
+        budget.deposit();
+    }
+
+    private boolean isRetryable(Throwable failure, boolean idempotent) {
+        if (failure instanceof CircuitBreakerOpenException) {
+            return false;
+        }
+        if (!idempotent) {
+            return Failures.isConnectFailure(failure);
+        }
+        int statusCode = Failures.statusCode(failure);
+        return statusCode > 0 ? retryableStatuses.contains(statusCode) : Failures.isServerFailure(failure);
+    }
+
+    /**
+     * @param failure the failure of the attempt
+     * @param attempt the number of the failed attempt, starting at 1
+     * @param idempotent true if the request can be sent again once received by the server
+     * @return true if the request must be sent again, after backoff(attempt)
+     */
+    boolean shouldRetry(Throwable failure, int attempt, boolean idempotent) {
+        if (attempt >= maxAttempts || !isRetryable(failure, idempotent)) {
+            return false;
+        }
+        if (!budget.withdraw()) {
+            budgetExhausted.increment();
+            log.debug("Retry budget exhausted, not retrying: " + failure);
+            return false;
+        }
+        retries.increment();
+        log.debug("Retrying after attempt " + attempt + ": " + failure);
+        return true;
+    }
+
+    /**
+     * @param attempt the number of the failed attempt, starting at 1
+     * @return the time to wait before the next attempt in milliseconds
+     */
+    long backoff(int attempt) {
+        long ceiling = initialBackoff << Math.min(attempt - 1, 30);
+        return ThreadLocalRandom.current().nextLong(Math.min(maxBackoff, ceiling) + 1);
+    }
+
+    /**
+     * @return the number of retries sent
+     */
+    public long getRetryCount() {
+        return retries.sum();
+    }
+
+    /**
+     * @return the number of retries given up because the budget was exhausted
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy{" + "maxAttempts=" + maxAttempts + ", initialBackoff=" + initialBackoff + ", maxBackoff=" + maxBackoff
+                + ", retryableStatuses=" + retryableStatuses + ", retries=" + retries + ", budgetExhausted=" + budgetExhausted + '}';
+    }
+
+    public static class Builder {
+
+        private int maxAttempts = 3;
+        private long initialBackoff = 100L;
+        private long maxBackoff = 2_000L;
+        private Set<Integer> retryableStatuses = new HashSet<>(Arrays.asList(502, 503, 504));
+        private double budgetRatio = 0.2;
+        private int minRetries = 10;
+
+        private Builder() {
+        }
+
+        /**
+         * @param maxAttempts the maximum number of attempts, the first one included
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("Illegal maxAttempts: " + maxAttempts);
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param initialBackoff the maximum wait before the first retry in milliseconds, doubled for each retry
+         * @param maxBackoff the maximum wait before any retry in milliseconds
+         */
+        public Builder backoff(long initialBackoff, long maxBackoff) {
+            if (initialBackoff < 0 || maxBackoff < initialBackoff) {
+                throw new IllegalArgumentException("Illegal backoff: " + initialBackoff + ", " + maxBackoff);
+            }
+            this.initialBackoff = initialBackoff;
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        /**
+         * @param statusCodes the HTTP statuses retried, 502, 503 and 504 by default
+         */
+        public Builder retryableStatuses(Integer... statusCodes) {
+            this.retryableStatuses = new HashSet<>(Arrays.asList(statusCodes));
+            return this;
+        }
+
+        /**
+         * @param budgetRatio the retries earned by each invocation, 0.2 by default
+         * @param minRetries the retries kept in reserve for a low traffic, 10 by default
+         */
+        public Builder budget(double budgetRatio, int minRetries) {
+            if (budgetRatio < 0 || minRetries < 0) {
+                throw new IllegalArgumentException("Illegal budget: " + budgetRatio + ", " + minRetries);
+            }
+            this.budgetRatio = budgetRatio;
+            this.minRetries = minRetries;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+import javax.json.stream.JsonParser;
+import javax.json.stream.JsonParser.Event;
+import javax.json.stream.JsonParsingException;
+import org.slf4j.LoggerFactory;
+import org.worldline.dynaql.impl.DynaQLResponse;
+import org.worldline.dynaql.impl.JsonResponseParser;
+
+/**
+ * A WebSocket connection speaking the graphql-transport-ws protocol, shared
+ * by all the subscriptions to the same endpoint with the same headers.
+ *
+ * The connection is opened by the first subscription and closed once the
+ * last one has ended. Messages are decoded as they are received, the payload
+ * of an event straight into a DynaQLResponse.
+ *
+ * @author jefrajames
+ */
+class SubscriptionConnection implements WebSocket.Listener {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(SubscriptionConnection.class);
+
+    static final String PROTOCOL = "graphql-transport-ws";
+
+    // Guarded by itself
+    private static final Map<List<Object>, SubscriptionConnection> CONNECTIONS = new HashMap<>();
+
+    private final List<Object> key;
+    private final Map<String, GraphQLSubscription> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+
+    // Completed by connection_ack
+    private final CompletableFuture<WebSocket> acknowledged = new CompletableFuture<>();
+
+    // The tail of the outgoing messages, a WebSocket sends one at a time. Guarded by this
+    private CompletableFuture<WebSocket> sending;
+
+    // Only used by the WebSocket thread
+    private final StringBuilder message = new StringBuilder();
+
+    private SubscriptionConnection(List<Object> key, HttpConfiguration configuration, URI uri, Map<String, String> headers) {
+        this.key = key;
+
+        HttpClient httpClient = (HttpClient) key.get(3);
+        WebSocket.Builder builder = httpClient.newWebSocketBuilder().subprotocols(PROTOCOL);
+
+        Long connectTimeout = (Long) configuration.get(HttpConfiguration.CONNECT_TIMEOUT);
+        if (connectTimeout != null) {
+            builder.connectTimeout(Duration.ofMillis(connectTimeout));
+        }
+
+        // Set the HTTP headers of the handshake
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (Http2Transport.RESTRICTED_HEADERS.contains(header.getKey()) || header.getKey().regionMatches(true, 0, "Sec-WebSocket-", 0, 14)) {
+                log.debug("Header ignored by the WebSocket handshake: " + header.getKey());
+            } else {
+                builder.header(header.getKey(), header.getValue());
+            }
+        }
+
+        CompletableFuture<WebSocket> connected = builder.buildAsync(webSocketUri(uri), this);
+        connected.whenComplete((webSocket, ex) -> {
+            if (ex != null) {
+                acknowledged.completeExceptionally(ex);
+            }
+        });
+
+        Long readTimeout = (Long) configuration.get(HttpConfiguration.READ_TIMEOUT);
+        if (readTimeout != null) {
+            acknowledged.orTimeout(readTimeout, TimeUnit.MILLISECONDS);
+        }
+        acknowledged.whenComplete((webSocket, ex) -> {
+            if (ex != null) {
+                fail(ex);
+            }
+        });
+
+        sending = connected;
+        JsonObject initPayload = (JsonObject) key.get(2);
+        send(initPayload == null ? "{\"type\":\"connection_init\"}" : "{\"type\":\"connection_init\",\"payload\":" + initPayload + "}");
+    }
+
+    // The WebSocket endpoint is the GraphQL one, with the matching scheme
+    private static URI webSocketUri(URI uri) {
+        try {
+            return new URI("https".equalsIgnoreCase(uri.getScheme()) ? "wss" : "ws", uri.getSchemeSpecificPart(), uri.getFragment());
+        } catch (URISyntaxException ex) {
+            throw new IllegalArgumentException("Illegal URI value: " + uri, ex);
+        }
+    }
+
+    /**
+     * Registers the subscription on the connection to the endpoint, opened if
+     * needed, and starts it once the connection is acknowledged.
+     */
+    static void subscribe(HttpConfiguration configuration, URI uri, Map<String, String> headers, GraphQLSubscription subscription) {
+
+        List<Object> key = Arrays.asList(uri, new HashMap<>(headers),
+                configuration.get(HttpConfiguration.SUBSCRIPTION_INIT_PAYLOAD), Http2Transport.getHttpClient(configuration));
+
+        SubscriptionConnection connection;
+        String id;
+        synchronized (CONNECTIONS) {
+            connection = CONNECTIONS.computeIfAbsent(key, k -> new SubscriptionConnection(k, configuration, uri, headers));
+            id = String.valueOf(connection.ids.incrementAndGet());
+            if (!subscription.attach(connection, id)) {
+                return; // Cancelled meanwhile
+            }
+            connection.subscriptions.put(id, subscription);
+        }
+
+        connection.acknowledged.whenComplete((webSocket, ex) -> {
+            if (ex == null) {
+                connection.start(subscription);
+            } else if (connection.subscriptions.remove(id, subscription)) {
+                subscription.onError(failure(ex)); // Failed before this subscription was registered
+            }
+        });
+    }
+
+    /**
+     * Ends all the subscriptions with an error and closes their connections.
+     */
+    static void closeAll() {
+        List<SubscriptionConnection> connections;
+        synchronized (CONNECTIONS) {
+            connections = new ArrayList<>(CONNECTIONS.values());
+            CONNECTIONS.clear();
+        }
+
+        HttpInvocationException failure = new HttpInvocationException("Subscription connection closed by the client");
+        for (SubscriptionConnection connection : connections) {
+            for (GraphQLSubscription subscription : connection.subscriptions.values()) {
+                if (connection.subscriptions.remove(subscription.getId(), subscription)) {
+                    subscription.onError(failure);
+                }
+            }
+            connection.close();
+        }
+    }
+
+    private synchronized void start(GraphQLSubscription subscription) {
+
+        String id = subscription.getId();
+        if (subscriptions.get(id) != subscription) {
+            return; // Cancelled meanwhile
+        }
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(("{\"id\":\"" + id + "\",\"type\":\"subscribe\",\"payload\":").getBytes(StandardCharsets.UTF_8));
+            subscription.getGraphQLRequest().writeJson(out);
+            out.write('}');
+            log.debug("Starting subscription " + id);
+            send(new String(out.toByteArray(), StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            subscriptions.remove(id);
+            subscription.onError(new HttpInvocationException(ex));
+        }
+    }
+
+    /**
+     * @param notifyServer true to send a complete message, if the server has not completed the subscription yet
+     */
+    void unsubscribe(GraphQLSubscription subscription, boolean notifyServer) {
+
+        String id = subscription.getId();
+        synchronized (this) {
+            if (!subscriptions.remove(id, subscription)) {
+                return; // Already ended
+            }
+            if (notifyServer && acknowledged.isDone() && !acknowledged.isCompletedExceptionally()) {
+                send("{\"id\":\"" + id + "\",\"type\":\"complete\"}");
+            }
+        }
+
+        synchronized (CONNECTIONS) {
+            if (!subscriptions.isEmpty() || !CONNECTIONS.remove(key, this)) {
+                return;
+            }
+        }
+        close();
+    }
+
+    private synchronized void send(String text) {
+        sending = sending.thenCompose(webSocket -> webSocket.sendText(text, true));
+        sending.whenComplete((webSocket, ex) -> {
+            if (ex != null) {
+                fail(ex);
+            }
+        });
+    }
+
+    private synchronized void close() {
+        log.debug("Closing the subscription connection to " + key.get(0));
+        sending.thenCompose(webSocket -> webSocket.sendClose(WebSocket.NORMAL_CLOSURE, ""));
+    }
+
+    private static HttpInvocationException failure(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        return cause instanceof HttpInvocationException ? (HttpInvocationException) cause : new HttpInvocationException(cause);
+    }
+
+    // Ends all the subscriptions of a broken connection
+    private void fail(Throwable ex) {
+
+        HttpInvocationException failure = failure(ex);
+
+        acknowledged.completeExceptionally(failure);
+
+        synchronized (CONNECTIONS) {
+            CONNECTIONS.remove(key, this);
+        }
+
+        for (GraphQLSubscription subscription : subscriptions.values()) {
+            if (subscriptions.remove(subscription.getId(), subscription)) {
+                subscription.onError(failure);
+            }
+        }
+    }
+
+    @Override
+    public void onOpen(WebSocket webSocket) {
+        log.debug("Subscription connection opened to " + key.get(0));
+        webSocket.request(1);
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+
+        // A message can be received in several parts
+        message.append(data);
+        if (last) {
+            String text = message.toString();
+            message.setLength(0);
+            try {
+                onMessage(webSocket, text);
+            } catch (RuntimeException ex) {
+                log.warn("Invalid subscription message: " + text, ex);
+            }
+        }
+
+        // One message at a time: the events are buffered by the subscriptions
+        webSocket.request(1);
+        return null;
+    }
+
+    private void onMessage(WebSocket webSocket, String text) {
+
+        String id = null;
+        String type = null;
+        DynaQLResponse response = null;
+        JsonValue payload = null;
+
+        try (JsonParser parser = JsonResponseParser.createParser(new StringReader(text))) {
+
+            if (parser.next() != Event.START_OBJECT) {
+                throw new JsonParsingException("A graphql-transport-ws message must be a JSON object", parser.getLocation());
+            }
+
+            while (parser.next() == Event.KEY_NAME) {
+                String name = parser.getString();
+                if ("payload".equals(name) && "next".equals(type)) {
+                    // The usual order: the event is parsed without any intermediate tree
+                    response = JsonResponseParser.parse(parser);
+                    continue;
+                }
+                parser.next();
+                switch (name) {
+                    case "id":
+                        id = parser.getString();
+                        break;
+                    case "type":
+                        type = parser.getString();
+                        break;
+                    case "payload":
+                        payload = parser.getValue();
+                        break;
+                    default:
+                        parser.getValue(); // Ignored
+                }
+            }
+        }
+
+        if (type == null) {
+            throw new JsonParsingException("graphql-transport-ws message without type", null);
+        }
+
+        switch (type) {
+            case "connection_ack":
+                log.debug("Subscription connection acknowledged by " + key.get(0));
+                acknowledged.complete(webSocket);
+                break;
+            case "ping":
+                send("{\"type\":\"pong\"}");
+                break;
+            case "pong":
+                break;
+            case "next":
+                GraphQLSubscription subscription = subscriptions.get(id);
+                if (response == null && payload instanceof JsonObject) {
+                    response = JsonResponseParser.parse(JsonResponseParser.createParser(new StringReader(payload.toString())));
+                }
+                if (subscription != null && response != null) {
+                    subscription.onNext(response);
+                }
+                break;
+            case "error":
+                subscription = id != null ? subscriptions.get(id) : null;
+                if (subscription != null) {
+                    unsubscribe(subscription, false);
+                    // The operation has been rejected: its errors are delivered like those of a response
+                    DynaQLResponse errors = new DynaQLResponse();
+                    if (payload instanceof JsonArray) {
+                        errors.setErrors(JsonResponseParser.readErrors((JsonArray) payload));
+                    }
+                    subscription.onNext(errors);
+                    subscription.onComplete();
+                }
+                break;
+            case "complete":
+                subscription = id != null ? subscriptions.get(id) : null;
+                if (subscription != null) {
+                    unsubscribe(subscription, false);
+                    subscription.onComplete();
+                }
+                break;
+            default:
+                log.debug("Unknown graphql-transport-ws message ignored: " + type);
+        }
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        log.debug("Subscription connection closed: " + statusCode + " " + reason);
+        if (!subscriptions.isEmpty() || !acknowledged.isDone()) {
+            fail(new HttpInvocationException("Subscription connection closed by the server: " + statusCode + " " + reason));
+        }
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        log.debug("Subscription connection failure", error);
+        fail(error);
+    }
+
+    @Override
+    public String toString() {
+        return "SubscriptionConnection{" + "uri=" + key.get(0) + ", subscriptions=" + subscriptions.keySet() + '}';
+    }
+
+}
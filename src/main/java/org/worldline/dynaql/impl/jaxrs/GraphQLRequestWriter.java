@@ -15,14 +15,16 @@
  */
 package org.worldline.dynaql.impl.jaxrs;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
-import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.zip.GZIPOutputStream;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyWriter;
@@ -42,6 +44,25 @@ public class GraphQLRequestWriter implements MessageBodyWriter<DynaQLRequest> {
 
     private static final org.slf4j.Logger log = LoggerFactory.getLogger(GraphQLRequestWriter.class);
 
+    // Null when compression is disabled
+    private final Integer compressionThreshold;
+
+    public GraphQLRequestWriter() {
+        this(null);
+    }
+
+    /**
+     * To be registered as an instance to compress requests: bodies of at
+     * least compressionThreshold bytes are sent gzip-compressed, and
+     * compressed responses are accepted (the GraphQLResponseReader decodes
+     * them).
+     *
+     * @param compressionThreshold the minimum size of a compressed body, null to disable compression
+     */
+    public GraphQLRequestWriter(Integer compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
     @Override
     public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
         return type == DynaQLRequest.class;
@@ -49,12 +70,32 @@ public class GraphQLRequestWriter implements MessageBodyWriter<DynaQLRequest> {
 
     @Override
     public void writeTo(DynaQLRequest request, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
-        String jsonRequest = request.toJson();
-        log.warn("Sending GraphQL request: " + jsonRequest);
-        Writer writer = new PrintWriter(entityStream);
-        writer.write(jsonRequest);
-        writer.flush();
-        writer.close();
+        if (log.isDebugEnabled()) {
+            log.debug("Sending GraphQL request: " + request.toJson());
+        }
+
+        if (compressionThreshold == null) {
+            // UTF-8 bytes are written directly, the query part is pre-serialized
+            request.writeJson(entityStream);
+            entityStream.flush();
+            return;
+        }
+
+        httpHeaders.putIfAbsent(HttpHeaders.ACCEPT_ENCODING, Collections.singletonList("gzip, deflate"));
+
+        // Headers can still be changed: the size decides the encoding
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        request.writeJson(out);
+
+        if (out.size() < compressionThreshold) {
+            out.writeTo(entityStream);
+        } else {
+            httpHeaders.putSingle(HttpHeaders.CONTENT_ENCODING, "gzip");
+            GZIPOutputStream gzip = new GZIPOutputStream(entityStream);
+            out.writeTo(gzip);
+            gzip.finish();
+        }
+        entityStream.flush();
     }
 
 }
@@ -15,21 +15,18 @@
  */
 package org.worldline.dynaql.impl.jaxrs;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
-import java.util.ArrayList;
-import java.util.List;
-import javax.json.Json;
-import javax.json.JsonArray;
-import javax.json.JsonObject;
-import javax.json.JsonReader;
-import javax.json.bind.Jsonb;
-import javax.json.bind.JsonbBuilder;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import javax.json.bind.JsonbConfig;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.ext.MessageBodyReader;
@@ -37,8 +34,7 @@ import javax.ws.rs.ext.Provider;
 import org.slf4j.LoggerFactory;
 import org.worldline.dynaql.api.GraphQLResponse;
 import org.worldline.dynaql.impl.DynaQLResponse;
-import org.worldline.dynaql.impl.DynaQLResponse.DynaQLError;
-import org.worldline.dynaql.api.GraphQLResponse.GraphQLError;
+import org.worldline.dynaql.impl.JsonResponseParser;
 
 /**
  * This is an implementation specific class and should not be in the
@@ -50,10 +46,24 @@ import org.worldline.dynaql.api.GraphQLResponse.GraphQLError;
 @Consumes("application/json")
 public class GraphQLResponseReader implements MessageBodyReader<GraphQLResponse> {
 
-    private static final int MAX_LOG_LENGTH = 128;
-
     private static final org.slf4j.Logger log = LoggerFactory.getLogger(GraphQLResponseReader.class);
 
+    private final JsonbConfig jsonbConfig;
+
+    public GraphQLResponseReader() {
+        this(null);
+    }
+
+    /**
+     * To be registered as an instance to map the data with a specific JSON-B
+     * configuration.
+     *
+     * @param jsonbConfig the JSON-B configuration used by getObject and getList
+     */
+    public GraphQLResponseReader(JsonbConfig jsonbConfig) {
+        this.jsonbConfig = jsonbConfig;
+    }
+
     @Override
     public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
         return type == GraphQLResponse.class;
@@ -64,37 +74,39 @@ public class GraphQLResponseReader implements MessageBodyReader<GraphQLResponse>
             MediaType mediaType, MultivaluedMap<String, String> httpHeaders,
             InputStream entityStream) throws IOException, WebApplicationException {
 
-        JsonReader jsonReader = Json.createReader(new InputStreamReader(entityStream));
-
-        JsonObject jsonResponse = jsonReader.readObject();
-        log.warn("Received GraphQL response: "
-                + (jsonResponse.toString().length() <= MAX_LOG_LENGTH ? jsonResponse.toString() : jsonResponse.toString().substring(0, MAX_LOG_LENGTH) + " etc..."));
-
-        DynaQLResponse graphQLResponse = new DynaQLResponse();
+        // The payload is not logged, see WireTapFilter
+        DynaQLResponse graphQLResponse = JsonResponseParser.parse(decode(httpHeaders, entityStream));
+        log.debug("Received GraphQL response");
 
-        if (jsonResponse.containsKey("errors")) {
+        graphQLResponse.setJsonbConfig(jsonbConfig);
+        if (graphQLResponse.hasError()) {
             log.warn("GraphQL errors detected in the response");
-            JsonArray rawErrors = jsonResponse.getJsonArray("errors");
-            Jsonb jsonb = JsonbBuilder.create();
-            List<GraphQLError> errors = jsonb.fromJson(rawErrors.toString(), new ArrayList<DynaQLError>() {
-            }.getClass().getGenericSuperclass());
-            graphQLResponse.setErrors(errors);
-            try {
-                jsonb.close();
-            } catch (Exception ignore) {
-            } // Ugly!!!
         }
 
-        if (jsonResponse.containsKey("data")) {
-            if (!jsonResponse.isNull("data")) {
-                JsonObject data = jsonResponse.getJsonObject("data");
-                graphQLResponse.setData(data);
-            } else {
-                log.warn("No data in GraphQLResponse");
-            }
+        return graphQLResponse;
+    }
+
+    // Decompresses the content unless a client interceptor already did it
+    private static InputStream decode(MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException {
+        String encoding = httpHeaders.getFirst(HttpHeaders.CONTENT_ENCODING);
+        if (encoding == null) {
+            return entityStream;
         }
+        encoding = encoding.trim().toLowerCase(Locale.ROOT);
 
-        return graphQLResponse;
+        InputStream content = entityStream.markSupported() ? entityStream : new BufferedInputStream(entityStream);
+        content.mark(2);
+        int first = content.read();
+        int second = content.read();
+        content.reset();
+
+        if (("gzip".equals(encoding) || "x-gzip".equals(encoding)) && first == 0x1f && second == 0x8b) {
+            return new GZIPInputStream(content);
+        }
+        if ("deflate".equals(encoding) && (first & 0x0f) == 8 && ((first << 8) | second) % 31 == 0) {
+            return new InflaterInputStream(content);
+        }
+        return content;
     }
 
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.jaxrs;
+
+import static javax.ws.rs.client.Entity.json;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.core.StreamingOutput;
+import org.slf4j.LoggerFactory;
+import org.worldline.dynaql.api.GraphQLRequest;
+import org.worldline.dynaql.api.GraphQLResponse;
+import org.worldline.dynaql.impl.DynaQLRequest;
+import org.worldline.dynaql.impl.PersistedQueries;
+
+/**
+ * Posts GraphQL requests with the Automatic Persisted Queries protocol over a
+ * JAX-RS client: the hash of the query is sent first, and the query text only
+ * if the server does not know it yet.
+ *
+ * The GraphQLResponseReader must be registered on the client.
+ *
+ * @author jefrajames
+ */
+public final class PersistedQueryInvoker {
+
+    private static final org.slf4j.Logger log = LoggerFactory.getLogger(PersistedQueryInvoker.class);
+
+    private PersistedQueryInvoker() {
+    }
+
+    /**
+     * @param invocationBuilder the target of the request, it may be used twice
+     * @param graphQLRequest the request to send
+     * @return the response
+     */
+    public static GraphQLResponse post(Invocation.Builder invocationBuilder, GraphQLRequest graphQLRequest) {
+
+        if (!(graphQLRequest instanceof DynaQLRequest)) {
+            return invocationBuilder.post(json(graphQLRequest), GraphQLResponse.class);
+        }
+
+        DynaQLRequest request = (DynaQLRequest) graphQLRequest;
+
+        GraphQLResponse graphQLResponse = invocationBuilder.post(json(persisted(request, false)), GraphQLResponse.class);
+
+        if (PersistedQueries.isNotFound(graphQLResponse)) {
+            log.debug("Persisted query not found, sending its text");
+            return invocationBuilder.post(json(persisted(request, true)), GraphQLResponse.class);
+        }
+
+        if (PersistedQueries.isNotSupported(graphQLResponse)) {
+            log.debug("Persisted queries not supported, sending the query");
+            return invocationBuilder.post(json(request), GraphQLResponse.class);
+        }
+
+        return graphQLResponse;
+    }
+
+    private static StreamingOutput persisted(DynaQLRequest request, boolean withQuery) {
+        return out -> request.writePersistedJson(out, withQuery);
+    }
+
+}
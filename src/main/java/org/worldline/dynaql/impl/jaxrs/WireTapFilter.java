@@ -0,0 +1,72 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.jaxrs;
+
+import javax.ws.rs.client.ClientRequestContext;
+import javax.ws.rs.client.ClientRequestFilter;
+import javax.ws.rs.client.ClientResponseContext;
+import javax.ws.rs.client.ClientResponseFilter;
+import org.worldline.dynaql.impl.DynaQLRequest;
+import org.worldline.dynaql.impl.WireTap;
+
+/**
+ * Captures the sampled GraphQL exchanges of a JAX-RS client, to be registered
+ * as an instance along with the GraphQLRequestWriter and GraphQLResponseReader.
+ *
+ * The response is captured as received: compressed if the server compressed
+ * it and no interceptor decoded it.
+ *
+ * @author jefrajames
+ */
+public class WireTapFilter implements ClientRequestFilter, ClientResponseFilter {
+
+    private static final String CAPTURE = WireTap.Capture.class.getName();
+
+    private final WireTap wireTap;
+
+    public WireTapFilter(WireTap wireTap) {
+        this.wireTap = wireTap;
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext) {
+        if (!(requestContext.getEntity() instanceof DynaQLRequest)) {
+            return;
+        }
+
+        WireTap.Capture capture = wireTap.sample((DynaQLRequest) requestContext.getEntity(), requestContext.getUri());
+        if (capture != null) {
+            requestContext.setProperty(CAPTURE, capture);
+            requestContext.setEntityStream(capture.tapRequest(requestContext.getEntityStream()));
+        }
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) {
+        WireTap.Capture capture = (WireTap.Capture) requestContext.getProperty(CAPTURE);
+        if (capture == null) {
+            return;
+        }
+
+        if (responseContext.hasEntity()) {
+            // Completed once read by the GraphQLResponseReader
+            responseContext.setEntityStream(capture.tapResponse(responseContext.getEntityStream()));
+        } else {
+            capture.complete();
+        }
+    }
+
+}
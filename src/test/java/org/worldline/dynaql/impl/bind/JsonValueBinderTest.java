@@ -0,0 +1,565 @@
+/*
+ * Copyright 2020 jefrajames.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.worldline.dynaql.impl.bind;
+
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.json.Json;
+import javax.json.JsonValue;
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbConfig;
+import javax.json.bind.adapter.JsonbAdapter;
+import javax.json.bind.annotation.JsonbCreator;
+import javax.json.bind.annotation.JsonbDateFormat;
+import javax.json.bind.annotation.JsonbProperty;
+import javax.json.bind.annotation.JsonbTransient;
+import javax.json.bind.annotation.JsonbTypeAdapter;
+import javax.json.bind.config.PropertyNamingStrategy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Binds the same payloads through JsonValueBinder and through JSON-B: both
+ * results must be equal, compared through their JSON-B serialization.
+ *
+ * @author jefrajames
+ */
+public class JsonValueBinderTest {
+
+    // Holds the generic types bound by the tests
+    private static Map<String, List<Item>> itemsByCategory;
+    private static List<List<Integer>> matrix;
+    private static Page<Item> page;
+
+    private static Object assertSameBinding(JsonbConfig config, String json, Type type) {
+        Jsonb jsonb = JsonbRegistry.getJsonb(config);
+        Object expected = jsonb.fromJson(json, type);
+
+        Object actual = JsonbRegistry.getBinder(config).fromJsonValue(parse(json), type);
+
+        // Maps keep the order of the document, their implementation may differ
+        if (!(expected instanceof Map)) {
+            assertSame(actual.getClass(), expected.getClass());
+        }
+        assertEquals(parse(jsonb.toJson(actual)), parse(jsonb.toJson(expected)));
+        return actual;
+    }
+
+    private static JsonValue parse(String json) {
+        return Json.createReader(new StringReader(json)).readValue();
+    }
+
+    private static Type typeOf(String field) throws NoSuchFieldException {
+        return JsonValueBinderTest.class.getDeclaredField(field).getGenericType();
+    }
+
+    @Test
+    public void testAnnotatedProperties() {
+
+        Item item = (Item) assertSameBinding(null,
+                "{\"id\":7,\"item_name\":\"pen\",\"secret\":\"hidden\",\"price\":1.50,\"available\":true,"
+                + "\"tags\":[\"office\",\"school\"],\"added\":\"01/02/2020\",\"unknown\":{\"a\":1}}",
+                Item.class);
+
+        assertEquals(item.getName(), "pen");
+        assertEquals(item.getSecret(), null);
+        assertEquals(item.getAdded(), LocalDate.of(2020, 2, 1));
+    }
+
+    @Test
+    public void testCreator() {
+
+        Money money = (Money) assertSameBinding(null, "{\"amount\":12.5,\"currency\":\"EUR\"}", Money.class);
+
+        assertEquals(money.getAmount(), new BigDecimal("12.5"));
+        assertEquals(money.getCurrency(), "EUR");
+    }
+
+    @Test
+    public void testDates() {
+
+        String json = "{\"date\":\"2020-03-14\",\"dateTime\":\"2020-03-14T15:09:26\","
+                + "\"offsetDateTime\":\"2020-03-14T15:09:26+01:00\",\"formatted\":\"14/03/2020\"}";
+        Event event = (Event) assertSameBinding(null, json, Event.class);
+        assertEquals(event.getDate(), LocalDate.of(2020, 3, 14));
+        assertEquals(event.getFormatted(), LocalDate.of(2020, 3, 14));
+
+        // The configured format applies to the properties with no format of their own
+        JsonbConfig config = new JsonbConfig().withDateFormat("yyyy.MM.dd", Locale.ROOT);
+        Day day = (Day) assertSameBinding(config, "{\"date\":\"2020.03.14\",\"formatted\":\"14/03/2020\"}", Day.class);
+        assertEquals(day.getDate(), LocalDate.of(2020, 3, 14));
+        assertEquals(day.getFormatted(), LocalDate.of(2020, 3, 14));
+    }
+
+    @Test
+    public void testNamingStrategy() {
+
+        assertSameBinding(new JsonbConfig().withPropertyNamingStrategy(PropertyNamingStrategy.LOWER_CASE_WITH_UNDERSCORES),
+                "{\"first_name\":\"Jane\",\"last_name\":\"Doe\",\"birth_date\":\"1990-05-17\"}", Contact.class);
+        assertSameBinding(new JsonbConfig().withPropertyNamingStrategy(PropertyNamingStrategy.LOWER_CASE_WITH_DASHES),
+                "{\"first-name\":\"Jane\",\"last-name\":\"Doe\",\"birth-date\":\"1990-05-17\"}", Contact.class);
+        assertSameBinding(new JsonbConfig().withPropertyNamingStrategy(PropertyNamingStrategy.UPPER_CAMEL_CASE),
+                "{\"FirstName\":\"Jane\",\"LastName\":\"Doe\",\"BirthDate\":\"1990-05-17\"}", Contact.class);
+        assertSameBinding(new JsonbConfig().withPropertyNamingStrategy(PropertyNamingStrategy.UPPER_CAMEL_CASE_WITH_SPACES),
+                "{\"First Name\":\"Jane\",\"Last Name\":\"Doe\",\"Birth Date\":\"1990-05-17\"}", Contact.class);
+
+        Contact contact = (Contact) assertSameBinding(new JsonbConfig().withPropertyNamingStrategy(PropertyNamingStrategy.CASE_INSENSITIVE),
+                "{\"FIRSTNAME\":\"Jane\",\"lastname\":\"Doe\",\"birthDate\":\"1990-05-17\"}", Contact.class);
+        assertEquals(contact.getFirstName(), "Jane");
+        assertEquals(contact.getLastName(), "Doe");
+    }
+
+    @Test
+    public void testNulls() {
+
+        Item item = (Item) assertSameBinding(null,
+                "{\"item_name\":null,\"price\":null,\"available\":null,\"tags\":null,\"added\":null}", Item.class);
+        assertEquals(item.getName(), null);
+        assertEquals(item.getTags(), null);
+
+        // Yasson rejects a null primitive, the binder keeps its default value
+        item = JsonbRegistry.getBinder(null).fromJsonValue(parse("{\"id\":null,\"item_name\":\"pen\"}"), Item.class);
+        assertEquals(item.getId(), 0);
+        assertEquals(item.getName(), "pen");
+
+        assertSameBinding(null, "{\"lines\":[{\"id\":1},null],\"labels\":{\"a\":null}}", Order.class);
+    }
+
+    @Test
+    public void testNestedGenerics() throws NoSuchFieldException {
+
+        Order order = (Order) assertSameBinding(null,
+                "{\"lines\":[{\"id\":1,\"item_name\":\"pen\",\"tags\":[\"office\"]},{\"id\":2}],"
+                + "\"linesByCategory\":{\"office\":[{\"id\":1}],\"school\":[]},"
+                + "\"quantities\":[[1,2],[3]],\"labels\":{\"a\":\"b\"},\"codes\":[\"x\",\"y\",\"x\"],\"ids\":[4,5]}",
+                Order.class);
+        assertEquals(order.getLines().get(1).getId(), 2);
+        assertEquals(order.getLinesByCategory().get("office").get(0).getId(), 1);
+        assertEquals(order.getCodes().size(), 2);
+
+        assertSameBinding(null, "{\"office\":[{\"id\":1,\"item_name\":\"pen\"}],\"school\":[]}", typeOf("itemsByCategory"));
+        assertSameBinding(null, "[[1,2],[],[3]]", typeOf("matrix"));
+
+        Page<?> items = (Page<?>) assertSameBinding(null, "{\"total\":2,\"content\":[{\"id\":1},{\"id\":2}]}", typeOf("page"));
+        assertSame(items.getContent().get(0).getClass(), Item.class);
+    }
+
+    @Test
+    public void testAdapter() {
+
+        Shipment shipment = (Shipment) assertSameBinding(null,
+                "{\"reference\":\"S1\",\"weight\":\"12kg\",\"destination\":\"FR-Paris\"}", Shipment.class);
+        assertEquals(shipment.getWeight().getGrams(), 12_000L);
+        assertEquals(shipment.getDestination().getCountry(), "FR");
+
+        Location location = (Location) assertSameBinding(null, "\"BE-Brussels\"", Location.class);
+        assertEquals(location.getCity(), "Brussels");
+    }
+
+    @Test
+    public void testDelegatedConfiguration() {
+
+        // A configuration the binder does not implement is handled by JSON-B
+        JsonbConfig config = new JsonbConfig().withNullValues(true).withPropertyVisibilityStrategy(new PublicFields());
+        Item item = (Item) assertSameBinding(config, "{\"id\":3,\"item_name\":\"ink\"}", Item.class);
+        assertEquals(item.getId(), 3);
+    }
+
+    public static class Item {
+
+        private int id;
+
+        @JsonbProperty("item_name")
+        private String name;
+
+        @JsonbTransient
+        private String secret;
+
+        private BigDecimal price;
+        public Boolean available;
+        private List<String> tags;
+
+        @JsonbDateFormat("dd/MM/yyyy")
+        private LocalDate added;
+
+        public int getId() {
+            return id;
+        }
+
+        public void setId(int id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getSecret() {
+            return secret;
+        }
+
+        public void setSecret(String secret) {
+            this.secret = secret;
+        }
+
+        public BigDecimal getPrice() {
+            return price;
+        }
+
+        public void setPrice(BigDecimal price) {
+            this.price = price;
+        }
+
+        public List<String> getTags() {
+            return tags;
+        }
+
+        public void setTags(List<String> tags) {
+            this.tags = tags;
+        }
+
+        public LocalDate getAdded() {
+            return added;
+        }
+
+        public void setAdded(LocalDate added) {
+            this.added = added;
+        }
+    }
+
+    public static class Money {
+
+        private final BigDecimal amount;
+        private final String currency;
+
+        @JsonbCreator
+        public Money(@JsonbProperty("amount") BigDecimal amount, @JsonbProperty("currency") String currency) {
+            this.amount = amount;
+            this.currency = currency;
+        }
+
+        public BigDecimal getAmount() {
+            return amount;
+        }
+
+        public String getCurrency() {
+            return currency;
+        }
+    }
+
+    public static class Event {
+
+        private LocalDate date;
+        private LocalDateTime dateTime;
+        private OffsetDateTime offsetDateTime;
+
+        @JsonbDateFormat(value = "dd/MM/yyyy", locale = "en")
+        private LocalDate formatted;
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public void setDate(LocalDate date) {
+            this.date = date;
+        }
+
+        public LocalDateTime getDateTime() {
+            return dateTime;
+        }
+
+        public void setDateTime(LocalDateTime dateTime) {
+            this.dateTime = dateTime;
+        }
+
+        public OffsetDateTime getOffsetDateTime() {
+            return offsetDateTime;
+        }
+
+        public void setOffsetDateTime(OffsetDateTime offsetDateTime) {
+            this.offsetDateTime = offsetDateTime;
+        }
+
+        public LocalDate getFormatted() {
+            return formatted;
+        }
+
+        public void setFormatted(LocalDate formatted) {
+            this.formatted = formatted;
+        }
+    }
+
+    public static class Day {
+
+        private LocalDate date;
+
+        @JsonbDateFormat("dd/MM/yyyy")
+        private LocalDate formatted;
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public void setDate(LocalDate date) {
+            this.date = date;
+        }
+
+        public LocalDate getFormatted() {
+            return formatted;
+        }
+
+        public void setFormatted(LocalDate formatted) {
+            this.formatted = formatted;
+        }
+    }
+
+    public static class Contact {
+
+        private String firstName;
+        private String lastName;
+        private LocalDate birthDate;
+
+        public String getFirstName() {
+            return firstName;
+        }
+
+        public void setFirstName(String firstName) {
+            this.firstName = firstName;
+        }
+
+        public String getLastName() {
+            return lastName;
+        }
+
+        public void setLastName(String lastName) {
+            this.lastName = lastName;
+        }
+
+        public LocalDate getBirthDate() {
+            return birthDate;
+        }
+
+        public void setBirthDate(LocalDate birthDate) {
+            this.birthDate = birthDate;
+        }
+    }
+
+    public static class Order {
+
+        private List<Item> lines;
+        private Map<String, List<Item>> linesByCategory;
+        private List<List<Integer>> quantities;
+        private Map<String, String> labels;
+        private Set<String> codes;
+        private long[] ids;
+
+        public List<Item> getLines() {
+            return lines;
+        }
+
+        public void setLines(List<Item> lines) {
+            this.lines = lines;
+        }
+
+        public Map<String, List<Item>> getLinesByCategory() {
+            return linesByCategory;
+        }
+
+        public void setLinesByCategory(Map<String, List<Item>> linesByCategory) {
+            this.linesByCategory = linesByCategory;
+        }
+
+        public List<List<Integer>> getQuantities() {
+            return quantities;
+        }
+
+        public void setQuantities(List<List<Integer>> quantities) {
+            this.quantities = quantities;
+        }
+
+        public Map<String, String> getLabels() {
+            return labels;
+        }
+
+        public void setLabels(Map<String, String> labels) {
+            this.labels = labels;
+        }
+
+        public Set<String> getCodes() {
+            return codes;
+        }
+
+        public void setCodes(Set<String> codes) {
+            this.codes = codes;
+        }
+
+        public long[] getIds() {
+            return ids;
+        }
+
+        public void setIds(long[] ids) {
+            this.ids = ids;
+        }
+    }
+
+    public static class Page<T> {
+
+        private long total;
+        private List<T> content;
+
+        public long getTotal() {
+            return total;
+        }
+
+        public void setTotal(long total) {
+            this.total = total;
+        }
+
+        public List<T> getContent() {
+            return content;
+        }
+
+        public void setContent(List<T> content) {
+            this.content = content;
+        }
+    }
+
+    public static class Weight {
+
+        private final long grams;
+
+        public Weight(long grams) {
+            this.grams = grams;
+        }
+
+        public long getGrams() {
+            return grams;
+        }
+    }
+
+    public static class WeightAdapter implements JsonbAdapter<Weight, String> {
+
+        @Override
+        public String adaptToJson(Weight weight) {
+            return weight.getGrams() / 1000 + "kg";
+        }
+
+        @Override
+        public Weight adaptFromJson(String text) {
+            return new Weight(Long.parseLong(text.substring(0, text.length() - 2)) * 1000);
+        }
+    }
+
+    @JsonbTypeAdapter(LocationAdapter.class)
+    public static class Location {
+
+        private String country;
+        private String city;
+
+        public String getCountry() {
+            return country;
+        }
+
+        public void setCountry(String country) {
+            this.country = country;
+        }
+
+        public String getCity() {
+            return city;
+        }
+
+        public void setCity(String city) {
+            this.city = city;
+        }
+    }
+
+    public static class LocationAdapter implements JsonbAdapter<Location, String> {
+
+        @Override
+        public String adaptToJson(Location location) {
+            return location.getCountry() + "-" + location.getCity();
+        }
+
+        @Override
+        public Location adaptFromJson(String text) {
+            Location location = new Location();
+            location.setCountry(text.substring(0, text.indexOf('-')));
+            location.setCity(text.substring(text.indexOf('-') + 1));
+            return location;
+        }
+    }
+
+    public static class Shipment {
+
+        private String reference;
+
+        @JsonbTypeAdapter(WeightAdapter.class)
+        private Weight weight;
+
+        private Location destination;
+
+        public String getReference() {
+            return reference;
+        }
+
+        public void setReference(String reference) {
+            this.reference = reference;
+        }
+
+        public Weight getWeight() {
+            return weight;
+        }
+
+        public void setWeight(Weight weight) {
+            this.weight = weight;
+        }
+
+        public Location getDestination() {
+            return destination;
+        }
+
+        public void setDestination(Location destination) {
+            this.destination = destination;
+        }
+    }
+
+    public static class PublicFields implements javax.json.bind.config.PropertyVisibilityStrategy {
+
+        @Override
+        public boolean isVisible(java.lang.reflect.Field field) {
+            return true;
+        }
+
+        @Override
+        public boolean isVisible(java.lang.reflect.Method method) {
+            return true;
+        }
+    }
+
+}
@@ -15,24 +15,69 @@
  */
 package org.worldline.dynaql.impl.http;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
 import java.net.MalformedURLException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Properties;
 import java.util.ServiceLoader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import javax.json.stream.JsonParser;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.pool.PoolStats;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.slf4j.LoggerFactory;
+import static org.worldline.dynaql.api.Argument.arg;
+import static org.worldline.dynaql.api.Argument.args;
+import static org.worldline.dynaql.api.Document.document;
+import static org.worldline.dynaql.api.Field.field;
+import static org.worldline.dynaql.api.GraphQLEnum.gqlEnum;
+import static org.worldline.dynaql.api.InputObject.object;
+import static org.worldline.dynaql.api.InputObjectField.prop;
+import static org.worldline.dynaql.api.Operation.operation;
+import org.worldline.dynaql.api.Argument;
+import org.worldline.dynaql.api.Document;
 import org.worldline.dynaql.api.GraphQLClientBuilder;
+import org.worldline.dynaql.api.Operation;
 import org.worldline.dynaql.api.GraphQLRequest;
 import org.worldline.dynaql.api.GraphQLResponse;
+import org.worldline.dynaql.impl.DynaQLRequest;
 import org.worldline.dynaql.impl.DynaQLResponse;
+import org.worldline.dynaql.impl.DynaQLStreamingResponse;
+import org.worldline.dynaql.impl.JsonResponseParser;
+import org.worldline.dynaql.impl.QueryNormalizer;
+import org.worldline.dynaql.impl.WireTap;
 import org.worldline.dynaql.impl.entity.Person;
+import org.worldline.dynaql.impl.entity.Profile;
 
 /**
  *
@@ -197,6 +242,29 @@ public class HttpTransportTest {
 
     }
 
+    @Test
+    public void testListVariable() {
+
+        GraphQLRequest graphQLRequest = graphQLClientBuilder
+                .newRequest(CONFIG.getProperty("createPersonWithVariables"))
+                .addVariable("surname", "James")
+                .addVariable("names", Arrays.asList("JF"))
+                .addVariable("birthDate", "27/04/1962");
+
+        HttpInvocation invocation = HttpInvocationBuilder
+                .newBuilder()
+                .uri(endpoint)
+                .graphQLRequest(graphQLRequest)
+                .build();
+
+        GraphQLResponse graphQLResponse = invocation.invoke().getGraphQLResponse();
+
+        assertFalse(graphQLResponse.hasError());
+
+        Person jfj = graphQLResponse.getObject(Person.class, "updatePerson");
+        assertEquals(jfj.getNames()[0], "JF");
+    }
+
     @Test
     public void testProxyKO() {
 
@@ -299,4 +367,1039 @@ public class HttpTransportTest {
 
     }
 
+    @Test
+    public void testConnectionPool() {
+
+        GraphQLRequest graphQLRequest = graphQLClientBuilder.newRequest(CONFIG.getProperty("allPeople"));
+
+        HttpInvocation invocation = HttpInvocationBuilder
+                .newBuilder()
+                .uri(endpoint)
+                .graphQLRequest(graphQLRequest)
+                .property(HttpConfiguration.POOL_MAX_TOTAL, 10)
+                .property(HttpConfiguration.POOL_MAX_PER_ROUTE, 5)
+                .build();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(invocation.invoke().getGraphQLResponse().hasData());
+        }
+
+        // Connections are given back to the pool and reused
+        PoolStats stats = invocation.getPoolStats();
+        assertEquals(stats.getMax(), 10);
+        assertEquals(stats.getLeased(), 0);
+        assertEquals(stats.getAvailable(), 1);
+    }
+
+    @Test
+    public void testConnectionPoolSettings() {
+
+        // Durations given as int are read as long
+        HttpConfiguration intSettings = new HttpConfiguration();
+        intSettings.property(HttpConfiguration.POOL_KEEP_ALIVE, 30_000);
+        intSettings.property(HttpConfiguration.POOL_IDLE_TIMEOUT, 60_000);
+        HttpConfiguration longSettings = new HttpConfiguration();
+        longSettings.property(HttpConfiguration.POOL_KEEP_ALIVE, 30_000L);
+        longSettings.property(HttpConfiguration.POOL_IDLE_TIMEOUT, 60_000L);
+        assertSame(HttpClientPool.of(intSettings), HttpClientPool.of(longSettings));
+
+        HttpInvocation invocation = HttpInvocationBuilder
+                .newBuilder()
+                .uri(endpoint)
+                .graphQLRequest(graphQLClientBuilder.newRequest(CONFIG.getProperty("allPeople")))
+                .property(HttpConfiguration.POOL_KEEP_ALIVE, 30_000)
+                .property(HttpConfiguration.POOL_IDLE_TIMEOUT, 60_000)
+                .build();
+
+        assertTrue(invocation.invoke().getGraphQLResponse().hasData());
+        assertTrue(invocation.invokeAsync().join().getGraphQLResponse().hasData());
+    }
+
+    @Test
+    public void testConnectionPoolClosed() {
+
+        HttpInvocation invocation = HttpInvocationBuilder
+                .newBuilder()
+                .uri(endpoint)
+                .graphQLRequest(graphQLClientBuilder.newRequest(CONFIG.getProperty("allPeople")))
+                .build();
+        assertTrue(invocation.invoke().getGraphQLResponse().hasData());
+
+        HttpClientPool pool = HttpClientPool.of(new HttpConfiguration());
+        HttpClientPool.closeAll();
+        BatchLoader.shutdown();
+        assertTrue(pool.isClosed());
+
+        // Closed pools are replaced, the invocations built before use the new ones
+        HttpClientPool replaced = HttpClientPool.of(new HttpConfiguration());
+        assertFalse(replaced == pool);
+        assertFalse(replaced.isClosed());
+        assertTrue(invocation.invoke().getGraphQLResponse().hasData());
+        assertTrue(invocation.invokeAsync().join().getGraphQLResponse().hasData());
+
+        BatchLoader<Integer, Person> loader = BatchLoader.<Integer, Person>newBuilder(Person.class)
+                .graphQLClientBuilder(graphQLClientBuilder)
+                .invocationBuilder(() -> HttpInvocationBuilder.newBuilder().uri(endpoint))
+                .rootField("person", "personId", "Int!")
+                .selection("{ id surname }")
+                .window(10L)
+                .build();
+        assertEquals(loader.load(1).join().getId(), 1);
+    }
+
+    @Test
+    public void testAsyncInvocation() {
+
+        List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            GraphQLRequest graphQLRequest = graphQLClientBuilder
+                    .newRequest(CONFIG.getProperty("queryWithIntVariable"))
+                    .addVariable("personId", i + 1);
+
+            futures.add(HttpInvocationBuilder
+                    .newBuilder()
+                    .uri(endpoint)
+                    .graphQLRequest(graphQLRequest)
+                    .build()
+                    .invokeAsync());
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            GraphQLResponse graphQLResponse = futures.get(i).join().getGraphQLResponse();
+            assertFalse(graphQLResponse.hasError());
+            assertEquals(graphQLResponse.getObject(Profile.class, "profile").getPerson().getId(), i + 1);
+        }
+    }
+
+    @Test
+    public void testAsyncInvocationError() {
+
+        GraphQLRequest graphQLRequest = graphQLClientBuilder.newRequest(CONFIG.getProperty("queryWithStringVariable"));
+
+        HttpInvocation invocation = HttpInvocationBuilder
+                .newBuilder()
+                .uri(endpoint)
+                .graphQLRequest(graphQLRequest)
+                .build();
+
+        // Variable required here!
+        CompletionException ex = assertThrows(CompletionException.class, () -> invocation.invokeAsync().join());
+        assertTrue(ex.getCause() instanceof HttpInvocationException);
+    }
+
+    @Test
+    public void testStreamList() {
+
+        GraphQLRequest graphQLRequest = graphQLClientBuilder.newRequest(CONFIG.getProperty("allPeople"));
+
+        HttpInvocation invocation = HttpInvocationBuilder
+                .newBuilder()
+                .uri(endpoint)
+                .graphQLRequest(graphQLRequest)
+                .build();
+
+        long count;
+        try (HttpResponse httpResponse = invocation.invokeStreaming()) {
+            GraphQLResponse graphQLResponse = httpResponse.getGraphQLResponse();
+            count = graphQLResponse.stream(Person.class, "people")
+                    .filter(p -> p.getId() > 0)
+                    .count();
+            assertFalse(graphQLResponse.hasError());
+        }
+        assertTrue(count >= 100);
+
+        // The buffered response can be streamed too
+        GraphQLResponse graphQLResponse = invocation.invoke().getGraphQLResponse();
+        assertEquals(graphQLResponse.stream(Person.class, "people").count(), (long) graphQLResponse.getList(Person.class, "people").size());
+    }
+
+    @Test
+    public void testStreamInterrupted() {
+
+        String body = "{\"data\":{\"people\":[{\"id\":1,\"surname\":\"A\"},{\"id\":2}],\"count\":2},"
+                + "\"errors\":[{\"message\":\"partial\"}]}";
+        DynaQLStreamingResponse graphQLResponse = new DynaQLStreamingResponse(
+                JsonResponseParser.createParser(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))), () -> {
+                });
+
+        Iterator<Person> people = graphQLResponse.iterator(Person.class, "people");
+        assertTrue(people.hasNext());
+
+        // The element read by hasNext is skipped along with the rest of the list
+        assertEquals(graphQLResponse.getErrors().size(), 1);
+        assertEquals(graphQLResponse.getData().keySet(), Collections.singleton("count"));
+        assertEquals(graphQLResponse.getData().getInt("count"), 2);
+
+        // The iterator is over
+        assertFalse(people.hasNext());
+        assertThrows(NoSuchElementException.class, people::next);
+
+        // So is the rest of the list after a consumed element
+        graphQLResponse = new DynaQLStreamingResponse(
+                JsonResponseParser.createParser(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8))), () -> {
+                });
+        people = graphQLResponse.iterator(Person.class, "people");
+        assertEquals(people.next().getSurname(), "A");
+        assertEquals(graphQLResponse.getData().keySet(), Collections.singleton("count"));
+        assertFalse(people.hasNext());
+    }
+
+    @Test
+    public void testBatchInvocation() {
+
+        List<GraphQLRequest> graphQLRequests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            graphQLRequests.add(graphQLClientBuilder
+                    .newRequest(CONFIG.getProperty("queryWithIntVariable"))
+                    .addVariable("personId", i + 1));
+        }
+
+        HttpBatchInvocation invocation = HttpInvocationBuilder
+                .newBuilder()
+                .uri(endpoint)
+                .graphQLRequests(graphQLRequests)
+                .buildBatch();
+
+        List<HttpResponse> httpResponses = invocation.invoke();
+        assertEquals(httpResponses.size(), 5);
+
+        for (int i = 0; i < httpResponses.size(); i++) {
+            GraphQLResponse graphQLResponse = httpResponses.get(i).getGraphQLResponse();
+            assertFalse(graphQLResponse.hasError());
+            assertEquals(graphQLResponse.getObject(Profile.class, "profile").getPerson().getId(), i + 1);
+        }
+    }
+
+    @Test
+    public void testBatchRejection() {
+
+        String query = "query { people { id } }";
+        String mutation = "mutation { createPerson { id } }";
+        byte[] batchResponse = "[{\"data\":{}},{\"data\":{}}]".getBytes(StandardCharsets.UTF_8);
+        byte[] singleResponse = "{\"data\":{}}".getBytes(StandardCharsets.UTF_8);
+        Deque<HttpExchange> exchanges = new ArrayDeque<>();
+
+        // A transient failure is reported, batching is not given up
+        exchanges.add(exchange(503, null, new byte[0]));
+        HttpInvocationException ex = assertThrows(HttpInvocationException.class,
+                () -> batch("http://batch-503/graphql", exchanges, query, query).invoke());
+        assertEquals(Failures.statusCode(ex), 503);
+        exchanges.add(exchange(200, null, batchResponse));
+        assertEquals(batch("http://batch-503/graphql", exchanges, query, query).invoke().size(), 2);
+        assertTrue(exchanges.isEmpty());
+
+        // Batching rejected: the queries are sent one by one, and so are the next ones
+        exchanges.add(exchange(400, null, singleResponse));
+        exchanges.add(exchange(200, null, singleResponse));
+        exchanges.add(exchange(200, null, singleResponse));
+        assertEquals(batch("http://batch-400/graphql", exchanges, query, query).invoke().size(), 2);
+        exchanges.add(exchange(200, null, singleResponse));
+        exchanges.add(exchange(200, null, singleResponse));
+        assertEquals(batch("http://batch-400/graphql", exchanges, query, query).invoke().size(), 2);
+        assertTrue(exchanges.isEmpty());
+
+        // A batch answered with a single response: the mutation is not sent again
+        exchanges.add(exchange(200, null, singleResponse));
+        assertThrows(HttpInvocationException.class,
+                () -> batch("http://batch-object/graphql", exchanges, query, mutation).invoke());
+        assertTrue(exchanges.isEmpty());
+
+        // Responses are missing but the operations may have run: nothing is sent again
+        exchanges.add(exchange(200, null, "[{\"data\":{}}]".getBytes(StandardCharsets.UTF_8)));
+        assertThrows(HttpInvocationException.class,
+                () -> batch("http://batch-mismatch/graphql", exchanges, query, query).invoke());
+        assertTrue(exchanges.isEmpty());
+    }
+
+    // A batch sent over a transport answering with the given exchanges, in order
+    private HttpBatchInvocation batch(String uri, Deque<HttpExchange> exchanges, String... queries) {
+
+        HttpConfiguration configuration = new HttpConfiguration();
+        configuration.property(HttpConfiguration.CLIENT_TRANSPORT, new HttpTransport() {
+            @Override
+            public HttpExchange execute(URI uri, Map<String, String> headers, GraphQLRequestEntity entity, InvocationMetrics metrics) {
+                return exchanges.remove();
+            }
+
+            @Override
+            public CompletableFuture<HttpExchange> executeAsync(URI uri, Map<String, String> headers, GraphQLRequestEntity entity, InvocationMetrics metrics) {
+                return CompletableFuture.completedFuture(exchanges.remove());
+            }
+        });
+
+        List<GraphQLRequest> graphQLRequests = new ArrayList<>();
+        for (String query : queries) {
+            graphQLRequests.add(graphQLClientBuilder.newRequest(query));
+        }
+        return new HttpBatchInvocation(configuration, URI.create(uri), graphQLRequests, new HashMap<>());
+    }
+
+    @Test
+    public void testPersistedQuery() {
+
+        for (int i = 0; i < 2; i++) {
+            GraphQLRequest graphQLRequest = graphQLClientBuilder
+                    .newRequest(CONFIG.getProperty("queryWithIntVariable"))
+                    .addVariable("personId", i + 1);
+
+            HttpInvocation invocation = HttpInvocationBuilder
+                    .newBuilder()
+                    .uri(endpoint)
+                    .graphQLRequest(graphQLRequest)
+                    .property(HttpConfiguration.PERSISTED_QUERIES, true)
+                    .build();
+
+            // The first time the query is not known by the server and sent again
+            GraphQLResponse graphQLResponse = invocation.invoke().getGraphQLResponse();
+            assertFalse(graphQLResponse.hasError());
+            assertEquals(graphQLResponse.getObject(Profile.class, "profile").getPerson().getId(), i + 1);
+
+            graphQLResponse = invocation.invokeAsync().join().getGraphQLResponse();
+            assertFalse(graphQLResponse.hasError());
+        }
+    }
+
+    @Test
+    public void testResponseCache() {
+
+        ResponseCache cache = ResponseCache.newBuilder()
+                .maxEntries(10)
+                .ttl(60_000L)
+                .build();
+
+        HttpResponse[] httpResponses = new HttpResponse[3];
+        for (int i = 0; i < httpResponses.length; i++) {
+            GraphQLRequest graphQLRequest = graphQLClientBuilder
+                    .newRequest(CONFIG.getProperty("queryWithIntVariable"))
+                    .addVariable("personId", i < 2 ? 1 : 2);
+
+            httpResponses[i] = HttpInvocationBuilder
+                    .newBuilder()
+                    .uri(endpoint)
+                    .graphQLRequest(graphQLRequest)
+                    .property(HttpConfiguration.RESPONSE_CACHE, cache)
+                    .build()
+                    .invoke();
+        }
+
+        // Same query and variables: the response is served from the cache
+        assertTrue(httpResponses[0] == httpResponses[1]);
+        assertFalse(httpResponses[0] == httpResponses[2]);
+        assertEquals(cache.getHitCount(), 1L);
+        assertEquals(cache.getMissCount(), 2L);
+        assertEquals(cache.size(), 2);
+    }
+
+    @Test
+    public void testResponseCacheRefreshError() throws Exception {
+
+        ResponseCache cache = ResponseCache.newBuilder()
+                .maxEntries(10)
+                .ttl(1L)
+                .staleWhileRevalidate(60_000L)
+                .build();
+
+        DynaQLRequest request = (DynaQLRequest) graphQLClientBuilder.newRequest("query { people { id } }");
+        HttpResponse ok = new HttpResponse();
+        ok.setGraphQLResponse(JsonResponseParser.parse(new ByteArrayInputStream(
+                "{\"data\":{\"people\":[]}}".getBytes(StandardCharsets.UTF_8))));
+        HttpResponse error = new HttpResponse();
+        error.setGraphQLResponse(JsonResponseParser.parse(new ByteArrayInputStream(
+                "{\"errors\":[{\"message\":\"Unavailable\"}]}".getBytes(StandardCharsets.UTF_8))));
+
+        int[] refreshes = new int[1];
+        for (int i = 0; i < 3; i++) {
+            HttpResponse response = cache.get(URI.create(endpoint), Collections.emptyMap(), request, () -> ok, () -> {
+                refreshes[0]++;
+                return CompletableFuture.completedFuture(error);
+            });
+            assertSame(response, ok);
+            TimeUnit.MILLISECONDS.sleep(5);
+        }
+
+        // A refresh answered with errors is not cached, the next stale hit refreshes again
+        assertEquals(refreshes[0], 2);
+        assertEquals(cache.getStaleHitCount(), 2L);
+    }
+
+    @Test
+    public void testRequestKeyArrayVariables() {
+
+        URI uri = URI.create(endpoint);
+        String[] surnames = {"James", "Roux"};
+        DynaQLRequest request = (DynaQLRequest) graphQLClientBuilder.newRequest(CONFIG.getProperty("allPeople"))
+                .addVariable("surnames", surnames);
+        RequestKey key = new RequestKey(uri, null, request);
+
+        // Arrays are compared by content
+        DynaQLRequest same = (DynaQLRequest) graphQLClientBuilder.newRequest(CONFIG.getProperty("allPeople"))
+                .addVariable("surnames", new String[]{"James", "Roux"});
+        assertEquals(new RequestKey(uri, null, same), key);
+        assertEquals(new RequestKey(uri, null, same).hashCode(), key.hashCode());
+
+        // Changing the array afterwards does not change the key
+        surnames[1] = "Durand";
+        assertEquals(new RequestKey(uri, null, same), key);
+        assertFalse(new RequestKey(uri, null, request).equals(key));
+    }
+
+    @Test
+    public void testRequestCoalescing() {
+
+        RequestCoalescer coalescer = new RequestCoalescer();
+
+        List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(HttpInvocationBuilder
+                    .newBuilder()
+                    .uri(endpoint)
+                    .graphQLRequest(graphQLClientBuilder.newRequest(CONFIG.getProperty("allPeople")))
+                    .property(HttpConfiguration.REQUEST_COALESCER, coalescer)
+                    .build()
+                    .invokeAsync());
+        }
+
+        for (CompletableFuture<HttpResponse> future : futures) {
+            assertTrue(future.join().getGraphQLResponse().getList(Person.class, "people").size() >= 100);
+        }
+
+        // Identical requests sent at the same time share the same HTTP call
+        assertEquals(coalescer.getExecutedCount() + coalescer.getCoalescedCount(), 20L);
+        assertTrue(coalescer.getCoalescedCount() > 0);
+        assertEquals(coalescer.getInFlightCount(), 0);
+    }
+
+    @Test
+    public void testRequestCoalescingSendFailure() {
+
+        RequestCoalescer coalescer = new RequestCoalescer();
+        RequestKey key = new RequestKey(URI.create(endpoint), null,
+                (DynaQLRequest) graphQLClientBuilder.newRequest(CONFIG.getProperty("allPeople")));
+
+        // A send failing before returning its future must not leave the key in flight
+        CompletableFuture<HttpResponse> failed = coalescer.executeAsync(key, () -> {
+            throw new IllegalStateException("Unable to send");
+        });
+        CompletionException ex = assertThrows(CompletionException.class, failed::join);
+        assertTrue(ex.getCause() instanceof IllegalStateException);
+        assertEquals(coalescer.getInFlightCount(), 0);
+
+        // The next identical request is sent instead of waiting forever
+        CompletableFuture<HttpResponse> pending = new CompletableFuture<>();
+        CompletableFuture<HttpResponse> next = coalescer.executeAsync(key, () -> pending);
+        assertEquals(coalescer.getExecutedCount(), 2L);
+        assertEquals(coalescer.getCoalescedCount(), 0L);
+        pending.complete(null);
+        assertNull(next.join());
+        assertEquals(coalescer.getInFlightCount(), 0);
+    }
+
+    @Test
+    public void testForeignRequest() throws IOException {
+
+        // A GraphQLRequest implemented before writeJson existed
+        GraphQLRequest graphQLRequest = new GraphQLRequest() {
+            @Override
+            public GraphQLRequest addVariable(String name, Object value) {
+                return this;
+            }
+
+            @Override
+            public GraphQLRequest resetVariables() {
+                return this;
+            }
+
+            @Override
+            public String toJson() {
+                return "{\"query\":\"query { people { id } }\",\"note\":\"\u00e9t\u00e9\"}";
+            }
+        };
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        graphQLRequest.writeJson(out);
+        assertEquals(out.toString(StandardCharsets.UTF_8.name()), graphQLRequest.toJson());
+
+        HttpResponse httpResponse = HttpInvocationBuilder
+                .newBuilder()
+                .uri(endpoint)
+                .graphQLRequest(graphQLRequest)
+                .build()
+                .invoke();
+        assertTrue(httpResponse.getGraphQLResponse().hasData());
+    }
+
+    @Test
+    public void testBatchLoader() {
+
+        BatchLoader<Integer, Person> loader = BatchLoader.<Integer, Person>newBuilder(Person.class)
+                .graphQLClientBuilder(graphQLClientBuilder)
+                .invocationBuilder(() -> HttpInvocationBuilder.newBuilder().uri(endpoint))
+                .rootField("person", "personId", "Int!")
+                .selection("{ id surname }")
+                .window(50L)
+                .build();
+
+        List<CompletableFuture<Person>> futures = new ArrayList<>();
+        for (int i = 1; i <= 10; i++) {
+            futures.add(loader.load(i));
+        }
+        // The same key is looked up once
+        futures.add(loader.load(1));
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(futures.get(i).join().getId(), i + 1);
+        }
+        assertTrue(futures.get(10).join() == futures.get(0).join());
+    }
+
+    @Test
+    public void testCompression() {
+
+        GraphQLRequest graphQLRequest = graphQLClientBuilder.newRequest(CONFIG.getProperty("allPeople"));
+
+        HttpInvocation invocation = HttpInvocationBuilder
+                .newBuilder()
+                .uri(endpoint)
+                .graphQLRequest(graphQLRequest)
+                .property(HttpConfiguration.REQUEST_COMPRESSION_THRESHOLD, 0)
+                .build();
+
+        HttpResponse httpResponse = invocation.invoke();
+        assertEquals(httpResponse.getHeaders().get("Content-Encoding"), "gzip");
+        assertTrue(httpResponse.getGraphQLResponse().getList(Person.class, "people").size() >= 100);
+
+        // Decompressed while streaming too, on both clients
+        try (HttpResponse streamingResponse = invocation.invokeStreaming()) {
+            assertTrue(streamingResponse.getGraphQLResponse().stream(Person.class, "people").count() >= 100);
+        }
+        assertTrue(invocation.invokeAsync().join().getGraphQLResponse().getList(Person.class, "people").size() >= 100);
+    }
+
+    @Test
+    public void testContentDecoding() throws IOException {
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write("{\"data\":{}}".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertEquals(IOUtils.toString(exchange(200, "gzip", compressed.toByteArray()).getContent(), StandardCharsets.UTF_8),
+                "{\"data\":{}}");
+
+        // An empty body is not decoded
+        assertEquals(exchange(200, "gzip", new byte[0]).getContent().read(), -1);
+
+        // The status is checked before decoding, even when the body is not encoded as declared
+        HttpResponseException ex = assertThrows(HttpResponseException.class,
+                () -> exchange(500, "gzip", "Internal error".getBytes(StandardCharsets.UTF_8)).getContent());
+        assertEquals(ex.getStatusCode(), 500);
+        ex = assertThrows(HttpResponseException.class, () -> exchange(502, "gzip", new byte[0]).getContent());
+        assertEquals(ex.getStatusCode(), 502);
+    }
+
+    private static HttpExchange exchange(int statusCode, String contentEncoding, byte[] body) {
+        return new HttpExchange() {
+            @Override
+            protected int getStatusCode() {
+                return statusCode;
+            }
+
+            @Override
+            protected String getHeader(String name) {
+                return "Content-Encoding".equals(name) ? contentEncoding : null;
+            }
+
+            @Override
+            protected InputStream getBody() {
+                return new ByteArrayInputStream(body);
+            }
+
+            @Override
+            HttpResponse createHttpResponse() {
+                return new HttpResponse();
+            }
+
+            @Override
+            void release() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Test
+    public void testHttp2Transport() {
+
+        GraphQLRequest graphQLRequest = graphQLClientBuilder.newRequest(CONFIG.getProperty("allPeople"));
+
+        HttpInvocation invocation = HttpInvocationBuilder
+                .newBuilder()
+                .uri(endpoint)
+                .graphQLRequest(graphQLRequest)
+                .property(HttpConfiguration.TRANSPORT, HttpConfiguration.TRANSPORT_HTTP2)
+                .build();
+
+        assertNull(invocation.getPoolStats());
+
+        HttpResponse httpResponse = invocation.invoke();
+        assertTrue(httpResponse.getGraphQLResponse().getList(Person.class, "people").size() >= 100);
+
+        try (HttpResponse streamingResponse = invocation.invokeStreaming()) {
+            assertTrue(streamingResponse.getGraphQLResponse().stream(Person.class, "people").count() >= 100);
+        }
+
+        List<CompletableFuture<HttpResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(invocation.invokeAsync());
+        }
+        for (CompletableFuture<HttpResponse> future : futures) {
+            assertTrue(future.join().getGraphQLResponse().getList(Person.class, "people").size() >= 100);
+        }
+    }
+
+    @Test
+    public void testSubscriptionConnectionError() throws Exception {
+
+        GraphQLRequest graphQLRequest = graphQLClientBuilder.newRequest("subscription { personAdded { id surname } }");
+
+        HttpInvocation invocation = HttpInvocationBuilder
+                .newBuilder()
+                .uri("http://localhost:1/graphql")
+                .graphQLRequest(graphQLRequest)
+                .property(HttpConfiguration.SUBSCRIPTION_BUFFER_SIZE, 16)
+                .property(HttpConfiguration.SUBSCRIPTION_OVERFLOW, OverflowPolicy.DROP_OLDEST)
+                .build();
+
+        CompletableFuture<Throwable> failure = new CompletableFuture<>();
+        invocation.subscribe().subscribe(new Flow.Subscriber<GraphQLResponse>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(GraphQLResponse item) {
+                failure.completeExceptionally(new AssertionError("Unexpected event"));
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                failure.complete(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                failure.completeExceptionally(new AssertionError("Unexpected completion"));
+            }
+        });
+
+        assertTrue(failure.get(10, TimeUnit.SECONDS) instanceof HttpInvocationException);
+    }
+
+    @Test
+    public void testIncrementalDelivery() throws IOException {
+
+        String body = "\r\n---\r\n"
+                + "Content-Type: application/json; charset=utf-8\r\n\r\n"
+                + "{\"data\":{\"person\":{\"id\":50,\"surname\":\"S\"},\"people\":[{\"id\":1}]},\"hasNext\":true}\r\n"
+                + "---\r\n"
+                + "Content-Type: application/json; charset=utf-8\r\n\r\n"
+                + "{\"incremental\":[{\"path\":[\"person\"],\"data\":{\"names\":[\"Slow\"]}},"
+                + "{\"path\":[\"people\",1],\"items\":[{\"id\":2},{\"id\":3}]}],\"hasNext\":true}\r\n"
+                + "---\r\n"
+                + "Content-Type: application/json; charset=utf-8\r\n\r\n"
+                + "{\"path\":[\"people\",3],\"items\":[{\"id\":4}],\"hasNext\":true}\r\n"
+                + "---\r\n\r\n"
+                + "{\"hasNext\":false}\r\n"
+                + "-----\r\n";
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        // The same result whatever the reads which split the delimiters and the parts
+        for (int chunkSize : new int[]{1, 2, 3, 5, 7, bytes.length}) {
+
+            InputStream in = new FilterInputStream(new ByteArrayInputStream(bytes)) {
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    return super.read(b, off, Math.min(len, chunkSize));
+                }
+            };
+
+            MultipartReader reader = new MultipartReader(in, MultipartReader.getBoundary("multipart/mixed; boundary=\"-\""));
+            IncrementalResponse incrementalResponse = new IncrementalResponse(null);
+            List<GraphQLResponse> updates = new ArrayList<>();
+
+            byte[] part;
+            while ((part = reader.nextPart()) != null) {
+                try (JsonParser parser = JsonResponseParser.createParser(new ByteArrayInputStream(part))) {
+                    if (incrementalResponse.apply(parser)) {
+                        updates.add(incrementalResponse.toResponse());
+                    }
+                }
+            }
+
+            assertEquals(updates.size(), 4);
+            assertFalse(incrementalResponse.hasNext());
+
+            // The initial payload, without the deferred names
+            Person first = updates.get(0).getObject(Person.class, "person");
+            assertEquals(first.getId(), 50);
+            assertNull(first.getNames());
+
+            GraphQLResponse graphQLResponse = updates.get(3);
+            assertFalse(graphQLResponse.hasError());
+            Person person = graphQLResponse.getObject(Person.class, "person");
+            assertEquals(person.getSurname(), "S");
+            assertEquals(person.getNames()[0], "Slow");
+            List<Person> people = graphQLResponse.getList(Person.class, "people");
+            assertEquals(people.size(), 4);
+            for (int i = 0; i < people.size(); i++) {
+                assertEquals(people.get(i).getId(), i + 1);
+            }
+        }
+    }
+
+    @Test
+    public void testInvocationListener() {
+
+        MetricsInvocationListener listener = new MetricsInvocationListener();
+
+        for (int i = 0; i < 4; i++) {
+            HttpInvocation invocation = HttpInvocationBuilder
+                    .newBuilder()
+                    .uri(endpoint)
+                    .graphQLRequest(graphQLClientBuilder.newRequest(CONFIG.getProperty("queryWithIntVariable")).addVariable("personId", 1))
+                    .property(HttpConfiguration.INVOCATION_LISTENER, listener)
+                    .build();
+
+            HttpResponse httpResponse = i < 2 ? invocation.invoke() : invocation.invokeAsync().join();
+            assertEquals(httpResponse.getGraphQLResponse().getObject(Profile.class, "profile").getPerson().getId(), 1);
+        }
+
+        assertEquals(listener.getCount(null, MetricsInvocationListener.INVOCATIONS), 4L);
+        assertEquals(listener.getCount(null, MetricsInvocationListener.FAILURES), 0L);
+        assertEquals(listener.getHistogram(null, MetricsInvocationListener.POOL_WAIT_TIME).getCount(), 4L);
+        assertEquals(listener.getHistogram(null, MetricsInvocationListener.MAPPING_TIME).getCount(), 4L);
+        assertTrue(listener.getHistogram(null, MetricsInvocationListener.TIME_TO_FIRST_BYTE).getValue(0.5) > 0);
+        assertTrue(listener.getHistogram(null, MetricsInvocationListener.REQUEST_BYTES).getMax() > 0);
+        assertTrue(listener.getHistogram(null, MetricsInvocationListener.RESPONSE_BYTES).getMax() > 0);
+        assertTrue(listener.getPoolStats() != null);
+    }
+
+    @Test
+    public void testMeasuredRequestEntity() throws IOException {
+
+        GraphQLRequest graphQLRequest = graphQLClientBuilder.newRequest(CONFIG.getProperty("queryWithIntVariable")).addVariable("personId", 1);
+        InvocationMetrics metrics = new InvocationMetrics(null);
+        GraphQLRequestEntity entity = metrics.measure(new GraphQLRequestEntity(graphQLRequest));
+
+        // Measuring does not buffer the body, it is still streamed
+        assertTrue(entity.isChunked());
+        assertEquals(entity.getContentLength(), -1L);
+        assertEquals(metrics.getRequestBytes(), -1L);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeTo(out);
+        assertEquals(metrics.getRequestBytes(), (long) out.size());
+        assertTrue(metrics.getSerializationNanos() >= 0);
+    }
+
+    @Test
+    public void testWireTap() {
+
+        List<WireTap.Capture> captures = new ArrayList<>();
+        WireTap wireTap = WireTap.newBuilder()
+                .operations("People")
+                .maxBytes(64)
+                .sink(captures::add)
+                .build();
+
+        for (String query : Arrays.asList("query People { people { id surname } }", CONFIG.getProperty("allPeople"))) {
+            HttpResponse httpResponse = HttpInvocationBuilder
+                    .newBuilder()
+                    .uri(endpoint)
+                    .graphQLRequest(graphQLClientBuilder.newRequest(query))
+                    .property(HttpConfiguration.WIRE_TAP, wireTap)
+                    .build()
+                    .invoke();
+            assertTrue(httpResponse.getGraphQLResponse().hasData());
+        }
+
+        // Only the People operation is captured, up to 64 bytes
+        assertEquals(captures.size(), 1);
+        WireTap.Capture capture = captures.get(0);
+        assertEquals(capture.getOperationName(), "People");
+        assertTrue(capture.getRequest().startsWith("{\"query\":\"query People"));
+        assertTrue(capture.getResponse().startsWith("{\"data\":"));
+        assertEquals(capture.getResponse().length(), 64);
+        assertTrue(capture.getResponseBytes() > 64);
+    }
+
+    @Test
+    public void testRetryAndCircuitBreaker() {
+
+        String unreachable = "http://localhost:1/graphql";
+        RetryPolicy retryPolicy = RetryPolicy.newBuilder()
+                .maxAttempts(3)
+                .backoff(10, 50)
+                .build();
+        CircuitBreaker breaker = CircuitBreaker.newBuilder()
+                .failureThreshold(3)
+                .build();
+
+        HttpInvocation invocation = HttpInvocationBuilder
+                .newBuilder()
+                .uri(unreachable)
+                .graphQLRequest(graphQLClientBuilder.newRequest(CONFIG.getProperty("allPeople")))
+                .property(HttpConfiguration.RETRY_POLICY, retryPolicy)
+                .property(HttpConfiguration.CIRCUIT_BREAKER, breaker)
+                .build();
+
+        // The connection is refused three times, then the circuit opens
+        assertThrows(HttpInvocationException.class, () -> invocation.invoke());
+        assertEquals(retryPolicy.getRetryCount(), 2L);
+        assertEquals(breaker.getState(unreachable), CircuitBreaker.State.OPEN);
+
+        // Rejected without reaching the server, nor retrying
+        assertThrows(CircuitBreakerOpenException.class, () -> invocation.invoke());
+        assertEquals(retryPolicy.getRetryCount(), 2L);
+        assertEquals(breaker.getRejectedCount(), 1L);
+
+        CompletionException ex = assertThrows(CompletionException.class, () -> invocation.invokeAsync().join());
+        assertTrue(ex.getCause() instanceof CircuitBreakerOpenException);
+    }
+
+    @Test
+    public void testCircuitBreakerTrial() {
+
+        URI replica = URI.create("http://replica/graphql");
+        CircuitBreaker breaker = CircuitBreaker.newBuilder()
+                .failureThreshold(1)
+                .openDuration(0)
+                .build();
+        HttpInvocationException failure = new HttpInvocationException("Connection refused", new ConnectException());
+
+        CircuitBreaker.Permit failed = breaker.acquire(replica);
+        CircuitBreaker.Permit before = breaker.acquire(replica);
+        breaker.release(failed, failure);
+        assertEquals(breaker.getState(replica.toString()), CircuitBreaker.State.OPEN);
+
+        // A request let through before the circuit opened does not close it
+        CircuitBreaker.Permit trial = breaker.acquire(replica);
+        assertEquals(breaker.getState(replica.toString()), CircuitBreaker.State.HALF_OPEN);
+        breaker.release(before, null);
+        assertEquals(breaker.getState(replica.toString()), CircuitBreaker.State.HALF_OPEN);
+
+        // Nor does it let another trial through
+        assertThrows(CircuitBreakerOpenException.class, () -> breaker.acquire(replica));
+
+        breaker.release(trial, null);
+        assertEquals(breaker.getState(replica.toString()), CircuitBreaker.State.CLOSED);
+        assertEquals(breaker.getRejectedCount(), 1L);
+    }
+
+    @Test
+    public void testLoadBalancer() {
+
+        String unreachable = "http://localhost:1/graphql";
+        LoadBalancer balancer = LoadBalancer.newBuilder()
+                .endpoints(unreachable, endpoint)
+                .strategy(LoadBalancer.Strategy.LEAST_OUTSTANDING)
+                .minRequests(2)
+                .build();
+
+        HttpInvocation invocation = HttpInvocationBuilder
+                .newBuilder()
+                .graphQLRequest(graphQLClientBuilder.newRequest(CONFIG.getProperty("allPeople")))
+                .property(HttpConfiguration.LOAD_BALANCER, balancer)
+                .build();
+
+        // Ties are broken at random: invoke until the unreachable endpoint has been selected twice
+        int failures = 0;
+        for (int i = 0; i < 200 && failures < 2; i++) {
+            try {
+                assertTrue(invocation.invoke().getGraphQLResponse().hasData());
+            } catch (HttpInvocationException ex) {
+                failures++;
+            }
+        }
+
+        // The unreachable endpoint is ejected after its first 2 failures
+        assertEquals(failures, 2);
+        assertTrue(balancer.isEjected(unreachable));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(invocation.invoke().getGraphQLResponse().hasData());
+        }
+        assertFalse(balancer.isEjected(endpoint));
+        assertEquals(balancer.getOutstanding(endpoint), 0);
+    }
+
+    @Test
+    public void testLoadBalancerProbe() {
+
+        String replica = "http://replica/graphql";
+        LoadBalancer balancer = LoadBalancer.newBuilder()
+                .endpoints(replica)
+                .minRequests(1)
+                .ejectionDuration(0)
+                .build();
+        HttpInvocationException failure = new HttpInvocationException("Connection refused", new ConnectException());
+
+        LoadBalancer.Selection failed = balancer.select();
+        LoadBalancer.Selection before = balancer.select();
+        balancer.release(failed, 1, failure);
+        assertTrue(balancer.isEjected(replica));
+
+        // A request selected before the ejection does not decide the probe outcome
+        LoadBalancer.Selection probe = balancer.select();
+        balancer.release(before, 1, null);
+        assertTrue(balancer.isEjected(replica));
+
+        // Nor does a request sent while the probe is in flight
+        LoadBalancer.Selection during = balancer.select();
+        balancer.release(during, 1, failure);
+        assertTrue(balancer.isEjected(replica));
+
+        balancer.release(probe, 1, null);
+        assertFalse(balancer.isEjected(replica));
+        assertEquals(balancer.getEjectionCount(), 1L);
+        assertEquals(balancer.getOutstanding(replica), 0);
+    }
+
+    @Test
+    public void testHedgedRequests() {
+
+        // Hedged at once, but only twice: the budget earns nothing more
+        HedgingPolicy hedgingPolicy = HedgingPolicy.newBuilder()
+                .initialDelay(0)
+                .budget(0, 2)
+                .build();
+
+        for (int i = 0; i < 5; i++) {
+            HttpInvocation invocation = HttpInvocationBuilder
+                    .newBuilder()
+                    .uri(endpoint)
+                    .graphQLRequest(graphQLClientBuilder.newRequest(CONFIG.getProperty("allPeople")))
+                    .property(HttpConfiguration.HEDGING_POLICY, hedgingPolicy)
+                    .build();
+            HttpResponse httpResponse = i % 2 == 0 ? invocation.invoke() : invocation.invokeAsync().join();
+            assertTrue(httpResponse.getGraphQLResponse().hasData());
+        }
+
+        assertTrue(hedgingPolicy.getHedgeCount() <= 2);
+        assertTrue(hedgingPolicy.getHedgeCount() + hedgingPolicy.getBudgetExhaustedCount() > 0);
+    }
+
+    @Test
+    public void testDocument() {
+
+        Document document = document(
+                operation(Operation.Type.QUERY, "People",
+                        field("people",
+                                field("id"),
+                                field("surname"))));
+
+        assertEquals(document.toString(), "query People { people { id surname } }");
+        assertSame(document.toString(), document.toString());
+
+        HttpResponse httpResponse = HttpInvocationBuilder
+                .newBuilder()
+                .uri(endpoint)
+                .graphQLRequest(graphQLClientBuilder.newRequest(document))
+                .build()
+                .invoke();
+        assertTrue(httpResponse.getGraphQLResponse().hasData());
+
+        // Arguments are rendered as GraphQL literals
+        Document mutation = document(
+                operation(Operation.Type.MUTATION,
+                        field("createPerson",
+                                args(arg("person", object(
+                                        prop("surname", "O'Neil \"Jr\""),
+                                        prop("age", 42),
+                                        prop("profile", gqlEnum("ADMIN")),
+                                        prop("tags", Arrays.asList("a", "b"))))),
+                                field("id"))));
+
+        assertEquals(mutation.toString(),
+                "mutation { createPerson(person: {surname: \"O'Neil \\\"Jr\\\"\", age: 42, profile: ADMIN, tags: [\"a\", \"b\"]}) { id } }");
+
+        // Numbers are rendered as valid GraphQL Int or Float literals
+        assertEquals(arg("amount", new BigDecimal("1E+3")).toString(), "amount: 1E+3");
+        assertEquals(arg("ratio", 0.5).toString(), "ratio: 0.5");
+        assertThrows(IllegalArgumentException.class, () -> arg("ratio", Double.NaN).toString());
+        assertThrows(IllegalArgumentException.class, () -> arg("ratio", Float.POSITIVE_INFINITY).toString());
+
+        // Changing a list or an array afterwards changes neither the argument nor the document
+        List<String> tags = new ArrayList<>(Arrays.asList("a", "b"));
+        String[] names = {"x"};
+        Argument tagsArgument = arg("tags", tags);
+        Document tagged = document(operation(Operation.Type.QUERY,
+                field("people", args(tagsArgument, arg("names", names)), field("id"))));
+        String text = tagged.toString();
+        tags.add("c");
+        names[0] = "y";
+        assertEquals(tagged.toString(), text);
+        assertEquals(text, "query { people(tags: [\"a\", \"b\"], names: [\"x\"]) { id } }");
+        assertEquals(tagsArgument, arg("tags", Arrays.asList("a", "b")));
+        assertThrows(UnsupportedOperationException.class, () -> ((List<?>) tagsArgument.getValue()).clear());
+    }
+
+    @Test
+    public void testQueryNormalization() {
+
+        assertEquals(QueryNormalizer.normalize("# People by id\n"
+                + "query People($id: Int, $tags: [Int]) {\n"
+                + "\tperson(id: $id, tags: [1, -2], note: \"a,  b # c\", names: [\"\", \"x\"]) {\n"
+                + "\t\tid # Only the id\n"
+                + "\t}\n"
+                + "}"),
+                "query People($id:Int$tags:[Int]){person(id:$id tags:[1 -2]note:\"a,  b # c\"names:[\"\" \"x\"]){id}}");
+
+        GraphQLClientBuilder normalizingBuilder = graphQLClientBuilder.normalizeQueries(true);
+        GraphQLRequest graphQLRequest = normalizingBuilder.newRequest(CONFIG.getProperty("allPeople"));
+        assertEquals(graphQLRequest.toJson(), "{\"query\":\"query{people{id surname names}}\"}");
+
+        // The shared builder is left unchanged
+        assertEquals(graphQLClientBuilder.newRequest(CONFIG.getProperty("allPeople")).toJson(),
+                ServiceLoader.load(GraphQLClientBuilder.class).findFirst().get().newRequest(CONFIG.getProperty("allPeople")).toJson());
+        assertSame(normalizingBuilder.normalizeQueries(true), normalizingBuilder);
+
+        HttpResponse httpResponse = HttpInvocationBuilder
+                .newBuilder()
+                .uri(endpoint)
+                .graphQLRequest(graphQLRequest)
+                .build()
+                .invoke();
+        assertTrue(httpResponse.getGraphQLResponse().hasData());
+    }
+
+    @Test
+    public void testOperationType() {
+
+        DynaQLRequest commented = (DynaQLRequest) graphQLClientBuilder.newRequest("# c\nmutation { createPerson(surname: \"{\") { id } }");
+        assertFalse(commented.isQuery());
+
+        DynaQLRequest fragmentFirst = (DynaQLRequest) graphQLClientBuilder.newRequest("fragment F on T { id } mutation Create { createPerson { ...F } }");
+        assertFalse(fragmentFirst.isQuery());
+        assertEquals(fragmentFirst.getOperationName(), "Create");
+
+        DynaQLRequest query = (DynaQLRequest) graphQLClientBuilder.newRequest("fragment F on Person { id }\n# People\nquery People($id: Int = 1) { people { ...F } }");
+        assertTrue(query.isQuery());
+        assertEquals(query.getOperationName(), "People");
+
+        assertTrue(((DynaQLRequest) graphQLClientBuilder.newRequest("{ people { id } }")).isQuery());
+        assertFalse(((DynaQLRequest) graphQLClientBuilder.newRequest("query A { a } mutation B { b }")).isQuery());
+
+        // Classified on the text as written, whatever its comments and line breaks
+        DynaQLRequest multiline = (DynaQLRequest) graphQLClientBuilder.newRequest("# mutation {\nquery # People\n\tPeople\r\n{ people { id } }");
+        assertTrue(multiline.isQuery());
+        assertEquals(multiline.getOperationName(), "People");
+
+        // Not classified, hence not idempotent
+        assertFalse(((DynaQLRequest) graphQLClientBuilder.newRequest("unknown { a }")).isQuery());
+    }
+
 }
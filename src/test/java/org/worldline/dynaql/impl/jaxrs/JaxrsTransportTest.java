@@ -18,9 +18,13 @@ package org.worldline.dynaql.impl.jaxrs;
 import org.worldline.dynaql.impl.entity.Profile;
 import org.worldline.dynaql.impl.entity.Person;
 import io.quarkus.test.junit.QuarkusTest;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 import java.util.ServiceLoader;
@@ -31,11 +35,16 @@ import javax.json.JsonObject;
 import javax.ws.rs.ProcessingException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.ClientRequestFilter;
 import javax.ws.rs.client.Entity;
 import static javax.ws.rs.client.Entity.json;
+import javax.ws.rs.client.Invocation;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.ext.WriterInterceptor;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -45,6 +54,7 @@ import org.junit.jupiter.api.Test;
 import org.worldline.dynaql.api.GraphQLRequest;
 import org.worldline.dynaql.api.GraphQLResponse;
 import org.worldline.dynaql.api.GraphQLClientBuilder;
+import org.worldline.dynaql.impl.WireTap;
 
 /**
  *
@@ -290,6 +300,127 @@ public class JaxrsTransportTest {
         client.close();
     }
 
+    @Test
+    public void testPersistedQuery() {
+
+        // Records the bodies actually sent
+        List<String> bodies = new ArrayList<>();
+        ClientRequestFilter recorder = requestContext -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ((StreamingOutput) requestContext.getEntity()).write(out);
+            bodies.add(out.toString(StandardCharsets.UTF_8.name()));
+        };
+
+        Client client = ClientBuilder
+                .newBuilder()
+                .register(GraphQLResponseReader.class)
+                .register(GraphQLRequestWriter.class)
+                .register(recorder, ClientRequestFilter.class)
+                .build();
+
+        // A query never sent before, whose hash the server does not know yet
+        GraphQLRequest graphQLRequest = graphQLClientBuilder
+                .newRequest("query Profile($personId: Int!) { p" + System.nanoTime() + ": profile(personId: $personId) { person { id } } }")
+                .addVariable("personId", 1);
+        Invocation.Builder invocationBuilder = client.target(endpoint).request(MediaType.APPLICATION_JSON);
+
+        GraphQLResponse graphQLResponse = PersistedQueryInvoker.post(invocationBuilder, graphQLRequest);
+        assertFalse(graphQLResponse.hasError());
+        assertTrue(graphQLResponse.hasData());
+
+        // The hash alone first, then sent again with the query
+        assertEquals(bodies.size(), 2);
+        assertTrue(bodies.get(0).contains("\"sha256Hash\""));
+        assertFalse(bodies.get(0).contains("\"query\""));
+        assertTrue(bodies.get(1).startsWith("{\"query\":\"query Profile"));
+        assertTrue(bodies.get(1).contains("\"sha256Hash\""));
+
+        // The server knows the hash from now on
+        graphQLResponse = PersistedQueryInvoker.post(invocationBuilder, graphQLRequest);
+        assertFalse(graphQLResponse.hasError());
+        assertEquals(bodies.size(), 3);
+        assertFalse(bodies.get(2).contains("\"query\""));
+
+        client.close();
+    }
+
+    @Test
+    public void testCompression() {
+
+        GraphQLRequest graphQLRequest = graphQLClientBuilder.newRequest(CONFIG.getProperty("allPeople"));
+
+        for (int threshold : new int[]{0, 1_000_000}) {
+
+            // Records the encoding chosen by the GraphQLRequestWriter
+            List<Object> requestEncodings = new ArrayList<>();
+            WriterInterceptor recorder = context -> {
+                context.proceed();
+                requestEncodings.add(context.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+            };
+
+            Client client = ClientBuilder
+                    .newBuilder()
+                    .register(GraphQLResponseReader.class)
+                    .register(new GraphQLRequestWriter(threshold))
+                    .register(recorder, WriterInterceptor.class)
+                    .build();
+
+            Response response = client
+                    .target(endpoint)
+                    .request(MediaType.APPLICATION_JSON)
+                    .post(json(graphQLRequest));
+
+            assertEquals(response.getStatus(), 200);
+
+            // The request is compressed from the threshold on, the response is always
+            assertEquals(requestEncodings, Arrays.asList(threshold == 0 ? "gzip" : null));
+            assertEquals(response.getHeaderString(HttpHeaders.CONTENT_ENCODING), "gzip");
+
+            GraphQLResponse graphQLResponse = response.readEntity(GraphQLResponse.class);
+            assertFalse(graphQLResponse.hasError());
+            assertTrue(graphQLResponse.getList(Person.class, "people").size() >= 100);
+
+            client.close();
+        }
+    }
+
+    @Test
+    public void testWireTap() {
+
+        List<WireTap.Capture> captures = new ArrayList<>();
+        WireTap wireTap = WireTap.newBuilder()
+                .operations("People")
+                .maxBytes(64)
+                .sink(captures::add)
+                .build();
+
+        Client client = ClientBuilder
+                .newBuilder()
+                .register(GraphQLResponseReader.class)
+                .register(GraphQLRequestWriter.class)
+                .register(new WireTapFilter(wireTap))
+                .build();
+
+        for (String query : Arrays.asList("query People { people { id surname } }", CONFIG.getProperty("allPeople"))) {
+            GraphQLResponse graphQLResponse = client
+                    .target(endpoint)
+                    .request(MediaType.APPLICATION_JSON)
+                    .post(json(graphQLClientBuilder.newRequest(query)), GraphQLResponse.class);
+            assertTrue(graphQLResponse.hasData());
+        }
+
+        // Only the People operation is captured, up to 64 bytes
+        assertEquals(captures.size(), 1);
+        WireTap.Capture capture = captures.get(0);
+        assertEquals(capture.getOperationName(), "People");
+        assertTrue(capture.getRequest().startsWith("{\"query\":\"query People"));
+        assertTrue(capture.getResponse().startsWith("{\"data\":"));
+        assertEquals(capture.getResponse().length(), 64);
+        assertTrue(capture.getResponseBytes() > 64);
+
+        client.close();
+    }
+
     @Test
     public void testReactiveCall() throws InterruptedException {
 